@@ -1,7 +1,10 @@
 package com.funck.webflux.resource;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.funck.webflux.domain.Anime;
 import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.service.AnimeCache;
 import com.funck.webflux.util.AnimeCreator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -14,6 +17,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -24,14 +28,17 @@ import reactor.blockhound.BlockingOperationError;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
 
 import java.util.List;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
@@ -47,6 +54,9 @@ public class AnimeResourceIT {
     @Autowired
     private WebTestClient client;
 
+    @Autowired
+    private AnimeCache animeCache;
+
     private final Anime anime = AnimeCreator.createValidAnime();
 
     @BeforeAll
@@ -56,20 +66,28 @@ public class AnimeResourceIT {
 
     @BeforeEach
     void setUp() {
-        BDDMockito.when(animeRepository.findAll())
+        animeCache.invalidateAll();
+
+        BDDMockito.when(animeRepository.findPageAfter(anyInt(), anyInt()))
                 .thenReturn(Flux.just(anime));
 
-        BDDMockito.when(animeRepository.findById(anyInt()))
-                .thenReturn(Mono.just(anime));
+        BDDMockito.when(animeRepository.streamAll(anyInt()))
+                .thenReturn(Flux.just(anime, anime));
+
+        BDDMockito.when(animeRepository.findAllById(anyIterable()))
+                .thenReturn(Flux.just(anime));
 
         BDDMockito.when(animeRepository.save(AnimeCreator.createAnimeToBeSaved()))
                 .thenReturn(Mono.just(anime));
 
-        BDDMockito.when(animeRepository.delete(any(Anime.class)))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepository.updateNameById(anyInt(), anyString()))
+                .thenReturn(Mono.just(1));
 
-        BDDMockito.when(animeRepository.saveAll(List.of(AnimeCreator.createAnimeToBeSaved(), AnimeCreator.createAnimeToBeSaved())))
-                .thenReturn(Flux.just(anime, anime));
+        BDDMockito.when(animeRepository.removeById(anyInt()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepository.insertAll(List.of(AnimeCreator.createAnimeToBeSaved(), AnimeCreator.createAnimeToBeSaved())))
+                .thenReturn(Flux.just(1, 1));
     }
 
     @Test
@@ -104,6 +122,24 @@ public class AnimeResourceIT {
                 .jsonPath("$.[0].name").isEqualTo(anime.getName());
     }
 
+    @Test
+    @DisplayName("stream returns one anime per line when accept is ndjson")
+    @WithUserDetails(REGULAR)
+    void stream_ReturnNdjson_whenAcceptIsNdjson() {
+        client
+                .get()
+                .uri("/animes")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(Anime.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNext(anime, anime)
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("findById returns a Mono of Anime")
     @WithUserDetails(REGULAR)
@@ -113,17 +149,102 @@ public class AnimeResourceIT {
                 .uri("/animes/{id}", 1)
                 .exchange()
                 .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
                 .expectBody()
                 .jsonPath("$.id").isEqualTo(anime.getId())
                 .jsonPath("$.name").isEqualTo(anime.getName());
     }
 
+    @Test
+    @DisplayName("findById returns cbor when accept is cbor")
+    @WithUserDetails(REGULAR)
+    void findById_ReturnCbor_whenAcceptIsCbor() throws Exception {
+        byte[] body = client
+                .get()
+                .uri("/animes/{id}", 1)
+                .accept(MediaType.APPLICATION_CBOR)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_CBOR)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertEquals(anime, new ObjectMapper(new CBORFactory()).readValue(body, Anime.class));
+    }
+
+    @Test
+    @DisplayName("findById returns the error in protobuf when accept is protobuf")
+    @WithUserDetails(REGULAR)
+    void findById_ReturnProtobufError_whenAcceptIsProtobuf() {
+        BDDMockito.when(animeRepository.findAllById(anyIterable()))
+                .thenReturn(Flux.empty());
+
+        client
+                .get()
+                .uri("/animes/{id}", 1)
+                .accept(MediaType.parseMediaType("application/x-protobuf"))
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectHeader().contentType("application/x-protobuf");
+    }
+
+    @Test
+    @DisplayName("listAll returns not modified without querying when If-None-Match has the current ETag")
+    @WithUserDetails(REGULAR)
+    void listAll_ReturnNotModified_whenETagMatches() {
+        String etag = client
+                .get()
+                .uri("/animes")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Anime.class)
+                .getResponseHeaders()
+                .getETag();
+
+        client
+                .get()
+                .uri("/animes")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+
+        BDDMockito.verify(animeRepository, BDDMockito.times(1)).findPageAfter(anyInt(), anyInt());
+    }
+
+    @Test
+    @DisplayName("findById returns not modified when If-None-Match has the current version")
+    @WithUserDetails(REGULAR)
+    void findById_ReturnNotModified_whenETagMatches() {
+        client
+                .get()
+                .uri("/animes/{id}", 1)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"0\"")
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    @DisplayName("findAllById returns the animes of the ids parameter")
+    @WithUserDetails(REGULAR)
+    void findAllById_ReturnFluxOfAnime_whenSuccessful() {
+        client
+                .get()
+                .uri("/animes?ids={ids}", "1,2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.[0].id").isEqualTo(anime.getId())
+                .jsonPath("$.[0].name").isEqualTo(anime.getName());
+    }
+
     @Test
     @DisplayName("findById returns Mono error when anime does not exists")
     @WithUserDetails(REGULAR)
     void findById_ReturnMonoError_whenEmptyMonoReturns() {
-        BDDMockito.when(animeRepository.findById(anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepository.findAllById(anyIterable()))
+                .thenReturn(Flux.empty());
 
         client
                 .get()
@@ -170,9 +291,6 @@ public class AnimeResourceIT {
     @DisplayName("SaveAll returns bad request when has any invalid anime and user has role ADMIN")
     @WithUserDetails(ADMIN)
     void saveAll_ReturnsError_whenHasEmptyName() {
-        BDDMockito.when(animeRepository.saveAll(anyIterable()))
-                .thenReturn(Flux.just(anime, anime.withName("")));
-
         client
                 .post()
                 .uri("/animes/batch")
@@ -180,6 +298,8 @@ public class AnimeResourceIT {
                 .body(BodyInserters.fromValue(List.of(AnimeCreator.createAnimeToBeSaved(), AnimeCreator.createAnimeToBeSaved().withName(""))))
                 .exchange()
                 .expectStatus().isBadRequest();
+
+        BDDMockito.verify(animeRepository, BDDMockito.never()).insertAll(anyList());
     }
 
     @Test
@@ -198,7 +318,7 @@ public class AnimeResourceIT {
     /*@Test
     @DisplayName("Delete removes anime when successful")
     void delete_Remove_whenSuccessful() {
-        BDDMockito.when(animeRepository.delete(anime)).thenReturn(Mono.empty());
+        BDDMockito.when(animeRepository.removeById(1)).thenReturn(Mono.just(1));
 
         webTestClient
                 .delete()
@@ -211,8 +331,8 @@ public class AnimeResourceIT {
     @DisplayName("Delete returns error when anime does not exists")
     @WithUserDetails(REGULAR)
     void delete_returnError_whenNotFound() {
-        BDDMockito.when(animeRepository.findById(anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepository.removeById(anyInt()))
+                .thenReturn(Mono.just(0));
 
         client
                 .delete()
@@ -225,8 +345,6 @@ public class AnimeResourceIT {
     @DisplayName("Update save updated anime when successful and user has role admin and returns empty mono")
     @WithUserDetails(ADMIN)
     void update_SaveUpdateAndReturnEmptyMono_whenSuccessful() {
-        BDDMockito.when(animeRepository.save(anime)).thenReturn(Mono.just(anime));
-
         client
                 .put()
                 .uri("/animes/{id}", 1)
@@ -240,7 +358,7 @@ public class AnimeResourceIT {
     @DisplayName("Update return mono error when anime not exists")
     @WithUserDetails(REGULAR)
     void update_returnMonoError_whenNotExists() {
-        BDDMockito.when(animeRepository.findById(anyInt())).thenReturn(Mono.empty());
+        BDDMockito.when(animeRepository.updateNameById(anyInt(), anyString())).thenReturn(Mono.just(0));
 
         client
                 .put()
@@ -251,4 +369,43 @@ public class AnimeResourceIT {
                 .expectStatus().isNotFound();
     }
 
+    @Test
+    @DisplayName("Update returns precondition failed when If-Match has a stale version")
+    @WithUserDetails(ADMIN)
+    void update_ReturnPreconditionFailed_whenVersionIsStale() {
+        BDDMockito.when(animeRepository.updateNameByIdAndVersion(anyInt(), anyString(), anyLong()))
+                .thenReturn(Mono.just(0));
+
+        client
+                .put()
+                .uri("/animes/{id}", 1)
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(anime))
+                .exchange()
+                .expectStatus().isEqualTo(412);
+    }
+
+    @Test
+    @DisplayName("prometheus returns forbidden when user does not have role ADMIN")
+    @WithUserDetails(REGULAR)
+    void prometheus_ReturnForbidden_whenUserIsNotAdmin() {
+        client
+                .get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+
+    @Test
+    @DisplayName("prometheus returns the metrics when user has role ADMIN")
+    @WithUserDetails(ADMIN)
+    void prometheus_ReturnMetrics_whenUserIsAdmin() {
+        client
+                .get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk();
+    }
+
 }
@@ -0,0 +1,57 @@
+package com.funck.webflux.benchmark;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.service.AnimeCache;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit do cache contra a ida ao repositório, sem a janela do batch loader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AnimeCacheBenchmark {
+
+    private InMemoryAnimeRepository animeRepository;
+    private AnimeCache animeCache;
+
+    @Setup
+    public void setUp() {
+        animeRepository = InMemoryAnimeRepository.withAnimes(1_000);
+        animeCache = new AnimeCache(new AnimeProperties());
+        animeCache.get(1, animeRepository::findById).block();
+    }
+
+    @Benchmark
+    public Anime hit() {
+        return animeCache.get(1, animeRepository::findById).block();
+    }
+
+    @Benchmark
+    public Anime miss() {
+        animeCache.invalidate(2);
+        return animeCache.get(2, animeRepository::findById).block();
+    }
+
+    @Benchmark
+    public Anime repository() {
+        return animeRepository.findById(2).block();
+    }
+
+}
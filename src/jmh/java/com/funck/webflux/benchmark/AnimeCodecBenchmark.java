@@ -0,0 +1,123 @@
+package com.funck.webflux.benchmark;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.funck.webflux.codec.AnimeProtobufDecoder;
+import com.funck.webflux.codec.AnimeProtobufEncoder;
+import com.funck.webflux.codec.StreamingCborEncoder;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.codec.Hints;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lista de animes escrita e lida em cada formato que o CodecConfig registra. O tamanho de cada corpo é
+ * impresso no setup, é a outra metade da comparação
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AnimeCodecBenchmark {
+
+    private static final ResolvableType ANIME_LIST_TYPE = ResolvableType.forClassWithGenerics(List.class, Anime.class);
+    private static final MediaType APPLICATION_PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+
+    // Sem configuração de log o Logback fica em DEBUG e os codecs do Jackson logariam cada corpo
+    private static final Map<String, Object> HINTS = Hints.from(Hints.SUPPRESS_LOGGING_HINT, true);
+
+    @Param({"json", "cbor", "smile", "protobuf"})
+    private String codec;
+
+    @Param({"1", "100", "10000"})
+    private int size;
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private Encoder<Object> encoder;
+    private Decoder<Object> decoder;
+    private MediaType mediaType;
+    private List<Anime> animes;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+
+        switch (codec) {
+            case "json":
+                encoder = new Jackson2JsonEncoder(builder.build());
+                decoder = new Jackson2JsonDecoder(builder.build());
+                mediaType = MediaType.APPLICATION_JSON;
+                break;
+            case "cbor":
+                encoder = new StreamingCborEncoder(builder.factory(new CBORFactory()).build());
+                decoder = new Jackson2CborDecoder(builder.factory(new CBORFactory()).build());
+                mediaType = MediaType.APPLICATION_CBOR;
+                break;
+            case "smile":
+                encoder = new Jackson2SmileEncoder(builder.factory(new SmileFactory()).build());
+                decoder = new Jackson2SmileDecoder(builder.factory(new SmileFactory()).build());
+                mediaType = MediaType.parseMediaType("application/x-jackson-smile");
+                break;
+            default:
+                encoder = new AnimeProtobufEncoder();
+                decoder = new AnimeProtobufDecoder();
+                mediaType = APPLICATION_PROTOBUF;
+        }
+
+        animes = InMemoryAnimeRepository.withAnimes(size).findAll()
+                .map(anime -> anime.withVersion((long) anime.getId()))
+                .collectList()
+                .block();
+
+        DataBuffer buffer = encoder.encodeValue(animes, bufferFactory, ANIME_LIST_TYPE, mediaType, HINTS);
+        encoded = new byte[buffer.readableByteCount()];
+        buffer.read(encoded);
+        DataBufferUtils.release(buffer);
+
+        System.out.printf("%n%s, %d animes: %d bytes%n", codec, size, encoded.length);
+    }
+
+    @Benchmark
+    public int encode() {
+        DataBuffer buffer = encoder.encodeValue(animes, bufferFactory, ANIME_LIST_TYPE, mediaType, HINTS);
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public Object decode() {
+        return decoder.decode(bufferFactory.wrap(encoded), ANIME_LIST_TYPE, mediaType, HINTS);
+    }
+
+}
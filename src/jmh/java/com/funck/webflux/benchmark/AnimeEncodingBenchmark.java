@@ -0,0 +1,97 @@
+package com.funck.webflux.benchmark;
+
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.funck.webflux.codec.AnimeJsonEncoder;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Hints;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialização de listas de animes pelo encoder padrão do WebFlux e pelo AnimeJsonEncoder com Blackbird,
+ * que é o que a aplicação registra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AnimeEncodingBenchmark {
+
+    private static final ResolvableType ANIME_TYPE = ResolvableType.forClass(Anime.class);
+    private static final ResolvableType ANIME_LIST_TYPE = ResolvableType.forClassWithGenerics(List.class, Anime.class);
+
+    // Sem configuração de log o Logback fica em DEBUG e os codecs do Jackson logariam cada corpo
+    private static final Map<String, Object> HINTS = Hints.from(Hints.SUPPRESS_LOGGING_HINT, true);
+
+    @Param({"1", "100", "10000"})
+    private int size;
+
+    @Param({"default", "tuned"})
+    private String encoding;
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private Jackson2JsonEncoder encoder;
+    private List<Anime> animes;
+
+    @Setup
+    public void setUp() {
+        encoder = "tuned".equals(encoding)
+                ? new AnimeJsonEncoder(Jackson2ObjectMapperBuilder.json().modules(new BlackbirdModule()).build())
+                : new Jackson2JsonEncoder(Jackson2ObjectMapperBuilder.json().build());
+        animes = InMemoryAnimeRepository.withAnimes(size).findAll().collectList().block();
+    }
+
+    @Benchmark
+    public int jsonList() {
+        DataBuffer buffer = encoder.encodeValue(animes, bufferFactory, ANIME_LIST_TYPE, MediaType.APPLICATION_JSON, HINTS);
+        return release(buffer);
+    }
+
+    @Benchmark
+    public int jsonStream() {
+        return encode(MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public int ndjsonStream() {
+        return encode(MediaType.APPLICATION_NDJSON);
+    }
+
+    private int encode(MediaType mediaType) {
+        return encoder.encode(Flux.fromIterable(animes), bufferFactory, ANIME_TYPE, mediaType, HINTS)
+                .map(this::release)
+                .reduce(0, Integer::sum)
+                .block();
+    }
+
+    private int release(DataBuffer buffer) {
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+
+}
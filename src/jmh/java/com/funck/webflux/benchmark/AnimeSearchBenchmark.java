@@ -0,0 +1,91 @@
+package com.funck.webflux.benchmark;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.service.AnimeNameIndex;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Autocomplete sobre um milhão de títulos: o índice em memória contra filtrar a lista inteira, que é o
+ * que o cliente faz hoje depois do listAll, e o custo de manter o índice a cada gravação
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AnimeSearchBenchmark {
+
+    private static final int TITLES = 1_000_000;
+    private static final int LIMIT = 10;
+    private static final String[] WORDS = {"Naruto", "Bleach", "One", "Piece", "Attack", "Titan", "Dragon", "Ball",
+            "Hunter", "Death", "Note", "Fullmetal", "Alchemist", "Sword", "Art", "Online", "Cowboy", "Bebop",
+            "Spirited", "Away", "Neon", "Genesis", "Evangelion", "Demon", "Slayer", "Jujutsu", "Kaisen", "Spy",
+            "Family", "Chainsaw", "Man", "Mob", "Psycho", "Steins", "Gate", "Code", "Geass", "Haikyu"};
+
+    @Param({"n", "naruto", "naruto bleach 4"})
+    private String prefix;
+
+    private AnimeNameIndex animeNameIndex;
+    private List<Anime> animes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        animes = new ArrayList<>(TITLES);
+
+        for (int id = 1; id <= TITLES; id++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+            animes.add(Anime.builder().id(id).name(name).build());
+        }
+
+        AnimeProperties animeProperties = new AnimeProperties();
+        animeProperties.getSearch().setPrefixIndex(true);
+
+        animeNameIndex = new AnimeNameIndex(new InMemoryAnimeRepository(), animeProperties);
+        animeNameIndex.putAll(animes);
+    }
+
+    @Benchmark
+    public List<Anime> index() {
+        return animeNameIndex.complete(prefix, LIMIT);
+    }
+
+    @Benchmark
+    public List<Anime> scan() {
+        return animes.stream()
+                .filter(anime -> AnimeNameIndex.normalize(anime.getName()).startsWith(prefix))
+                .sorted(Comparator.comparing((Anime anime) -> AnimeNameIndex.normalize(anime.getName()))
+                        .thenComparing(Anime::getId))
+                .limit(LIMIT)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public int rename() {
+        int id = ThreadLocalRandom.current().nextInt(1, TITLES + 1);
+        animeNameIndex.put(id, prefix + " " + id);
+        return id;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.funck.webflux.benchmark;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.domain.AnimePage;
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.repository.ReplicaRouting;
+import com.funck.webflux.service.AnimeBatchLoader;
+import com.funck.webflux.service.AnimeCache;
+import com.funck.webflux.service.AnimeChangeCounter;
+import com.funck.webflux.service.AnimeChangeFeed;
+import com.funck.webflux.service.AnimeConcurrencyLimiter;
+import com.funck.webflux.service.AnimeNameIndex;
+import com.funck.webflux.service.AnimeQueryPolicy;
+import com.funck.webflux.service.AnimeService;
+import com.funck.webflux.service.InMemoryAnimeChangeChannel;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import io.r2dbc.spi.ConnectionFactory;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+
+/**
+ * Custo do AnimeService sem banco, com o repositório mockado pelo Mockito e com o repositório em memória
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AnimeServiceBenchmark {
+
+    private static final int ANIMES = 1_000;
+
+    @Param({"mock", "memory"})
+    private String repository;
+
+    private AnimeService animeService;
+    private AnimeBatchLoader animeBatchLoader;
+    private Anime anime;
+    private List<Integer> ids;
+
+    @Setup
+    public void setUp() {
+        AnimeProperties animeProperties = new AnimeProperties();
+        AnimeRepository animeRepository = "mock".equals(repository) ? mockedRepository() : InMemoryAnimeRepository.withAnimes(ANIMES);
+
+        animeBatchLoader = new AnimeBatchLoader(animeRepository, animeProperties);
+        // Nenhum benchmark passa pelo saveAll, o TransactionalOperator não chega a ser usado
+        AnimeCache animeCache = new AnimeCache(animeProperties);
+        AnimeChangeCounter animeChangeCounter = new AnimeChangeCounter();
+        AnimeNameIndex animeNameIndex = new AnimeNameIndex(animeRepository, animeProperties);
+        AnimeChangeFeed animeChangeFeed = new AnimeChangeFeed(new InMemoryAnimeChangeChannel(), animeCache, animeNameIndex,
+                animeChangeCounter, animeProperties);
+
+        animeService = new AnimeService(animeRepository, animeProperties, animeCache, animeBatchLoader,
+                animeChangeCounter, animeNameIndex, animeChangeFeed,
+                new AnimeConcurrencyLimiter(Mockito.mock(ConnectionFactory.class), animeProperties),
+                new ReplicaRouting(animeProperties), new AnimeQueryPolicy(animeProperties),
+                Mockito.mock(TransactionalOperator.class));
+        ids = IntStream.rangeClosed(1, animeProperties.getPagination().getDefaultSize()).boxed().collect(Collectors.toList());
+
+        // Popula o cache, os benchmarks de leitura medem o caminho quente
+        animeService.findAllById(ids).then().block();
+        anime = animeService.findById(1).block();
+    }
+
+    @TearDown
+    public void tearDown() {
+        animeBatchLoader.destroy();
+    }
+
+    @Benchmark
+    public Anime findById() {
+        return animeService.findById(1).block();
+    }
+
+    @Benchmark
+    public List<Anime> findAllById() {
+        return animeService.findAllById(ids).collectList().block();
+    }
+
+    @Benchmark
+    public AnimePage listPage() {
+        return animeService.listPage(null, null).block();
+    }
+
+    @Benchmark
+    public Anime save() {
+        return animeService.save(anime).block();
+    }
+
+    private static AnimeRepository mockedRepository() {
+        List<Anime> animes = InMemoryAnimeRepository.withAnimes(ANIMES).findAll().collectList().block();
+        AnimeRepository animeRepository = Mockito.mock(AnimeRepository.class);
+
+        BDDMockito.when(animeRepository.findPageAfter(anyInt(), anyInt()))
+                .thenAnswer(invocation -> Flux.fromIterable(animes).take(invocation.<Integer>getArgument(1)));
+        BDDMockito.when(animeRepository.findAllById(anyIterable()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<Iterable<Integer>>getArgument(0))
+                        .map(id -> animes.get(id - 1)));
+        BDDMockito.when(animeRepository.save(any(Anime.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        return animeRepository;
+    }
+
+}
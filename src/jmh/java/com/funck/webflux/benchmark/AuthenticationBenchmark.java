@@ -0,0 +1,65 @@
+package com.funck.webflux.benchmark;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.User;
+import com.funck.webflux.security.CachingAuthenticationManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autenticação HTTP Basic verificando o BCrypt a cada requisição contra o cache de credenciais verificadas
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AuthenticationBenchmark {
+
+    private final Authentication credentials = new UsernamePasswordAuthenticationToken("felipe", "1234");
+
+    private ReactiveAuthenticationManager bcrypt;
+    private ReactiveAuthenticationManager cached;
+
+    @Setup
+    public void setUp() {
+        PasswordEncoder passwordEncoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        User user = new User(1, "Felipe", "felipe", passwordEncoder.encode("1234"), "ROLE_USER");
+        ReactiveUserDetailsService userDetailsService = username -> Mono.just(user);
+
+        bcrypt = new UserDetailsRepositoryReactiveAuthenticationManager(userDetailsService);
+        cached = new CachingAuthenticationManager(bcrypt, userDetailsService,
+                new AnimeProperties().getSecurity().getCredentialCache());
+        cached.authenticate(credentials).block();
+    }
+
+    @Benchmark
+    public Authentication bcrypt() {
+        return bcrypt.authenticate(credentials).block();
+    }
+
+    @Benchmark
+    public Authentication cached() {
+        return cached.authenticate(credentials).block();
+    }
+
+}
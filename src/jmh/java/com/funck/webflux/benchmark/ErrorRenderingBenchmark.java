@@ -0,0 +1,82 @@
+package com.funck.webflux.benchmark;
+
+import com.funck.webflux.exception.AnimeNotFoundException;
+import com.funck.webflux.exception.CustomAttributes;
+import com.funck.webflux.exception.GlobalExceptionHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.web.WebProperties;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caminho completo de um erro: criação da exception, atributos do CustomAttributes e escrita do json
+ * pelo GlobalExceptionHandler, contra o json pré-renderizado dos erros conhecidos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ErrorRenderingBenchmark {
+
+    private GlobalExceptionHandler handler;
+
+    @Setup
+    public void setUp() throws Exception {
+        GenericApplicationContext applicationContext = new GenericApplicationContext();
+        applicationContext.refresh();
+
+        handler = new GlobalExceptionHandler(new CustomAttributes(), new WebProperties.Resources(),
+                applicationContext, ServerCodecConfigurer.create());
+        handler.afterPropertiesSet();
+    }
+
+    @Benchmark
+    public String notFound() {
+        return render("/animes/1", new ResponseStatusException(HttpStatus.NOT_FOUND, "Anime not found"));
+    }
+
+    @Benchmark
+    public String notFoundPreRendered() {
+        return render("/animes/1", new AnimeNotFoundException());
+    }
+
+    @Benchmark
+    public String notFoundWithTrace() {
+        return render("/animes/1?trace=true", new AnimeNotFoundException());
+    }
+
+    @Benchmark
+    public Throwable createResponseStatusException() {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Anime not found");
+    }
+
+    @Benchmark
+    public Throwable createAnimeNotFoundException() {
+        return new AnimeNotFoundException();
+    }
+
+    private String render(String uri, Throwable error) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(uri));
+
+        handler.handle(exchange, error).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+
+}
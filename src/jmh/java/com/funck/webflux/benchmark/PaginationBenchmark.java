@@ -0,0 +1,60 @@
+package com.funck.webflux.benchmark;
+
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paginação por cursor contra OFFSET em páginas cada vez mais profundas. O repositório em memória
+ * reproduz o formato do custo (busca no índice contra percorrer as linhas puladas), o valor absoluto
+ * com o Postgres sai do teste de carga
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PaginationBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"1", "100", "1000"})
+    private int page;
+
+    private InMemoryAnimeRepository animeRepository;
+
+    @Setup
+    public void setUp() {
+        animeRepository = InMemoryAnimeRepository.withAnimes(100_000);
+    }
+
+    @Benchmark
+    public List<Anime> keyset() {
+        int after = (page - 1) * PAGE_SIZE;
+        return animeRepository.findPageAfter(after, PAGE_SIZE).collectList().block();
+    }
+
+    @Benchmark
+    public List<Anime> offset() {
+        return animeRepository.findAll()
+                .skip((long) (page - 1) * PAGE_SIZE)
+                .take(PAGE_SIZE)
+                .collectList()
+                .block();
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.funck.webflux.benchmark;
+
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.metrics.RepositoryMetricsPostProcessor;
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sobrecarga dos timers do repositório em uma chamada que não vai ao banco
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RepositoryMetricsBenchmark {
+
+    private AnimeRepository plain;
+    private AnimeRepository timed;
+
+    @Setup
+    public void setUp() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+
+        plain = InMemoryAnimeRepository.withAnimes(1_000);
+        timed = (AnimeRepository) new RepositoryMetricsPostProcessor(beanFactory.getBeanProvider(MeterRegistry.class))
+                .postProcessAfterInitialization(InMemoryAnimeRepository.withAnimes(1_000), "animeRepository");
+    }
+
+    @Benchmark
+    public Anime plain() {
+        return plain.findById(1).block();
+    }
+
+    @Benchmark
+    public Anime timed() {
+        return timed.findById(1).block();
+    }
+
+}
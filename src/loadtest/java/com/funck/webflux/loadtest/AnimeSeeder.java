@@ -0,0 +1,58 @@
+package com.funck.webflux.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cadastra animes pelo POST /animes/batch, para os cenários que precisam de uma tabela maior que a do
+ * data.sql. Funciona também com --base-url, sem acesso direto ao banco
+ */
+public class AnimeSeeder {
+
+    // Cada lote fica abaixo dos 256KB que o WebFlux aceita em um corpo agregado
+    static final int MAX_BATCH = 5_000;
+
+    private final HttpClient writer;
+
+    public AnimeSeeder(HttpClient client) {
+        this.writer = client.headers(headers -> headers
+                .set(HttpHeaderNames.AUTHORIZATION, LoadGenerator.basic("admin"))
+                .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON));
+    }
+
+    public void seed(String prefix, int count) {
+        for (int start = 0; start < count; start += MAX_BATCH) {
+            int status = post(prefix, start, Math.min(MAX_BATCH, count - start)).block();
+
+            if (status != 201) {
+                throw new IllegalStateException("Seeding failed with status " + status);
+            }
+        }
+    }
+
+    /**
+     * Um POST /animes/batch com os animes prefix start até prefix start + size - 1, devolve o status
+     *
+     * @param prefix
+     * @param start
+     * @param size
+     * @return
+     */
+    public Mono<Integer> post(String prefix, int start, int size) {
+        String body = IntStream.range(start, start + size)
+                .mapToObj(i -> "{\"name\":\"" + prefix + " " + i + "\"}")
+                .collect(Collectors.joining(",", "[", "]"));
+
+        return writer.post()
+                .uri("/animes/batch")
+                .send(ByteBufFlux.fromString(Mono.just(body)))
+                .responseSingle((response, content) -> content.then(Mono.just(response.status().code())));
+    }
+
+}
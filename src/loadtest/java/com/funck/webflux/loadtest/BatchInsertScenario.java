@@ -0,0 +1,115 @@
+package com.funck.webflux.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cadastra --batch-sizes animes de cada vez e mede as linhas gravadas por segundo por dois caminhos: o
+ * POST /animes/batch, em requisições de até {@link AnimeSeeder#MAX_BATCH} animes, e o POST /animes/ingest,
+ * com todos os animes numa requisição só em NDJSON
+ */
+public class BatchInsertScenario {
+
+    private static final int WARMUP_ROWS = 1_000;
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final HttpClient ingester;
+    private final AnimeSeeder seeder;
+    private final LoadTestOptions options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public BatchInsertScenario(HttpClient client, LoadTestOptions options) {
+        this.ingester = client.headers(headers -> headers
+                .set(HttpHeaderNames.AUTHORIZATION, LoadGenerator.basic("admin"))
+                .set(HttpHeaderNames.CONTENT_TYPE, NDJSON)
+                .set(HttpHeaderNames.ACCEPT, NDJSON));
+        this.seeder = new AnimeSeeder(client);
+        this.options = options;
+    }
+
+    public Map<String, Object> run() {
+        // Uma rodada antes da medida, para a primeira não pagar o aquecimento do JIT e do pool
+        seeder.seed("Batch warm-up", WARMUP_ROWS);
+        ingest("Ingest warm-up", WARMUP_ROWS);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+
+        for (int rows : options.getBatchSizes()) {
+            Map<String, Object> sizeReport = new LinkedHashMap<>();
+
+            long start = System.nanoTime();
+            seeder.seed("Batch " + rows, rows);
+            sizeReport.put("batch", summary(rows, (rows + AnimeSeeder.MAX_BATCH - 1) / AnimeSeeder.MAX_BATCH, start));
+
+            start = System.nanoTime();
+            int accepted = ingest("Ingest " + rows, rows);
+            sizeReport.put("ingest", summary(accepted, 1, start));
+
+            report.put(String.valueOf(rows), sizeReport);
+        }
+
+        return report;
+    }
+
+    /**
+     * Um POST /animes/ingest com os animes prefix 0 até prefix count - 1, devolve quantos foram aceitos
+     *
+     * @param prefix
+     * @param count
+     * @return
+     */
+    private int ingest(String prefix, int count) {
+        Flux<String> lines = Flux.range(0, count)
+                .map(i -> "{\"name\":\"" + prefix + " " + i + "\"}\n");
+
+        return ingester.post()
+                .uri("/animes/ingest")
+                .send(ByteBufFlux.fromString(lines))
+                .responseSingle((response, body) -> response.status().code() == 200 ? body.asString()
+                        : Mono.error(new IllegalStateException("Ingest failed with status " + response.status())))
+                .map(this::acceptedIds)
+                .block();
+    }
+
+    private int acceptedIds(String results) {
+        int accepted = 0;
+
+        for (String line : results.split("\n")) {
+            if (!line.isBlank()) {
+                accepted += readTree(line).get("acceptedIds").size();
+            }
+        }
+
+        return accepted;
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Object> summary(int rows, int requests, long start) {
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("rows", rows);
+        summary.put("requests", requests);
+        summary.put("totalMs", Math.round(elapsed * 1e4) / 10.0);
+        summary.put("rowsPerSecond", Math.round(rows / elapsed * 10) / 10.0);
+        return summary;
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.funck.webflux.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.ByteBufMono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Dispara as requisições com um número fixo de clientes simultâneos, cada um mandando a próxima
+ * requisição assim que recebe a resposta da anterior. No modo condicional as leituras se comportam como
+ * um cliente que faz polling, reenviando o último ETag de cada URL no If-None-Match
+ */
+public class LoadGenerator {
+
+    private static final String PASSWORD = "1234";
+    private static final int LIST_LIMIT = 20;
+
+    private final HttpClient reader;
+    private final HttpClient writer;
+    private final LoadMix mix;
+    private final int seededAnimes;
+    private final boolean conditional;
+    private final int listPages;
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Queue<Integer> created = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public LoadGenerator(String baseUrl, int concurrency, LoadMix mix, int seededAnimes, boolean conditional,
+                         int listPages) {
+        HttpClient client = HttpClient.create(ConnectionProvider.builder("loadtest")
+                        .maxConnections(concurrency)
+                        .pendingAcquireMaxCount(-1)
+                        .build())
+                .baseUrl(baseUrl);
+
+        this.reader = client.headers(headers -> headers.set(HttpHeaderNames.AUTHORIZATION, basic("felipe")));
+        this.writer = client.headers(headers -> headers
+                .set(HttpHeaderNames.AUTHORIZATION, basic("admin"))
+                .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON));
+        this.mix = mix;
+        this.seededAnimes = seededAnimes;
+        this.conditional = conditional;
+        this.listPages = listPages;
+    }
+
+    public LoadResult run(Duration duration, int concurrency) {
+        LoadResult result = new LoadResult();
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        Flux.range(0, concurrency)
+                .flatMap(client -> Mono.defer(() -> execute(mix.next(), result))
+                        .repeat(() -> System.nanoTime() < deadline), concurrency)
+                .blockLast();
+
+        result.finish();
+        return result;
+    }
+
+    private Mono<Void> execute(Operation operation, LoadResult result) {
+        // Sem anime criado para remover, a operação vira um POST para manter a tabela do mesmo tamanho
+        Integer createdId = operation == Operation.DELETE ? created.poll() : null;
+        Operation executed = operation == Operation.DELETE && createdId == null ? Operation.POST : operation;
+        long start = System.nanoTime();
+
+        return request(executed, createdId)
+                .onErrorReturn(Reply.ERROR)
+                .doOnNext(reply -> result.record(executed, reply.status, reply.bytes, System.nanoTime() - start))
+                .then();
+    }
+
+    private Mono<Reply> request(Operation operation, Integer createdId) {
+        switch (operation) {
+            case GET:
+                return poll("/animes/" + randomSeededId());
+            case LIST:
+                return poll("/animes?limit=" + LIST_LIMIT + "&after=" + listCursor());
+            case POST:
+                return writer.post()
+                        .uri("/animes")
+                        .send(json("{\"name\":\"Load test " + sequence.incrementAndGet() + "\"}"))
+                        .responseSingle((response, body) -> reply(response, body, this::rememberCreated));
+            case PUT:
+                return writer.put()
+                        .uri("/animes/" + randomSeededId())
+                        .send(json("{\"name\":\"Load test " + sequence.incrementAndGet() + "\"}"))
+                        .responseSingle((response, body) -> reply(response, body, null));
+            case DELETE:
+                return writer.delete()
+                        .uri("/animes/" + createdId)
+                        .responseSingle((response, body) -> reply(response, body, null));
+            default:
+                return Mono.error(new IllegalArgumentException("Unknown operation " + operation));
+        }
+    }
+
+    private Mono<Reply> poll(String uri) {
+        String etag = conditional ? etags.get(uri) : null;
+        HttpClient client = etag == null ? reader : reader.headers(headers -> headers.set(HttpHeaderNames.IF_NONE_MATCH, etag));
+
+        return client.get()
+                .uri(uri)
+                .responseSingle((response, body) -> {
+                    String received = response.responseHeaders().get(HttpHeaderNames.ETAG);
+
+                    if (conditional && received != null) {
+                        etags.put(uri, received);
+                    }
+
+                    return reply(response, body, null);
+                });
+    }
+
+    private Mono<Reply> reply(HttpClientResponse response, ByteBufMono body, Consumer<byte[]> consumer) {
+        int status = response.status().code();
+
+        return body.asByteArray()
+                .doOnNext(bytes -> {
+                    if (consumer != null) {
+                        consumer.accept(bytes);
+                    }
+                })
+                .map(bytes -> new Reply(status, bytes.length))
+                .defaultIfEmpty(new Reply(status, 0));
+    }
+
+    private void rememberCreated(byte[] json) {
+        try {
+            JsonNode id = objectMapper.readTree(json).get("id");
+
+            if (id != null && id.isInt()) {
+                created.add(id.asInt());
+            }
+        } catch (Exception e) {
+            // Resposta de erro, não há id para remover depois
+        }
+    }
+
+    private int listCursor() {
+        return listPages > 0
+                ? ThreadLocalRandom.current().nextInt(listPages) * LIST_LIMIT
+                : ThreadLocalRandom.current().nextInt(seededAnimes);
+    }
+
+    private int randomSeededId() {
+        return ThreadLocalRandom.current().nextInt(1, seededAnimes + 1);
+    }
+
+    private static ByteBufFlux json(String body) {
+        return ByteBufFlux.fromString(Mono.just(body));
+    }
+
+    static String basic(String username) {
+        String credentials = username + ":" + PASSWORD;
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Status e tamanho do corpo de uma resposta
+     */
+    private static final class Reply {
+
+        static final Reply ERROR = new Reply(LoadResult.ERROR_STATUS, 0);
+
+        final int status;
+        final long bytes;
+
+        Reply(int status, long bytes) {
+            this.status = status;
+            this.bytes = bytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.funck.webflux.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Proporção de cada operação no teste de carga, informada como get=60,list=20,post=10,put=5,delete=5
+ */
+public class LoadMix {
+
+    private final Map<Operation, Integer> weights;
+    private final Operation[] wheel;
+
+    private LoadMix(Map<Operation, Integer> weights) {
+        this.weights = weights;
+        this.wheel = weights.entrySet().stream()
+                .flatMap(entry -> Stream.generate(entry::getKey).limit(entry.getValue()))
+                .toArray(Operation[]::new);
+
+        if (wheel.length == 0) {
+            throw new IllegalArgumentException("The load mix must have at least one operation with weight");
+        }
+    }
+
+    public static LoadMix parse(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid load mix entry: " + entry);
+            }
+
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+
+        return new LoadMix(weights);
+    }
+
+    public Operation next() {
+        return wheel[ThreadLocalRandom.current().nextInt(wheel.length)];
+    }
+
+    public Map<Operation, Integer> getWeights() {
+        return weights;
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.funck.webflux.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Escreve o resultado do teste de carga em report.json, para comparar execuções, e em report.html
+ */
+public class LoadReport {
+
+    private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+
+    private static final ObjectWriter WRITER = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .writer();
+
+    private final Map<String, Object> report = new LinkedHashMap<>();
+
+    public LoadReport(LoadTestOptions options, LoadResult result) {
+        Map<String, Object> operations = new LinkedHashMap<>();
+
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = result.getHistogram(operation);
+
+            if (histogram.getTotalCount() > 0) {
+                Map<String, Object> summary = summary(histogram, result.getElapsedSeconds());
+                summary.put("bytes", result.getBytes(operation));
+                summary.put("statuses", result.getStatuses(operation));
+                operations.put(operation.getRoute(), summary);
+            }
+        }
+
+        report.put("timestamp", Instant.now().toString());
+        report.put("durationSeconds", result.getElapsedSeconds());
+        report.put("concurrency", options.getConcurrency());
+        report.put("mix", options.getMix().getWeights());
+        report.put("conditional", options.isConditional());
+
+        Map<String, Object> total = summary(result.getTotalHistogram(), result.getElapsedSeconds());
+        long requests = (long) total.get("requests");
+        total.put("bytes", result.getTotalBytes());
+        total.put("bytesPerRequest", requests == 0 ? 0 : round((double) result.getTotalBytes() / requests));
+        total.put("cpuSeconds", round(result.getCpuSeconds()));
+        total.put("cpuMicrosPerRequest", requests == 0 ? 0 : round(result.getCpuSeconds() * 1e6 / requests));
+        report.put("total", total);
+        report.put("operations", operations);
+    }
+
+    public void write(Path directory) throws IOException {
+        write(directory, "report.json", report);
+        Files.writeString(directory.resolve("report.html"), html(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Grava o relatório de um cenário, que não segue o formato por rota do mix
+     *
+     * @param directory
+     * @param file
+     * @param report
+     * @throws IOException
+     */
+    public static void write(Path directory, String file, Map<String, Object> report) throws IOException {
+        Files.createDirectories(directory);
+        WRITER.writeValue(directory.resolve(file).toFile(), report);
+    }
+
+    public static String toJson(Map<String, Object> report) throws IOException {
+        return WRITER.writeValueAsString(report);
+    }
+
+    @SuppressWarnings("unchecked")
+    public String summaryLine() {
+        Map<String, Object> total = (Map<String, Object>) report.get("total");
+        Map<String, Object> latency = (Map<String, Object>) total.get("latencyMs");
+
+        return String.format("%.1f req/s, p50 %s ms, p95 %s ms, p99 %s ms, p99.9 %s ms, %s bytes/req, %s us CPU/req",
+                total.get("throughput"), latency.get("p50"), latency.get("p95"), latency.get("p99"), latency.get("p99.9"),
+                total.get("bytesPerRequest"), total.get("cpuMicrosPerRequest"));
+    }
+
+    private static Map<String, Object> summary(Histogram histogram, double elapsedSeconds) {
+        Map<String, Object> latency = new LinkedHashMap<>();
+
+        for (double percentile : PERCENTILES) {
+            latency.put("p" + (percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile)),
+                    millis(histogram.getValueAtPercentile(percentile)));
+        }
+
+        latency.put("mean", millis(histogram.getMean()));
+        latency.put("max", millis(histogram.getMaxValue()));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", histogram.getTotalCount());
+        summary.put("throughput", round(histogram.getTotalCount() / elapsedSeconds));
+        summary.put("latencyMs", latency);
+        return summary;
+    }
+
+    @SuppressWarnings("unchecked")
+    private String html() {
+        StringBuilder html = new StringBuilder()
+                .append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>Anime load test</title>\n")
+                .append("<style>body{font-family:sans-serif}td,th{padding:4px 12px;text-align:right}th:first-child,td:first-child{text-align:left}</style>\n")
+                .append("</head>\n<body>\n<h1>Anime load test</h1>\n")
+                .append("<p>").append(report.get("timestamp")).append(", ")
+                .append(report.get("concurrency")).append(" concurrent clients, ")
+                .append(String.format("%.1f", (double) report.get("durationSeconds"))).append(" s, mix ")
+                .append(report.get("mix")).append(Boolean.TRUE.equals(report.get("conditional")) ? ", conditional reads" : "")
+                .append(", CPU ").append(((Map<String, Object>) report.get("total")).get("cpuSeconds")).append(" s</p>\n")
+                .append("<table>\n<tr><th>Route</th><th>Requests</th><th>req/s</th><th>p50 ms</th><th>p95 ms</th>")
+                .append("<th>p99 ms</th><th>p99.9 ms</th><th>max ms</th><th>Bytes</th><th>Statuses</th></tr>\n");
+
+        ((Map<String, Map<String, Object>>) report.get("operations"))
+                .forEach((route, summary) -> row(html, route, summary));
+        row(html, "Total", (Map<String, Object>) report.get("total"));
+
+        return html.append("</table>\n</body>\n</html>\n").toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void row(StringBuilder html, String route, Map<String, Object> summary) {
+        Map<String, Object> latency = (Map<String, Object>) summary.get("latencyMs");
+
+        html.append("<tr><td>").append(route).append("</td>")
+                .append("<td>").append(summary.get("requests")).append("</td>")
+                .append("<td>").append(summary.get("throughput")).append("</td>")
+                .append("<td>").append(latency.get("p50")).append("</td>")
+                .append("<td>").append(latency.get("p95")).append("</td>")
+                .append("<td>").append(latency.get("p99")).append("</td>")
+                .append("<td>").append(latency.get("p99.9")).append("</td>")
+                .append("<td>").append(latency.get("max")).append("</td>")
+                .append("<td>").append(summary.get("bytes")).append("</td>")
+                .append("<td>").append(summary.getOrDefault("statuses", "")).append("</td></tr>\n");
+    }
+
+    private static double millis(double micros) {
+        return round(micros / 1000);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.funck.webflux.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latências, status e bytes por operação. O Recorder do HdrHistogram aceita gravações de várias threads
+ * sem trava, a leitura dos histogramas só acontece no fim da execução.
+ * <p>
+ * O tempo de CPU é o do processo inteiro: quando o teste sobe a aplicação ele inclui o servidor e o
+ * gerador de carga, com --base-url só o gerador
+ */
+public class LoadResult {
+
+    static final int ERROR_STATUS = 0;
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+    private final long startedAt = System.nanoTime();
+    private final long cpuAtStart = processCpuNanos();
+    private long finishedAt;
+    private long cpuNanos;
+
+    public LoadResult() {
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    void record(Operation operation, int status, long bytes, long elapsedNanos) {
+        stats.get(operation).record(status, bytes, elapsedNanos);
+    }
+
+    void finish() {
+        finishedAt = System.nanoTime();
+        cpuNanos = processCpuNanos() - cpuAtStart;
+
+        stats.values().forEach(Stats::finish);
+    }
+
+    public double getElapsedSeconds() {
+        return (finishedAt - startedAt) / 1e9;
+    }
+
+    public double getCpuSeconds() {
+        return cpuNanos / 1e9;
+    }
+
+    /**
+     * Bytes do corpo das respostas, sem os headers
+     *
+     * @param operation
+     * @return
+     */
+    public long getBytes(Operation operation) {
+        return stats.get(operation).bytes.sum();
+    }
+
+    public long getTotalBytes() {
+        return stats.values().stream().mapToLong(operationStats -> operationStats.bytes.sum()).sum();
+    }
+
+    public Histogram getHistogram(Operation operation) {
+        return stats.get(operation).histogram;
+    }
+
+    public Map<Integer, Long> getStatuses(Operation operation) {
+        Map<Integer, Long> statuses = new TreeMap<>();
+        stats.get(operation).statuses.forEach((status, count) -> statuses.put(status, count.sum()));
+        return statuses;
+    }
+
+    public Histogram getTotalHistogram() {
+        Histogram total = newHistogram();
+        stats.values().forEach(operationStats -> total.add(operationStats.histogram));
+        return total;
+    }
+
+    private static long processCpuNanos() {
+        java.lang.management.OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+
+        return bean instanceof com.sun.management.OperatingSystemMXBean
+                ? ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime() : 0;
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_MICROS, 3);
+    }
+
+    private static class Stats {
+
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+        private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder bytes = new LongAdder();
+        private Histogram histogram = newHistogram();
+
+        void record(int status, long bytes, long elapsedNanos) {
+            long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(elapsedNanos), HIGHEST_TRACKABLE_MICROS);
+
+            recorder.recordValue(Math.max(1, micros));
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+            this.bytes.add(bytes);
+        }
+
+        void finish() {
+            histogram = recorder.getIntervalHistogram();
+        }
+
+    }
+
+}
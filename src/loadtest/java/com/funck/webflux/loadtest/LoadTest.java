@@ -0,0 +1,136 @@
+package com.funck.webflux.loadtest;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Teste de carga de ponta a ponta: sobe a aplicação com o perfil loadtest, usando um H2 em memória no
+ * lugar do Postgres, aquece, mede pelo tempo configurado e grava o relatório em JSON e HTML.
+ * <p>
+ * mvn -Ploadtest verify -DskipTests -Dloadtest.args="--duration=60s --concurrency=128 --mix=get=80,put=20"
+ * <p>
+ * Com --conditional=true as leituras mandam If-None-Match, para medir o que os 304 economizam.
+ * <p>
+ * --scenario=streaming lista --stream-rows animes em NDJSON e SSE e grava streaming.json
+ * <p>
+ * --scenario=batch-insert cadastra --batch-sizes animes de uma vez e grava batch-insert.json
+ * <p>
+ * --scenario=queries conta as consultas ao banco por leitura, sem e com o cache de usuários, e grava queries.json
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        switch (options.getScenario()) {
+            case STREAMING:
+                scenario(options, against(options, baseUrl ->
+                        new StreamingScenario(HttpClient.create().baseUrl(baseUrl), options).run()));
+                break;
+            case BATCH_INSERT:
+                scenario(options, against(options, baseUrl ->
+                        new BatchInsertScenario(HttpClient.create().baseUrl(baseUrl), options).run()));
+                break;
+            case QUERIES:
+                scenario(options, queries(options));
+                break;
+            default:
+                against(options, baseUrl -> mix(options, baseUrl));
+        }
+    }
+
+    /**
+     * Roda contra o --base-url ou contra a aplicação que o teste sobe e derruba no fim. Os argumentos, como
+     * --chave=valor, passam na frente do application-loadtest.yml
+     *
+     * @param options
+     * @param run
+     * @param args
+     * @return
+     * @throws IOException
+     */
+    private static <T> T against(LoadTestOptions options, Run<T> run, String... args) throws IOException {
+        if (options.getBaseUrl() != null) {
+            return run.run(options.getBaseUrl());
+        }
+
+        ConfigurableApplicationContext context = start(args);
+
+        try {
+            return run.run("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Com a aplicação do teste mede duas vezes, sem e com o cache de usuários. Com --base-url mede só a
+     * configuração que está rodando
+     *
+     * @param options
+     * @return
+     * @throws IOException
+     */
+    private static Map<String, Object> queries(LoadTestOptions options) throws IOException {
+        Run<Map<String, Object>> run = baseUrl -> new QueriesScenario(baseUrl, options).run();
+
+        if (options.getBaseUrl() != null) {
+            return run.run(options.getBaseUrl());
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        // O banco é outro porque o H2 em memória continua aberto, com os usuários do data.sql, depois da primeira
+        report.put("withoutUserCache", against(options, run,
+                "--anime.security.user-cache.enabled=false",
+                "--spring.r2dbc.url=r2dbc:h2:mem:///loadtest-without-user-cache?options=DB_CLOSE_DELAY=-1"));
+        report.put("withUserCache", against(options, run));
+        return report;
+    }
+
+    private static LoadReport mix(LoadTestOptions options, String baseUrl) throws IOException {
+        LoadGenerator generator = new LoadGenerator(baseUrl, options.getConcurrency(), options.getMix(),
+                options.getSeededAnimes(), options.isConditional(), options.getListPages());
+
+        generator.run(options.getWarmup(), options.getConcurrency());
+        LoadResult result = generator.run(options.getDuration(), options.getConcurrency());
+
+        LoadReport report = new LoadReport(options, result);
+        report.write(options.getOutput());
+
+        System.out.println(report.summaryLine());
+        System.out.println("Report written to " + options.getOutput().toAbsolutePath());
+        return report;
+    }
+
+    private static void scenario(LoadTestOptions options, Map<String, Object> report) throws IOException {
+        String file = options.getScenario().getName() + ".json";
+        LoadReport.write(options.getOutput(), file, report);
+
+        System.out.println(LoadReport.toJson(report));
+        System.out.println("Report written to " + options.getOutput().resolve(file).toAbsolutePath());
+    }
+
+    private static ConfigurableApplicationContext start(String... args) {
+        // O restart do devtools subiria a aplicação de novo em outra thread
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Schedulers.enableMetrics();
+
+        return new SpringApplicationBuilder(LoadTestApplication.class)
+                .profiles("loadtest")
+                .properties("server.port=0")
+                .run(args);
+    }
+
+    private interface Run<T> {
+
+        T run(String baseUrl) throws IOException;
+
+    }
+
+}
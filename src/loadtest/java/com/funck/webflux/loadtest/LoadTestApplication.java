@@ -0,0 +1,24 @@
+package com.funck.webflux.loadtest;
+
+import com.funck.webflux.SpringWebfluxEssentialsApplication;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+
+/**
+ * Sobe os mesmos componentes da aplicação sem carregar a SpringWebfluxEssentialsApplication, cujo
+ * bloco estático instala o BlockHound. A instrumentação dele é para desenvolvimento e distorceria as latências
+ */
+@SpringBootApplication
+@AutoConfigurationPackage(basePackageClasses = SpringWebfluxEssentialsApplication.class)
+@ComponentScan(basePackageClasses = SpringWebfluxEssentialsApplication.class,
+        excludeFilters = {
+                @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = SpringWebfluxEssentialsApplication.class),
+                @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = LoadTestApplication.class)
+        })
+@ConfigurationPropertiesScan(basePackageClasses = SpringWebfluxEssentialsApplication.class)
+public class LoadTestApplication {
+
+}
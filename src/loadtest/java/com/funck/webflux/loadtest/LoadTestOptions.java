@@ -0,0 +1,134 @@
+package com.funck.webflux.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Parâmetros do teste de carga, informados como --chave=valor
+ */
+public class LoadTestOptions {
+
+    private final Scenario scenario;
+    private final Duration duration;
+    private final Duration warmup;
+    private final int concurrency;
+    private final LoadMix mix;
+    private final int seededAnimes;
+    private final String baseUrl;
+    private final Path output;
+    private final boolean conditional;
+    private final int listPages;
+    private final int streamRows;
+    private final List<String> streamMediaTypes;
+    private final List<Integer> batchSizes;
+
+    private LoadTestOptions(Map<String, String> options) {
+        this.scenario = Scenario.parse(options.getOrDefault("scenario", "mix"));
+        this.duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+        this.warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+        this.mix = LoadMix.parse(options.getOrDefault("mix", "get=60,list=20,post=10,put=5,delete=5"));
+        // Quantidade de animes do data.sql, ids de 1 até esse valor existem no início
+        this.seededAnimes = Integer.parseInt(options.getOrDefault("seeded-animes", "1000"));
+        this.baseUrl = options.get("base-url");
+        this.output = Path.of(options.getOrDefault("output", "target/loadtest"));
+        this.conditional = Boolean.parseBoolean(options.getOrDefault("conditional", "false"));
+        this.listPages = Integer.parseInt(options.getOrDefault("list-pages", "0"));
+        this.streamRows = Integer.parseInt(options.getOrDefault("stream-rows", "1000000"));
+        this.streamMediaTypes = List.of(options.getOrDefault("stream-media-types", "application/x-ndjson,text/event-stream")
+                .split(","));
+        this.batchSizes = Arrays.stream(options.getOrDefault("batch-sizes", "1000,10000,100000").split(","))
+                .map(String::trim)
+                .map(Integer::valueOf)
+                .collect(Collectors.toList());
+    }
+
+    public static LoadTestOptions parse(String... args) {
+        Map<String, String> options = new HashMap<>();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Invalid option " + arg + ", use --name=value");
+            }
+
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        return new LoadTestOptions(options);
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public LoadMix getMix() {
+        return mix;
+    }
+
+    public int getSeededAnimes() {
+        return seededAnimes;
+    }
+
+    /**
+     * Endereço de uma aplicação já rodando, sem ele o teste sobe a aplicação com o perfil loadtest
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    /**
+     * Reenvia nas leituras o último ETag recebido para cada URL, como um cliente que faz polling
+     */
+    public boolean isConditional() {
+        return conditional;
+    }
+
+    /**
+     * Quantidade de páginas diferentes pedidas pelo LIST, zero sorteia o cursor entre todos os animes
+     */
+    public int getListPages() {
+        return listPages;
+    }
+
+    /**
+     * Tamanho da tabela listada no cenário streaming, o que faltar é cadastrado antes da medição
+     */
+    public int getStreamRows() {
+        return streamRows;
+    }
+
+    public List<String> getStreamMediaTypes() {
+        return streamMediaTypes;
+    }
+
+    /**
+     * Quantidades de animes cadastradas de uma vez no cenário batch-insert, uma medida para cada
+     */
+    public List<Integer> getBatchSizes() {
+        return batchSizes;
+    }
+
+}
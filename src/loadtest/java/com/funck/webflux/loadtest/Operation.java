@@ -0,0 +1,24 @@
+package com.funck.webflux.loadtest;
+
+/**
+ * Requisições disparadas pelo teste de carga, leituras com o usuário felipe e escritas com o admin
+ */
+public enum Operation {
+
+    GET("GET /animes/{id}"),
+    LIST("GET /animes"),
+    POST("POST /animes"),
+    PUT("PUT /animes/{id}"),
+    DELETE("DELETE /animes/{id}");
+
+    private final String route;
+
+    Operation(String route) {
+        this.route = route;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+}
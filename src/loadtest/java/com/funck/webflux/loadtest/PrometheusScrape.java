@@ -0,0 +1,67 @@
+package com.funck.webflux.loadtest;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Uma leitura do /actuator/prometheus, com o usuário admin. Serve tanto para a aplicação que o teste sobe
+ * quanto para uma já rodando em --base-url
+ */
+public class PrometheusScrape {
+
+    private final List<String> lines;
+
+    private PrometheusScrape(List<String> lines) {
+        this.lines = lines;
+    }
+
+    public static Mono<PrometheusScrape> fetch(HttpClient client) {
+        return client.headers(headers -> headers.set(HttpHeaderNames.AUTHORIZATION, LoadGenerator.basic("admin")))
+                .get()
+                .uri("/actuator/prometheus")
+                .responseSingle((response, body) -> response.status().code() == 200 ? body.asString()
+                        : Mono.error(new IllegalStateException("/actuator/prometheus answered " + response.status())))
+                .map(text -> new PrometheusScrape(text.lines()
+                        .filter(line -> !line.startsWith("#"))
+                        .collect(Collectors.toList())));
+    }
+
+    /**
+     * Soma das séries da métrica que têm todos os labels informados, como area="heap"
+     *
+     * @param metric
+     * @param labels
+     * @return
+     */
+    public double sum(String metric, String... labels) {
+        double sum = 0;
+
+        for (String line : lines) {
+            if (matches(line, metric, labels)) {
+                sum += Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+
+        return sum;
+    }
+
+    private static boolean matches(String line, String metric, String... labels) {
+        if (!line.startsWith(metric) || line.length() == metric.length()
+                || (line.charAt(metric.length()) != '{' && line.charAt(metric.length()) != ' ')) {
+            return false;
+        }
+
+        for (String label : labels) {
+            if (!line.contains(label)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+}
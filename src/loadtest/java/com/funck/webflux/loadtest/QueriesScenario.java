@@ -0,0 +1,62 @@
+package com.funck.webflux.loadtest;
+
+import reactor.netty.http.client.HttpClient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Só leituras, GET /animes/{id} e a listagem, pelo tempo configurado. As chamadas de cada repositório
+ * saem do anime.repository no /actuator/prometheus, lido antes e depois da medida, e são divididas pela
+ * quantidade de requisições. Toda requisição autentica pelo httpBasic, então as do userRepository mostram
+ * quanto o cache de usuários tira do banco
+ */
+public class QueriesScenario {
+
+    private static final LoadMix READ_MIX = LoadMix.parse("get=80,list=20");
+    private static final String REPOSITORY_CALLS = "anime_repository_seconds_count";
+
+    private final HttpClient client;
+    private final LoadGenerator generator;
+    private final LoadTestOptions options;
+
+    public QueriesScenario(String baseUrl, LoadTestOptions options) {
+        this.client = HttpClient.create().baseUrl(baseUrl);
+        this.generator = new LoadGenerator(baseUrl, options.getConcurrency(), READ_MIX, options.getSeededAnimes(),
+                false, options.getListPages());
+        this.options = options;
+    }
+
+    public Map<String, Object> run() {
+        generator.run(options.getWarmup(), options.getConcurrency());
+
+        PrometheusScrape before = PrometheusScrape.fetch(client).block();
+        LoadResult result = generator.run(options.getDuration(), options.getConcurrency());
+        PrometheusScrape after = PrometheusScrape.fetch(client).block();
+
+        long requests = result.getTotalHistogram().getTotalCount();
+        double userQueries = calls(before, after, "userRepository");
+        double animeQueries = calls(before, after, "animeRepository");
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", requests);
+        report.put("requestsPerSecond", round(requests / result.getElapsedSeconds()));
+        report.put("statuses", Map.of(
+                Operation.GET.name(), result.getStatuses(Operation.GET),
+                Operation.LIST.name(), result.getStatuses(Operation.LIST)));
+        report.put("userQueriesPerRequest", round(userQueries / requests));
+        report.put("animeQueriesPerRequest", round(animeQueries / requests));
+        report.put("queriesPerRequest", round((userQueries + animeQueries) / requests));
+        return report;
+    }
+
+    private static double calls(PrometheusScrape before, PrometheusScrape after, String repository) {
+        String label = "repository=\"" + repository + "\"";
+        return after.sum(REPOSITORY_CALLS, label) - before.sum(REPOSITORY_CALLS, label);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+}
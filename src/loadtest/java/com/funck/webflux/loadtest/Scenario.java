@@ -0,0 +1,38 @@
+package com.funck.webflux.loadtest;
+
+import java.util.Locale;
+
+/**
+ * O que o teste de carga mede, informado como --scenario=streaming
+ */
+public enum Scenario {
+
+    /**
+     * Clientes simultâneos disparando o --mix pelo tempo configurado
+     */
+    MIX,
+
+    /**
+     * A listagem inteira em streaming, com tempo até o primeiro byte e pico de heap
+     */
+    STREAMING,
+
+    /**
+     * Linhas gravadas por segundo pelo POST /animes/batch e pelo POST /animes/ingest
+     */
+    BATCH_INSERT,
+
+    /**
+     * Consultas ao banco por requisição nas leituras, sem e com o cache de usuários
+     */
+    QUERIES;
+
+    public static Scenario parse(String scenario) {
+        return valueOf(scenario.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.funck.webflux.loadtest;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lista a tabela inteira pelo GET /animes em streaming, uma vez por formato, medindo o tempo até o
+ * primeiro byte, o tempo total e o heap do servidor. Antes a tabela é completada até --stream-rows animes.
+ * <p>
+ * O heap vem do /actuator/prometheus lido durante a listagem: o pico do heap usado, que inclui o lixo
+ * ainda não coletado, e o pico do que sobrou na old gen depois de cada coleta, que cresceria com a
+ * quantidade de linhas se o servidor guardasse o resultado inteiro
+ */
+public class StreamingScenario {
+
+    private static final Duration HEAP_SAMPLE_INTERVAL = Duration.ofMillis(100);
+    private static final double MB = 1024 * 1024;
+
+    private final HttpClient client;
+    private final HttpClient reader;
+    private final LoadTestOptions options;
+
+    public StreamingScenario(HttpClient client, LoadTestOptions options) {
+        this.client = client;
+        this.reader = client.headers(headers -> headers.set(HttpHeaderNames.AUTHORIZATION, LoadGenerator.basic("felipe")));
+        this.options = options;
+    }
+
+    public Map<String, Object> run() {
+        int missing = options.getStreamRows() - options.getSeededAnimes();
+
+        if (missing > 0) {
+            new AnimeSeeder(client).seed("Streaming", missing);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("rows", options.getStreamRows());
+
+        for (String mediaType : options.getStreamMediaTypes()) {
+            // Uma listagem antes da medida, para a primeira não pagar o aquecimento do JIT
+            list(mediaType);
+            report.put(mediaType, list(mediaType));
+        }
+
+        return report;
+    }
+
+    private Map<String, Object> list(String mediaType) {
+        double heapBefore = heapUsed(PrometheusScrape.fetch(client).block());
+        AtomicLong peakHeap = new AtomicLong();
+        AtomicLong peakLiveData = new AtomicLong();
+
+        Disposable sampling = Flux.interval(Duration.ZERO, HEAP_SAMPLE_INTERVAL)
+                .onBackpressureDrop()
+                .concatMap(tick -> PrometheusScrape.fetch(client))
+                .subscribe(scrape -> {
+                    peakHeap.accumulateAndGet((long) heapUsed(scrape), Math::max);
+                    peakLiveData.accumulateAndGet((long) scrape.sum("jvm_gc_live_data_size_bytes"), Math::max);
+                });
+
+        RowCounter rows = new RowCounter(mediaType.equals("text/event-stream"));
+        AtomicLong firstByte = new AtomicLong(-1);
+        long start = System.nanoTime();
+
+        int status = reader.headers(headers -> headers.set(HttpHeaderNames.ACCEPT, mediaType))
+                .get()
+                .uri("/animes")
+                .response((response, body) -> body
+                        .doOnNext(buffer -> {
+                            firstByte.compareAndSet(-1, System.nanoTime() - start);
+                            rows.count(buffer);
+                        })
+                        .then(Mono.just(response.status().code())))
+                .single()
+                .block();
+
+        long elapsed = System.nanoTime() - start;
+        sampling.dispose();
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("status", status);
+        summary.put("rows", rows.rows);
+        summary.put("timeToFirstByteMs", round(firstByte.get() / 1e6));
+        summary.put("totalMs", round(elapsed / 1e6));
+        summary.put("rowsPerSecond", round(rows.rows / (elapsed / 1e9)));
+        summary.put("heapBeforeMb", round(heapBefore / MB));
+        summary.put("peakHeapUsedMb", round(peakHeap.get() / MB));
+        summary.put("peakLiveDataMb", round(peakLiveData.get() / MB));
+        return summary;
+    }
+
+    private static double heapUsed(PrometheusScrape scrape) {
+        return scrape.sum("jvm_memory_used_bytes", "area=\"heap\"");
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    /**
+     * Conta as linhas do NDJSON, uma por quebra de linha, ou os eventos do SSE, um por linha em branco
+     */
+    private static final class RowCounter {
+
+        private final boolean eventStream;
+        private boolean afterNewline;
+        private long rows;
+
+        RowCounter(boolean eventStream) {
+            this.eventStream = eventStream;
+        }
+
+        void count(ByteBuf buffer) {
+            for (int i = buffer.readerIndex(); i < buffer.writerIndex(); i++) {
+                if (buffer.getByte(i) != '\n') {
+                    afterNewline = false;
+                } else if (!eventStream || afterNewline) {
+                    rows++;
+                    afterNewline = false;
+                } else {
+                    afterNewline = true;
+                }
+            }
+        }
+
+    }
+
+}
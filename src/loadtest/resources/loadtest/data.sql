@@ -0,0 +1,6 @@
+-- Senha 1234 para os dois usuarios, os mesmos usados pelo AnimeResourceIT
+INSERT INTO tb_user (name, username, password, authorities) VALUES
+    ('Admin', 'admin', '{bcrypt}$2a$10$IlHZ.dxrO5RmO/RRgs8k1eYYF8/2glnMU1w54AdszdRAifvb.HWyO', 'ROLE_ADMIN,ROLE_USER'),
+    ('Felipe', 'felipe', '{bcrypt}$2a$10$IlHZ.dxrO5RmO/RRgs8k1eYYF8/2glnMU1w54AdszdRAifvb.HWyO', 'ROLE_USER');
+
+INSERT INTO anime (name) SELECT CONCAT('Anime ', X) FROM SYSTEM_RANGE(1, 1000);
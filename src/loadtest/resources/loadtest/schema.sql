@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS anime (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS tb_user (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    username VARCHAR(100) NOT NULL UNIQUE,
+    password VARCHAR(150) NOT NULL,
+    authorities VARCHAR(150) NOT NULL
+);
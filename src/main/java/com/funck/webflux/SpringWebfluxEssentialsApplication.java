@@ -2,9 +2,12 @@ package com.funck.webflux;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import reactor.blockhound.BlockHound;
+import reactor.core.scheduler.Schedulers;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class SpringWebfluxEssentialsApplication {
 
 	static {
@@ -16,6 +19,8 @@ public class SpringWebfluxEssentialsApplication {
 	}
 
 	public static void main(String[] args) {
+		// Precisa ser chamado antes dos schedulers serem criados
+		Schedulers.enableMetrics();
 		SpringApplication.run(SpringWebfluxEssentialsApplication.class, args);
 	}
 
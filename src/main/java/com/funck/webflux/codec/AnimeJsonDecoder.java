@@ -0,0 +1,71 @@
+package com.funck.webflux.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.InvalidDefinitionException;
+import com.funck.webflux.domain.Anime;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.CodecException;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.codec.Hints;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.log.LogFormatUtils;
+import org.springframework.http.codec.json.Jackson2CodecSupport;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jackson2JsonDecoder com os ObjectReader do Anime e da List&lt;Anime&gt; montados uma vez só, usados nos
+ * corpos lidos inteiros (save e saveAll). O ingest recebe as linhas sem decodificar e lê cada uma no
+ * AnimeIngestService
+ */
+public class AnimeJsonDecoder extends Jackson2JsonDecoder {
+
+    private final ObjectReader animeReader;
+    private final ObjectReader animeListReader;
+
+    public AnimeJsonDecoder(ObjectMapper mapper) {
+        super(mapper);
+        this.animeReader = mapper.readerFor(Anime.class);
+        this.animeListReader = mapper.readerFor(mapper.getTypeFactory().constructCollectionType(List.class, Anime.class));
+    }
+
+    @Override
+    public Object decode(DataBuffer dataBuffer, ResolvableType targetType, MimeType mimeType,
+                         Map<String, Object> hints) throws DecodingException {
+        ObjectReader reader = AnimeJsonEncoder.isAnime(targetType) ? animeReader
+                : AnimeJsonEncoder.isAnimeList(targetType) ? animeListReader : null;
+
+        if (reader == null || (hints != null && hints.containsKey(Jackson2CodecSupport.JSON_VIEW_HINT))) {
+            return super.decode(dataBuffer, targetType, mimeType, hints);
+        }
+
+        try {
+            Object value = reader.readValue(dataBuffer.asInputStream());
+            logValue(hints, value);
+            return value;
+        } catch (InvalidDefinitionException ex) {
+            throw new CodecException("Type definition error: " + ex.getType(), ex);
+        } catch (JsonProcessingException ex) {
+            throw new DecodingException("JSON decoding error: " + ex.getOriginalMessage(), ex);
+        } catch (IOException ex) {
+            throw new DecodingException("I/O error while parsing input stream", ex);
+        } finally {
+            DataBufferUtils.release(dataBuffer);
+        }
+    }
+
+    private void logValue(Map<String, Object> hints, Object value) {
+        if (!Hints.isLoggingSuppressed(hints)) {
+            LogFormatUtils.traceDebug(logger, traceOn -> Hints.getLogPrefix(hints) + "Decoded ["
+                    + LogFormatUtils.formatValue(value, !traceOn) + "]");
+        }
+    }
+
+}
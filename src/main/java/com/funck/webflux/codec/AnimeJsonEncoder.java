@@ -0,0 +1,117 @@
+package com.funck.webflux.codec;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.exc.InvalidDefinitionException;
+import com.funck.webflux.domain.Anime;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.CodecException;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.codec.Hints;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.log.LogFormatUtils;
+import org.springframework.http.codec.json.Jackson2CodecSupport;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jackson2JsonEncoder com os ObjectWriter do Anime e da List&lt;Anime&gt; montados uma vez só. O encoder
+ * padrão resolve o writer a cada resposta e serializa num byte[] que depois é copiado para o
+ * DataBuffer; aqui o JsonGenerator escreve direto no DataBuffer, usando os buffers reciclados do
+ * próprio Jackson.
+ * <p>
+ * Qualquer outro tipo, JSON view ou encoding diferente de UTF-8 segue pelo caminho padrão
+ */
+public class AnimeJsonEncoder extends Jackson2JsonEncoder {
+
+    // Tamanho médio de um anime serializado, só para o primeiro buffer já nascer perto do tamanho final
+    private static final int ANIME_SIZE_ESTIMATE = 48;
+
+    private final ObjectWriter animeWriter;
+    private final ObjectWriter animeListWriter;
+
+    public AnimeJsonEncoder(ObjectMapper mapper) {
+        super(mapper);
+        this.animeWriter = mapper.writerFor(Anime.class);
+        this.animeListWriter = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, Anime.class));
+    }
+
+    /**
+     * Usado também no NDJSON, que escreve elemento por elemento com o writer devolvido aqui
+     */
+    @Override
+    protected ObjectWriter customizeWriter(ObjectWriter writer, MimeType mimeType, ResolvableType elementType,
+                                           Map<String, Object> hints) {
+        ObjectWriter prebuilt = writer.getConfig().getActiveView() == null ? prebuiltWriter(elementType) : null;
+        return super.customizeWriter(prebuilt != null ? prebuilt : writer, mimeType, elementType, hints);
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  MimeType mimeType, Map<String, Object> hints) {
+        ObjectWriter writer = prebuiltWriter(valueType);
+
+        if (writer == null || value instanceof MappingJacksonValue || getJsonEncoding(mimeType) != JsonEncoding.UTF8
+                || (hints != null && hints.containsKey(Jackson2CodecSupport.JSON_VIEW_HINT))) {
+            return super.encodeValue(value, bufferFactory, valueType, mimeType, hints);
+        }
+
+        logValue(hints, value);
+
+        int estimate = value instanceof Collection ? ((Collection<?>) value).size() * ANIME_SIZE_ESTIMATE + 2 : ANIME_SIZE_ESTIMATE;
+        DataBuffer buffer = bufferFactory.allocateBuffer(estimate);
+        boolean release = true;
+
+        try (OutputStream outputStream = buffer.asOutputStream();
+             JsonGenerator generator = writer.getFactory().createGenerator(outputStream, JsonEncoding.UTF8)) {
+            writer.writeValue(generator, value);
+            generator.flush();
+            release = false;
+        } catch (InvalidDefinitionException ex) {
+            throw new CodecException("Type definition error: " + ex.getType(), ex);
+        } catch (JsonProcessingException ex) {
+            throw new EncodingException("JSON encoding error: " + ex.getOriginalMessage(), ex);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unexpected I/O error while writing to data buffer", ex);
+        } finally {
+            if (release) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        Hints.touchDataBuffer(buffer, hints, logger);
+        return buffer;
+    }
+
+    static boolean isAnime(ResolvableType type) {
+        return Anime.class.equals(type.toClass());
+    }
+
+    static boolean isAnimeList(ResolvableType type) {
+        return List.class.isAssignableFrom(type.toClass()) && Anime.class.equals(type.asCollection().resolveGeneric(0));
+    }
+
+    private ObjectWriter prebuiltWriter(ResolvableType type) {
+        return isAnime(type) ? animeWriter : isAnimeList(type) ? animeListWriter : null;
+    }
+
+    private void logValue(Map<String, Object> hints, Object value) {
+        if (!Hints.isLoggingSuppressed(hints)) {
+            LogFormatUtils.traceDebug(logger, traceOn -> Hints.getLogPrefix(hints) + "Encoding ["
+                    + LogFormatUtils.formatValue(value, !traceOn) + "]");
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.funck.webflux.codec;
+
+import com.funck.webflux.domain.Anime;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapeamento entre o Anime e as mensagens do src/main/proto/anime.proto, escrito à mão para não depender
+ * do protoc nem do protobuf-java só por três mensagens
+ */
+final class AnimeProtobuf {
+
+    static final MediaType APPLICATION_PROTOBUF = new MediaType("application", "x-protobuf");
+
+    // message Anime
+    private static final int ANIME_ID = 1;
+    private static final int ANIME_NAME = 2;
+    private static final int ANIME_VERSION = 3;
+
+    // message AnimeList
+    private static final int LIST_ANIMES = 1;
+
+    // Tags lidos, número do campo mais o tipo esperado. Um campo conhecido chegando com outro tipo é pulado
+    // como um desconhecido, ler um varint onde há um texto desalinharia o resto da mensagem
+    private static final int ANIME_ID_TAG = ANIME_ID << 3 | ProtobufWriter.VARINT;
+    private static final int ANIME_NAME_TAG = ANIME_NAME << 3 | ProtobufWriter.LENGTH_DELIMITED;
+    private static final int ANIME_VERSION_TAG = ANIME_VERSION << 3 | ProtobufWriter.VARINT;
+    private static final int LIST_ANIMES_TAG = LIST_ANIMES << 3 | ProtobufWriter.LENGTH_DELIMITED;
+
+    // message ErrorAttributes, um map<string, string> é um repeated de mensagens com key 1 e value 2
+    private static final int ERROR_ATTRIBUTES = 1;
+    private static final int ENTRY_KEY = 1;
+    private static final int ENTRY_VALUE = 2;
+
+    private AnimeProtobuf() {
+    }
+
+    static void writeAnime(ProtobufWriter writer, Anime anime) {
+        writer.int64(ANIME_ID, anime.getId())
+                .string(ANIME_NAME, anime.getName())
+                .int64(ANIME_VERSION, anime.getVersion());
+    }
+
+    static void writeAnimeList(ProtobufWriter writer, Collection<?> animes) {
+        ProtobufWriter message = new ProtobufWriter(64);
+
+        for (Object anime : animes) {
+            writeAnime(message.reset(), (Anime) anime);
+            writer.message(LIST_ANIMES, message);
+        }
+    }
+
+    static void writeErrorAttributes(ProtobufWriter writer, Map<?, ?> attributes) {
+        ProtobufWriter entry = new ProtobufWriter(64);
+
+        attributes.forEach((key, value) -> {
+            if (value != null) {
+                writer.message(ERROR_ATTRIBUTES, entry.reset()
+                        .string(ENTRY_KEY, String.valueOf(key))
+                        .string(ENTRY_VALUE, String.valueOf(value)));
+            }
+        });
+    }
+
+    static Anime readAnime(ProtobufReader reader) {
+        Anime anime = new Anime();
+
+        while (reader.hasRemaining()) {
+            int tag = reader.tag();
+
+            switch (tag) {
+                case ANIME_ID_TAG:
+                    anime.setId((int) reader.varint());
+                    break;
+                case ANIME_NAME_TAG:
+                    anime.setName(reader.string());
+                    break;
+                case ANIME_VERSION_TAG:
+                    anime.setVersion(reader.varint());
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+
+        return anime;
+    }
+
+    static List<Anime> readAnimeList(ProtobufReader reader) {
+        List<Anime> animes = new ArrayList<>();
+
+        while (reader.hasRemaining()) {
+            int tag = reader.tag();
+
+            if (tag == LIST_ANIMES_TAG) {
+                animes.add(readAnime(reader.message()));
+            } else {
+                reader.skip(tag);
+            }
+        }
+
+        return animes;
+    }
+
+}
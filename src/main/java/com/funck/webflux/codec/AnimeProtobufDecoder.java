@@ -0,0 +1,70 @@
+package com.funck.webflux.codec;
+
+import com.funck.webflux.domain.Anime;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lê de application/x-protobuf um Anime ou uma AnimeList. A mensagem inteira é juntada antes da leitura,
+ * respeitando o limite de memória configurado nos codecs
+ */
+public class AnimeProtobufDecoder extends AbstractDataBufferDecoder<Object> {
+
+    private static final ResolvableType ANIME_LIST_TYPE = ResolvableType.forClassWithGenerics(List.class, Anime.class);
+
+    public AnimeProtobufDecoder() {
+        super(AnimeProtobuf.APPLICATION_PROTOBUF);
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        if (!super.canDecode(elementType, mimeType)) {
+            return false;
+        }
+
+        Class<?> type = elementType.toClass();
+
+        if (Collection.class.isAssignableFrom(type)) {
+            return type.isAssignableFrom(List.class) && Anime.class.equals(elementType.asCollection().resolveGeneric(0));
+        }
+
+        return Anime.class.equals(type);
+    }
+
+    /**
+     * Um Flux de animes no corpo é lido como uma única AnimeList
+     */
+    @Override
+    public Flux<Object> decode(Publisher<DataBuffer> input, ResolvableType elementType,
+                               MimeType mimeType, Map<String, Object> hints) {
+        return decodeToMono(input, ANIME_LIST_TYPE, mimeType, hints)
+                .flatMapIterable(animes -> (List<?>) animes);
+    }
+
+    @Override
+    public Object decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+
+        try {
+            buffer.read(bytes);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+
+        ProtobufReader reader = new ProtobufReader(bytes);
+
+        return Collection.class.isAssignableFrom(targetType.toClass())
+                ? AnimeProtobuf.readAnimeList(reader)
+                : AnimeProtobuf.readAnime(reader);
+    }
+
+}
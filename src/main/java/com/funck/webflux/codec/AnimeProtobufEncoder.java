@@ -0,0 +1,98 @@
+package com.funck.webflux.codec;
+
+import com.funck.webflux.domain.Anime;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Escreve em application/x-protobuf um Anime, uma lista ou um Flux de animes como AnimeList e o mapa de
+ * atributos de erro do GlobalExceptionHandler como ErrorAttributes. Em application/stream+x-protobuf cada
+ * anime de um Flux é escrito assim que chega, precedido do tamanho, como o writeDelimitedTo do protobuf-java
+ */
+public class AnimeProtobufEncoder implements HttpMessageEncoder<Object> {
+
+    public static final String APPLICATION_STREAM_PROTOBUF_VALUE = "application/stream+x-protobuf";
+
+    public static final MediaType APPLICATION_STREAM_PROTOBUF = MediaType.parseMediaType(APPLICATION_STREAM_PROTOBUF_VALUE);
+
+    private static final List<MimeType> MIME_TYPES = List.of(AnimeProtobuf.APPLICATION_PROTOBUF, APPLICATION_STREAM_PROTOBUF);
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        if (mimeType != null && MIME_TYPES.stream().noneMatch(type -> type.isCompatibleWith(mimeType))) {
+            return false;
+        }
+
+        Class<?> type = elementType.toClass();
+
+        if (Collection.class.isAssignableFrom(type)) {
+            return Anime.class.equals(elementType.asCollection().resolveGeneric(0));
+        }
+
+        return Anime.class.equals(type) || Map.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        if (inputStream instanceof Mono) {
+            return Mono.from(inputStream)
+                    .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                    .flux();
+        }
+
+        if (APPLICATION_STREAM_PROTOBUF.isCompatibleWith(mimeType)) {
+            return Flux.from(inputStream)
+                    .map(anime -> {
+                        ProtobufWriter message = new ProtobufWriter(64);
+                        AnimeProtobuf.writeAnime(message, (Anime) anime);
+                        ProtobufWriter writer = new ProtobufWriter(message.size() + 5).delimited(message);
+                        return bufferFactory.allocateBuffer(writer.size()).write(writer.buffer(), 0, writer.size());
+                    });
+        }
+
+        // Sem um tipo de streaming, um Flux vira uma única AnimeList
+        return Flux.from(inputStream)
+                .collectList()
+                .map(animes -> encodeValue(animes, bufferFactory, elementType, mimeType, hints))
+                .flux();
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  MimeType mimeType, Map<String, Object> hints) {
+        ProtobufWriter writer = new ProtobufWriter(256);
+
+        if (value instanceof Anime) {
+            AnimeProtobuf.writeAnime(writer, (Anime) value);
+        } else if (value instanceof Collection) {
+            AnimeProtobuf.writeAnimeList(writer, (Collection<?>) value);
+        } else {
+            AnimeProtobuf.writeErrorAttributes(writer, (Map<?, ?>) value);
+        }
+
+        return bufferFactory.allocateBuffer(writer.size()).write(writer.buffer(), 0, writer.size());
+    }
+
+    @Override
+    public List<MimeType> getEncodableMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override
+    public List<MediaType> getStreamingMediaTypes() {
+        return List.of(APPLICATION_STREAM_PROTOBUF);
+    }
+
+}
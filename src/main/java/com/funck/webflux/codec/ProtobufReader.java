@@ -0,0 +1,112 @@
+package com.funck.webflux.codec;
+
+import org.springframework.core.codec.DecodingException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Leitura do formato binário do protobuf. Campos desconhecidos são pulados, como o protobuf faz, para que
+ * um cliente com um anime.proto mais novo continue compatível
+ */
+final class ProtobufReader {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    ProtobufReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    private ProtobufReader(byte[] buffer, int offset, int limit) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = limit;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * @return o tag do próximo campo, número do campo deslocado 3 bits à esquerda mais o tipo
+     */
+    int tag() {
+        return (int) varint();
+    }
+
+    long varint() {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = next();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new DecodingException("Malformed protobuf varint");
+    }
+
+    String string() {
+        int length = length();
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    ProtobufReader message() {
+        int length = length();
+        ProtobufReader message = new ProtobufReader(buffer, position, position + length);
+        position += length;
+        return message;
+    }
+
+    void skip(int tag) {
+        switch (tag & 0x7) {
+            case ProtobufWriter.VARINT:
+                varint();
+                break;
+            case 1:
+                advance(8);
+                break;
+            case ProtobufWriter.LENGTH_DELIMITED:
+                advance(length());
+                break;
+            case 5:
+                advance(4);
+                break;
+            default:
+                throw new DecodingException("Unsupported protobuf wire type " + (tag & 0x7));
+        }
+    }
+
+    private int length() {
+        long length = varint();
+
+        if (length < 0 || length > limit - position) {
+            throw new DecodingException("Truncated protobuf message");
+        }
+
+        return (int) length;
+    }
+
+    private void advance(int bytes) {
+        if (bytes > limit - position) {
+            throw new DecodingException("Truncated protobuf message");
+        }
+
+        position += bytes;
+    }
+
+    private byte next() {
+        if (position >= limit) {
+            throw new DecodingException("Truncated protobuf message");
+        }
+
+        return buffer[position++];
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.funck.webflux.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Escrita do formato binário do protobuf, só com os tipos que o anime.proto usa: varint e campos
+ * delimitados por tamanho
+ */
+final class ProtobufWriter {
+
+    static final int VARINT = 0;
+    static final int LENGTH_DELIMITED = 2;
+
+    private byte[] buffer;
+    private int position;
+
+    ProtobufWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Campos nulos não são escritos, quem lê recebe nulo de volta
+     */
+    ProtobufWriter int64(int field, Number value) {
+        if (value != null) {
+            tag(field, VARINT);
+            varint(value.longValue());
+        }
+
+        return this;
+    }
+
+    ProtobufWriter string(int field, String value) {
+        if (value != null) {
+            bytes(field, value.getBytes(StandardCharsets.UTF_8), 0, -1);
+        }
+
+        return this;
+    }
+
+    /**
+     * Escreve o conteúdo do outro writer como uma mensagem embutida
+     */
+    ProtobufWriter message(int field, ProtobufWriter message) {
+        return bytes(field, message.buffer, 0, message.position);
+    }
+
+    /**
+     * Escreve o conteúdo do outro writer precedido só do tamanho, como o writeDelimitedTo do protobuf-java
+     */
+    ProtobufWriter delimited(ProtobufWriter message) {
+        varint(message.position);
+        ensureCapacity(message.position);
+        System.arraycopy(message.buffer, 0, buffer, position, message.position);
+        position += message.position;
+        return this;
+    }
+
+    ProtobufWriter reset() {
+        position = 0;
+        return this;
+    }
+
+    int size() {
+        return position;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    private ProtobufWriter bytes(int field, byte[] value, int offset, int length) {
+        int size = length < 0 ? value.length : length;
+
+        tag(field, LENGTH_DELIMITED);
+        varint(size);
+        ensureCapacity(size);
+        System.arraycopy(value, offset, buffer, position, size);
+        position += size;
+        return this;
+    }
+
+    private void tag(int field, int wireType) {
+        varint((long) field << 3 | wireType);
+    }
+
+    private void varint(long value) {
+        ensureCapacity(10);
+
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+}
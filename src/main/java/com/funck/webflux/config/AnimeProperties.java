@@ -0,0 +1,381 @@
+package com.funck.webflux.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configurações da aplicação expostas no prefixo "anime" do application.yml
+ */
+@Data
+@ConfigurationProperties(prefix = "anime")
+public class AnimeProperties {
+
+    private final Pagination pagination = new Pagination();
+
+    private final Streaming streaming = new Streaming();
+
+    private final Batch batch = new Batch();
+
+    private final Ingest ingest = new Ingest();
+
+    private final Cache cache = new Cache();
+
+    private final BatchLoader batchLoader = new BatchLoader();
+
+    private final Security security = new Security();
+
+    private final Warmup warmup = new Warmup();
+
+    private final Search search = new Search();
+
+    private final Changes changes = new Changes();
+
+    private final Concurrency concurrency = new Concurrency();
+
+    private final Replicas replicas = new Replicas();
+
+    private final Queries queries = new Queries();
+
+    @Data
+    public static class Pagination {
+
+        /**
+         * Tamanho de página usado quando o cliente não informa o parâmetro limit
+         */
+        private int defaultSize = 20;
+
+        /**
+         * Maior tamanho de página aceito, independente do limit informado
+         */
+        private int maxSize = 100;
+
+    }
+
+    @Data
+    public static class Streaming {
+
+        /**
+         * Quantidade de linhas lidas do Postgres por vez nas listagens em NDJSON e SSE
+         */
+        private int fetchSize = 256;
+
+    }
+
+    @Data
+    public static class Batch {
+
+        /**
+         * Quantidade de animes enviados ao banco em cada round trip do cadastro em lote
+         */
+        private int chunkSize = 500;
+
+    }
+
+    @Data
+    public static class Ingest {
+
+        /**
+         * Quantidade máxima de animes gravados em cada transação da importação em streaming
+         */
+        private int chunkSize = 1000;
+
+        /**
+         * Tempo máximo que um lote incompleto espera por novos animes antes de ser gravado
+         */
+        private Duration chunkTimeout = Duration.ofSeconds(1);
+
+    }
+
+    @Data
+    public static class Cache {
+
+        /**
+         * Quantidade máxima de animes mantidos no cache do findById
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * Tempo de vida de um anime encontrado no cache
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+
+        /**
+         * Tempo de vida de um id não encontrado, curto para que animes recém criados em outro nó apareçam logo
+         */
+        private Duration notFoundTtl = Duration.ofSeconds(5);
+
+    }
+
+    @Data
+    public static class BatchLoader {
+
+        /**
+         * Tempo que o primeiro id de um lote espera por outros antes da consulta ser feita
+         */
+        private Duration window = Duration.ofMillis(2);
+
+        /**
+         * Quantidade máxima de ids em uma consulta WHERE id IN (...)
+         */
+        private int maxBatchSize = 100;
+
+        /**
+         * Quantidade máxima de consultas em lote executando ao mesmo tempo
+         */
+        private int maxConcurrentBatches = 8;
+
+    }
+
+    @Data
+    public static class Security {
+
+        private final UserCache userCache = new UserCache();
+
+        private final CredentialCache credentialCache = new CredentialCache();
+
+        private final RateLimit rateLimit = new RateLimit();
+
+        @Data
+        public static class UserCache {
+
+            /**
+             * Sem o cache toda autenticação consulta o usuário no banco
+             */
+            private boolean enabled = true;
+
+            /**
+             * Quantidade máxima de usuários mantidos no cache da autenticação
+             */
+            private long maximumSize = 1_000;
+
+            /**
+             * Tempo máximo que uma troca de senha ou de permissões feita fora da aplicação leva para valer
+             */
+            private Duration ttl = Duration.ofMinutes(1);
+
+        }
+
+        @Data
+        public static class CredentialCache {
+
+            /**
+             * Quantidade máxima de credenciais já verificadas mantidas em memória
+             */
+            private long maximumSize = 10_000;
+
+            /**
+             * Tempo em que uma credencial verificada dispensa uma nova verificação do BCrypt
+             */
+            private Duration ttl = Duration.ofSeconds(30);
+
+        }
+
+        @Data
+        public static class RateLimit {
+
+            /**
+             * Limita as requisições em /animes por usuário autenticado
+             */
+            private boolean enabled = true;
+
+            /**
+             * Limite das consultas, GET e HEAD
+             */
+            private final Limit read = new Limit(50, 100);
+
+            /**
+             * Limite das gravações dos administradores, POST, PUT, PATCH e DELETE
+             */
+            private final Limit write = new Limit(5, 20);
+
+            /**
+             * Tempo sem requisições depois do qual o limite de um usuário é descartado
+             */
+            private Duration idleTimeout = Duration.ofMinutes(10);
+
+            /**
+             * Quantidade máxima de usuários acompanhados por rota
+             */
+            private long maximumSize = 100_000;
+
+        }
+
+        @Data
+        @NoArgsConstructor
+        @AllArgsConstructor
+        public static class Limit {
+
+            /**
+             * Requisições por segundo em ritmo constante
+             */
+            private int rate;
+
+            /**
+             * Requisições aceitas de uma vez depois de um tempo parado
+             */
+            private int burst;
+
+        }
+
+    }
+
+    @Data
+    public static class Warmup {
+
+        /**
+         * Abre as conexões iniciais do pool e executa as consultas mais usadas antes da aplicação ficar pronta
+         */
+        private boolean enabled = true;
+
+        /**
+         * Tempo máximo do aquecimento, depois disso a aplicação sobe mesmo sem terminar
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+
+    }
+
+    @Data
+    public static class Search {
+
+        /**
+         * Mantém os nomes em memória para o autocomplete não ir ao banco, ocupando perto de 200 bytes por anime
+         */
+        private boolean prefixIndex = false;
+
+    }
+
+    @Data
+    public static class Changes {
+
+        /**
+         * Canal entre as instâncias: postgres usa LISTEN/NOTIFY, memory fica dentro do processo
+         */
+        private String channel = "postgres";
+
+        /**
+         * Quantidade de alterações guardadas para quem reconecta com Last-Event-ID
+         */
+        private int bufferSize = 1024;
+
+        /**
+         * Alterações pendentes por assinante antes dele ser desconectado por não acompanhar o feed. A fila
+         * do Reactor arredonda para uma potência de 2, com no mínimo 8
+         */
+        private int subscriberBuffer = 256;
+
+        /**
+         * Intervalo do comentário enviado no SSE para que proxies não fechem a conexão parada
+         */
+        private Duration heartbeat = Duration.ofSeconds(15);
+
+    }
+
+    @Data
+    public static class Concurrency {
+
+        /**
+         * Limita as chamadas ao banco feitas pelo AnimeService em andamento ao mesmo tempo, recusando o
+         * excesso com 503 em vez de deixá-lo esperando por uma conexão do pool
+         */
+        private boolean enabled = true;
+
+        /**
+         * Limite usado até as primeiras medições de latência
+         */
+        private int initialLimit = 20;
+
+        private int minLimit = 4;
+
+        private int maxLimit = 200;
+
+        /**
+         * Quanto a latência pode passar da latência de referência antes do limite começar a cair
+         */
+        private double tolerance = 1.5;
+
+        /**
+         * Peso de cada nova medição no limite, entre 0 e 1
+         */
+        private double smoothing = 0.2;
+
+    }
+
+    @Data
+    public static class Replicas {
+
+        /**
+         * URLs R2DBC das réplicas de leitura. Vazio mantém tudo no primário; usuário, senha e pool vêm do
+         * spring.r2dbc quando a URL não informa
+         */
+        private List<String> urls = new ArrayList<>();
+
+        private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+        private Duration healthCheckTimeout = Duration.ofSeconds(2);
+
+        /**
+         * Atraso máximo esperado das réplicas em relação ao primário
+         */
+        private Duration replicationLag = Duration.ofSeconds(2);
+
+        /**
+         * Depois de uma escrita, as leituras do mesmo usuário vão ao primário durante o replicationLag
+         */
+        private boolean readYourWrites = true;
+
+    }
+
+    @Data
+    public static class Queries {
+
+        private Duration readTimeout = Duration.ofSeconds(2);
+
+        private Duration writeTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Prazo de uma operação específica no lugar do readTimeout ou writeTimeout: find-by-id, list-page,
+         * search, autocomplete, save, save-all, ingest, update ou delete. No save-all e no ingest o prazo vale
+         * para cada lote
+         */
+        private Map<String, Duration> timeouts = new HashMap<>();
+
+        private final Hedging hedging = new Hedging();
+
+        @Data
+        public static class Hedging {
+
+            /**
+             * Dispara uma segunda tentativa das leituras que passam do percentil de latência da operação
+             */
+            private boolean enabled = true;
+
+            private double percentile = 0.95;
+
+            /**
+             * Atraso mínimo antes da segunda tentativa, para não dobrar consultas que já são rápidas
+             */
+            private Duration minDelay = Duration.ofMillis(5);
+
+            /**
+             * Medições de latência necessárias antes da primeira segunda tentativa
+             */
+            private int minSamples = 100;
+
+            /**
+             * Fração máxima das leituras que pode ganhar uma segunda tentativa
+             */
+            private double budget = 0.1;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.funck.webflux.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.funck.webflux.codec.AnimeJsonDecoder;
+import com.funck.webflux.codec.AnimeJsonEncoder;
+import com.funck.webflux.codec.AnimeProtobufDecoder;
+import com.funck.webflux.codec.AnimeProtobufEncoder;
+import com.funck.webflux.codec.StreamingCborEncoder;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolverBuilder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/**
+ * Codecs binários para chamadas entre serviços, escolhidos pelo Accept e pelo Content-Type: CBOR, Smile e
+ * protobuf. Ficam no mesmo ServerCodecConfigurer que o GlobalExceptionHandler usa, então os erros saem no
+ * mesmo formato pedido. Sem Accept, ou com um curinga, a resposta continua em JSON pelo AnimeJsonEncoder
+ */
+@Configuration
+public class CodecConfig implements WebFluxConfigurer {
+
+    private static final MimeType[] SMILE_MIME_TYPES = {
+            new MimeType("application", "x-jackson-smile"),
+            new MimeType("application", "*+x-jackson-smile")
+    };
+
+    /**
+     * Troca a reflexão dos getters e setters por lambdas geradas pelo LambdaMetafactory. O Spring Boot
+     * registra todo Module no ObjectMapper, e o builder leva o módulo também para o Smile e o CBOR
+     *
+     * @return
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Bean
+    public CodecCustomizer jsonCodecCustomizer(ObjectMapper objectMapper) {
+        return configurer -> {
+            configurer.defaultCodecs().jackson2JsonEncoder(new AnimeJsonEncoder(objectMapper));
+            configurer.defaultCodecs().jackson2JsonDecoder(new AnimeJsonDecoder(objectMapper));
+        };
+    }
+
+    /**
+     * O ServerCodecConfigurer coloca os codecs customizados antes dos padrão, e o primeiro writer que aceita
+     * o tipo define o formato quando o Accept é um curinga. Sem Accept, ou com um curinga, o JSON vem
+     * primeiro; os formatos binários só saem quando pedidos pelo nome
+     *
+     * @param builder
+     */
+    @Override
+    public void configureContentTypeResolver(RequestedContentTypeResolverBuilder builder) {
+        builder.headerResolver();
+        builder.fixedResolver(MediaType.APPLICATION_JSON, MediaType.ALL);
+    }
+
+    @Bean
+    public CodecCustomizer binaryCodecCustomizer(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        // Mesmas configurações do ObjectMapper do JSON, só trocando o formato
+        ObjectMapper smile = objectMapperBuilder.factory(new SmileFactory()).build();
+        ObjectMapper cbor = objectMapperBuilder.factory(new CBORFactory()).build();
+
+        // Só com o ObjectMapper esses construtores ficam com os tipos do JSON, e o decoder do CBOR, que vem
+        // antes do JSON, leria os corpos application/json
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smile, SMILE_MIME_TYPES));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile, SMILE_MIME_TYPES));
+            configurer.customCodecs().registerWithDefaultConfig(new StreamingCborEncoder(cbor));
+            configurer.customCodecs().registerWithDefaultConfig(new Jackson2CborDecoder(cbor, MediaType.APPLICATION_CBOR));
+            configurer.customCodecs().registerWithDefaultConfig(new AnimeProtobufEncoder());
+            configurer.customCodecs().registerWithDefaultConfig(new AnimeProtobufDecoder());
+        };
+    }
+
+}
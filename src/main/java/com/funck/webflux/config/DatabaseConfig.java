@@ -0,0 +1,29 @@
+package com.funck.webflux.config;
+
+import com.funck.webflux.repository.ReplicaRouting;
+import com.funck.webflux.repository.ReplicaRoutingConnectionFactory;
+import com.funck.webflux.repository.ReplicaRoutingPostProcessor;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DatabaseConfig {
+
+    @Bean
+    public static ReplicaRoutingPostProcessor replicaRoutingPostProcessor(ObjectProvider<AnimeProperties> animeProperties,
+                                                                          ObjectProvider<R2dbcProperties> r2dbcProperties,
+                                                                          ObjectProvider<ReplicaRouting> replicaRouting) {
+        return new ReplicaRoutingPostProcessor(animeProperties, r2dbcProperties, replicaRouting);
+    }
+
+    @Bean
+    public MeterBinder replicaPoolMetrics(ObjectProvider<ConnectionFactory> connectionFactory) {
+        return registry -> connectionFactory.ifAvailable(factory -> ReplicaRoutingConnectionFactory.poolMetrics(factory)
+                .bindTo(registry));
+    }
+
+}
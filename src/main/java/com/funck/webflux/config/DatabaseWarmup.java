@@ -0,0 +1,92 @@
+package com.funck.webflux.config;
+
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.repository.ReplicaRoutingConnectionFactory;
+import com.funck.webflux.repository.UserRepository;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Aquece o pool de conexões antes da aplicação ficar pronta: abre as conexões iniciais e executa as
+ * consultas mais usadas em paralelo, para que elas fiquem preparadas nas conexões abertas. Os runners
+ * rodam antes do readiness mudar para ACCEPTING_TRAFFIC, então as primeiras requisições depois do deploy
+ * não pagam a abertura de conexão
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DatabaseWarmup implements ApplicationRunner {
+
+    private static final int WARMUP_ID = 0;
+
+    private final ConnectionFactory connectionFactory;
+    private final AnimeRepository animeRepository;
+    private final UserRepository userRepository;
+    private final AnimeProperties animeProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        AnimeProperties.Warmup warmup = animeProperties.getWarmup();
+
+        if (!warmup.isEnabled()) {
+            return;
+        }
+
+        warmup()
+                .timeout(warmup.getTimeout())
+                .doOnNext(connections -> log.info("Connection pool warmed up with {} connections", connections))
+                .onErrorResume(error -> {
+                    // Falhar aqui derrubaria o deploy por um problema que o pool resolve sozinho depois
+                    log.warn("Connection pool warm-up failed: {}", error.toString());
+                    return Mono.empty();
+                })
+                .block();
+    }
+
+    Mono<Integer> warmup() {
+        // As consultas daqui não são marcadas como leitura e vão ao primário, as réplicas aquecem no uso
+        ConnectionFactory primary = ReplicaRoutingConnectionFactory.primary(connectionFactory);
+
+        if (!(primary instanceof ConnectionPool)) {
+            return hotQueries(1).thenReturn(0);
+        }
+
+        ConnectionPool pool = (ConnectionPool) primary;
+
+        return pool.warmup()
+                .flatMap(created -> hotQueries(idleConnections(pool, created)).thenReturn(created));
+    }
+
+    private Mono<Void> hotQueries(int parallelism) {
+        // Cada execução simultânea ocupa uma conexão diferente, preparando as consultas em todas elas
+        return Flux.range(0, Math.max(1, parallelism))
+                .flatMap(i -> hotQueries(), parallelism)
+                .then();
+    }
+
+    private Mono<Void> hotQueries() {
+        int pageSize = animeProperties.getPagination().getDefaultSize();
+
+        return animeRepository.findPageAfter(WARMUP_ID, pageSize + 1)
+                .thenMany(animeRepository.findAllById(List.of(WARMUP_ID)))
+                .then(userRepository.findByUsername(""))
+                .then();
+    }
+
+    private int idleConnections(ConnectionPool pool, int created) {
+        return pool.getMetrics()
+                .map(PoolMetrics::idleSize)
+                .orElse(created);
+    }
+
+}
@@ -1,9 +1,11 @@
 package com.funck.webflux.config;
 
+import com.funck.webflux.security.CachingAuthenticationManager;
+import com.funck.webflux.security.RateLimitWebFilter;
 import com.funck.webflux.service.UserDetailsService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpMethod;
-import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
@@ -17,6 +19,9 @@ public class SecurityConfig {
         return http
                 .csrf().disable()
                 .authorizeExchange()
+                    .pathMatchers(HttpMethod.GET, "/actuator/health/**").permitAll()
+                    // As métricas mostram os repositórios, os pools e os limites, só para quem administra
+                    .pathMatchers("/actuator/**").hasRole("ADMIN")
                     .pathMatchers(HttpMethod.POST, "/animes/**").hasRole("ADMIN")
                     .pathMatchers(HttpMethod.PUT, "/animes/**").hasRole("ADMIN")
                     .pathMatchers(HttpMethod.DELETE, "/animes/**").hasRole("ADMIN")
@@ -31,8 +36,18 @@ public class SecurityConfig {
     }
     
     @Bean
-    public ReactiveAuthenticationManager authenticationManager(UserDetailsService userDetailsService) {
-        return new UserDetailsRepositoryReactiveAuthenticationManager(userDetailsService);
+    public CachingAuthenticationManager authenticationManager(UserDetailsService userDetailsService,
+                                                              AnimeProperties animeProperties) {
+        return new CachingAuthenticationManager(
+                new UserDetailsRepositoryReactiveAuthenticationManager(userDetailsService),
+                userDetailsService,
+                animeProperties.getSecurity().getCredentialCache());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "anime.security.rate-limit", name = "enabled", matchIfMissing = true)
+    public RateLimitWebFilter rateLimitWebFilter(AnimeProperties animeProperties) {
+        return new RateLimitWebFilter(animeProperties.getSecurity().getRateLimit());
     }
 
 }
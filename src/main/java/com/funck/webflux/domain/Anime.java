@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.With;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 import javax.validation.constraints.NotEmpty;
@@ -19,6 +20,11 @@ import javax.validation.constraints.NotNull;
 @Table("anime")
 public class Anime {
 
+    /**
+     * Versão gravada na inserção, a mesma que o Spring Data usa para entidades novas com @Version
+     */
+    public static final long INITIAL_VERSION = 0;
+
     @Id
     private Integer id;
 
@@ -26,4 +32,10 @@ public class Anime {
     @NotEmpty(message = "The name of Anime is mandatory")
     private String name;
 
+    /**
+     * Incrementada a cada alteração, é o ETag do anime e a condição do If-Match no update e no delete
+     */
+    @Version
+    private Long version;
+
 }
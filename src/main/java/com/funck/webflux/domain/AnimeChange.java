@@ -0,0 +1,45 @@
+package com.funck.webflux.domain;
+
+import lombok.Value;
+
+/**
+ * Alteração confirmada de um anime, publicada no feed de /animes/changes e repassada às outras instâncias
+ */
+@Value
+public class AnimeChange {
+
+    Type type;
+
+    Integer id;
+
+    /**
+     * Nome depois da alteração, null na remoção e no RESYNC
+     */
+    String name;
+
+    public static AnimeChange inserted(Anime anime) {
+        return new AnimeChange(Type.INSERT, anime.getId(), anime.getName());
+    }
+
+    public static AnimeChange updated(Integer id, String name) {
+        return new AnimeChange(Type.UPDATE, id, name);
+    }
+
+    public static AnimeChange deleted(Integer id) {
+        return new AnimeChange(Type.DELETE, id, null);
+    }
+
+    /**
+     * Avisa que alterações podem ter sido perdidas, quem recebe precisa recarregar a listagem inteira
+     *
+     * @return
+     */
+    public static AnimeChange resync() {
+        return new AnimeChange(Type.RESYNC, null, null);
+    }
+
+    public enum Type {
+        INSERT, UPDATE, DELETE, RESYNC
+    }
+
+}
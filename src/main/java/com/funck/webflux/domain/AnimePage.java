@@ -0,0 +1,23 @@
+package com.funck.webflux.domain;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class AnimePage {
+
+    List<Anime> content;
+
+    int limit;
+
+    /**
+     * Id do último anime da página, null quando não existe próxima página
+     */
+    Integer nextCursor;
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.funck.webflux.domain;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Resultado de um lote da importação em streaming, cada lote é gravado em uma transação própria
+ */
+@Value
+public class IngestChunkResult {
+
+    long chunk;
+
+    List<Integer> acceptedIds;
+
+    List<IngestRejection> rejected;
+
+}
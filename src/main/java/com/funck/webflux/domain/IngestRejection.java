@@ -0,0 +1,15 @@
+package com.funck.webflux.domain;
+
+import lombok.Value;
+
+@Value
+public class IngestRejection {
+
+    /**
+     * Linha do corpo NDJSON, começando em 1
+     */
+    long line;
+
+    String reason;
+
+}
@@ -0,0 +1,26 @@
+package com.funck.webflux.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Erros conhecidos da aplicação. Não preenchem o stack trace, que é o que mais custa na criação de uma
+ * exception e não diz nada para um erro de negócio. O GlobalExceptionHandler responde esses erros com
+ * um json pré-renderizado, sem passar pelo CustomAttributes
+ * <p>
+ * Uma instância é criada por erro em vez de reaproveitar uma única: operadores do Reactor podem
+ * adicionar suppressed exceptions na exception que passa por eles, e uma instância compartilhada
+ * acumularia essas exceptions para sempre
+ */
+public abstract class AnimeException extends ResponseStatusException {
+
+    protected AnimeException(HttpStatus status, String reason) {
+        super(status, reason);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
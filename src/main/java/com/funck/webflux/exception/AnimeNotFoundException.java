@@ -0,0 +1,11 @@
+package com.funck.webflux.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class AnimeNotFoundException extends AnimeException {
+
+    public AnimeNotFoundException() {
+        super(HttpStatus.NOT_FOUND, "Anime not found");
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.funck.webflux.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class AnimeOverloadedException extends AnimeException {
+
+    public AnimeOverloadedException() {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Service overloaded");
+    }
+
+}
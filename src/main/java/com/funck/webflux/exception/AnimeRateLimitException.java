@@ -0,0 +1,11 @@
+package com.funck.webflux.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class AnimeRateLimitException extends AnimeException {
+
+    public AnimeRateLimitException() {
+        super(HttpStatus.TOO_MANY_REQUESTS, "Too many requests");
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.funck.webflux.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class AnimeTimeoutException extends AnimeException {
+
+    public AnimeTimeoutException() {
+        super(HttpStatus.GATEWAY_TIMEOUT, "Database timeout");
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.funck.webflux.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class AnimeVersionMismatchException extends AnimeException {
+
+    public AnimeVersionMismatchException() {
+        super(HttpStatus.PRECONDITION_FAILED, "Anime version does not match");
+    }
+
+}
@@ -11,6 +11,8 @@ import java.util.Map;
 @Component
 public class CustomAttributes extends DefaultErrorAttributes {
 
+    static final String DEVELOP_MESSAGE = "A ResponseStatusException happened";
+
     /**
      * Adiciona atributos customizados no json de retorno do handler exeption
      *
@@ -28,7 +30,7 @@ public class CustomAttributes extends DefaultErrorAttributes {
         if (throwable instanceof ResponseStatusException) {
             ResponseStatusException ex = (ResponseStatusException) throwable;
             errorAttributes.put("message", ex.getMessage());
-            errorAttributes.put("developMessage", "A ResponseStatusException happened");
+            errorAttributes.put("developMessage", DEVELOP_MESSAGE);
         }
 
         return errorAttributes;
@@ -1,13 +1,18 @@
 package com.funck.webflux.exception;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import org.springframework.boot.autoconfigure.web.WebProperties;
 import org.springframework.boot.autoconfigure.web.reactive.error.AbstractErrorWebExceptionHandler;
 import org.springframework.boot.web.error.ErrorAttributeOptions;
 import org.springframework.boot.web.reactive.error.ErrorAttributes;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.ResolvableType;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageWriter;
 import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.BodyInserters;
@@ -16,22 +21,65 @@ import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 @Order(-2)
 public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler {
 
+    // Mesmo formato que o Jackson usa para o timestamp do DefaultErrorAttributes
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSxxx").withZone(ZoneOffset.UTC);
+
+    private static final JsonStringEncoder JSON_STRING_ENCODER = JsonStringEncoder.getInstance();
+
+    private static final ResolvableType ERROR_ATTRIBUTES_TYPE =
+            ResolvableType.forClassWithGenerics(Map.class, String.class, Object.class);
+
+    private final Map<String, byte[]> preRendered = new ConcurrentHashMap<>();
+
+    private final List<HttpMessageWriter<?>> messageWriters;
+
     public GlobalExceptionHandler(
             ErrorAttributes errorAttributes,
             WebProperties.Resources resources,
             ApplicationContext applicationContext,
             ServerCodecConfigurer codecConfigurer) {
         super(errorAttributes, resources, applicationContext);
-        this.setMessageWriters(codecConfigurer.getWriters());
+        this.messageWriters = codecConfigurer.getWriters();
+        this.setMessageWriters(messageWriters);
+    }
+
+    /**
+     * Erros conhecidos são escritos direto na resposta a partir de um json pré-renderizado, só o
+     * timestamp, o path e o requestId são montados por requisição. Com ?trace=true, para qualquer
+     * outro erro ou quando o cliente pediu outro formato a resposta passa pelo CustomAttributes como antes
+     *
+     * @param exchange
+     * @param throwable
+     * @return
+     */
+    @Override
+    public Mono<Void> handle(ServerWebExchange exchange, Throwable throwable) {
+        if (throwable instanceof AnimeException
+                && !exchange.getResponse().isCommitted()
+                && !isTraceEnabled(exchange.getRequest().getURI().getQuery())
+                && MediaType.APPLICATION_JSON.equals(errorMediaType(exchange.getRequest().getHeaders().getAccept()))) {
+            return writePreRendered(exchange, (AnimeException) throwable);
+        }
+
+        return super.handle(exchange, throwable);
     }
 
     /**
@@ -54,10 +102,43 @@ public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler {
 
         return ServerResponse
                 .status(status)
-                .contentType(MediaType.APPLICATION_JSON)
+                .contentType(errorMediaType(request.headers().accept()))
                 .body(BodyInserters.fromValue(errorAttributes));
     }
 
+    /**
+     * Primeiro formato aceito pelo cliente que algum codec sabe escrever para o mapa de atributos. Sem
+     * Accept, com curinga ou sem nenhum formato conhecido o erro sai em JSON
+     */
+    private MediaType errorMediaType(List<MediaType> accept) {
+        // Quase todo cliente manda nada, */* ou application/json, sem cópia nem ordenação nesses casos
+        if (accept.isEmpty() || (accept.size() == 1 && isJson(accept.get(0)))) {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        List<MediaType> acceptable = new ArrayList<>(accept);
+        MediaType.sortBySpecificityAndQuality(acceptable);
+
+        for (MediaType mediaType : acceptable) {
+            if (isJson(mediaType)) {
+                return MediaType.APPLICATION_JSON;
+            }
+
+            for (HttpMessageWriter<?> writer : messageWriters) {
+                if (writer.canWrite(ERROR_ATTRIBUTES_TYPE, mediaType)) {
+                    return mediaType.removeQualityValue();
+                }
+            }
+        }
+
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private static boolean isJson(MediaType mediaType) {
+        return mediaType.isWildcardType() || mediaType.isWildcardSubtype()
+                || mediaType.isCompatibleWith(MediaType.APPLICATION_JSON);
+    }
+
     private ErrorAttributeOptions getErrorAttributeOptions(ServerRequest request) {
         String query = request.uri().getQuery();
 
@@ -70,4 +151,50 @@ public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler {
         return !StringUtils.isEmpty(query) && query.contains("trace=true");
     }
 
+    private Mono<Void> writePreRendered(ServerWebExchange exchange, AnimeException exception) {
+        ServerHttpResponse response = exchange.getResponse();
+        byte[] head = concat("{\"timestamp\":\"", TIMESTAMP.format(Instant.now()), "\",\"path\":\"",
+                exchange.getRequest().getPath().value(), "\",");
+        byte[] body = preRendered.computeIfAbsent(exception.getMessage(), message -> preRender(exception));
+        byte[] tail = concat("", exchange.getRequest().getId(), "\"}");
+
+        DataBuffer buffer = response.bufferFactory().allocateBuffer(head.length + body.length + tail.length)
+                .write(head)
+                .write(body)
+                .write(tail);
+
+        response.setStatusCode(exception.getStatus());
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    /**
+     * Mesmos campos que o CustomAttributes devolve para uma ResponseStatusException, com exceção dos
+     * que mudam a cada requisição
+     */
+    private static byte[] preRender(AnimeException exception) {
+        return concat("\"status\":", String.valueOf(exception.getRawStatusCode()),
+                ",\"error\":\"", exception.getStatus().getReasonPhrase(),
+                "\",\"message\":\"", exception.getMessage(),
+                "\",\"developMessage\":\"", CustomAttributes.DEVELOP_MESSAGE,
+                "\",\"requestId\":\"");
+    }
+
+    /**
+     * Concatena as partes do json, as de índice ímpar são valores e são escapadas
+     */
+    private static byte[] concat(String... parts) {
+        StringBuilder json = new StringBuilder();
+
+        for (int i = 0; i < parts.length; i++) {
+            if (i % 2 == 0) {
+                json.append(parts[i]);
+            } else {
+                JSON_STRING_ENCODER.quoteAsString(parts[i], json);
+            }
+        }
+
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
 }
@@ -0,0 +1,11 @@
+package com.funck.webflux.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class InvalidAnimeException extends AnimeException {
+
+    public InvalidAnimeException(String reason) {
+        super(HttpStatus.BAD_REQUEST, reason);
+    }
+
+}
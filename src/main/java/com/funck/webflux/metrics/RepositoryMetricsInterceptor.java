@@ -0,0 +1,101 @@
+package com.funck.webflux.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mede o tempo de cada método do repositório, do subscribe até o sinal final. Os timers de cada
+ * método são criados uma vez só, para o caminho quente não procurar o meter no registry a cada chamada
+ */
+public class RepositoryMetricsInterceptor implements MethodInterceptor {
+
+    public static final String METRIC_NAME = "anime.repository";
+
+    private final MeterRegistry meterRegistry;
+    private final String repository;
+    private final Map<Method, MethodTimers> timers = new ConcurrentHashMap<>();
+
+    public RepositoryMetricsInterceptor(MeterRegistry meterRegistry, String repository) {
+        this.meterRegistry = meterRegistry;
+        this.repository = repository;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+
+        if (result instanceof Mono) {
+            MethodTimers methodTimers = timersFor(invocation.getMethod());
+            return Mono.defer(() -> {
+                Timer.Sample sample = Timer.start(meterRegistry);
+                return ((Mono<?>) result).doFinally(signal -> sample.stop(methodTimers.get(signal)));
+            });
+        }
+
+        if (result instanceof Flux) {
+            MethodTimers methodTimers = timersFor(invocation.getMethod());
+            return Flux.defer(() -> {
+                Timer.Sample sample = Timer.start(meterRegistry);
+                return ((Flux<?>) result).doFinally(signal -> sample.stop(methodTimers.get(signal)));
+            });
+        }
+
+        return result;
+    }
+
+    private MethodTimers timersFor(Method method) {
+        MethodTimers methodTimers = timers.get(method);
+        return methodTimers != null ? methodTimers : timers.computeIfAbsent(method, this::newTimers);
+    }
+
+    private MethodTimers newTimers(Method method) {
+        return new MethodTimers(
+                timer(method, "success"),
+                timer(method, "error"),
+                timer(method, "cancel"));
+    }
+
+    private Timer timer(Method method, String outcome) {
+        return Timer.builder(METRIC_NAME)
+                .description("Tempo das chamadas ao repositório")
+                .tag("repository", repository)
+                .tag("method", method.getName())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static class MethodTimers {
+
+        private final Timer success;
+        private final Timer error;
+        private final Timer cancel;
+
+        MethodTimers(Timer success, Timer error, Timer cancel) {
+            this.success = success;
+            this.error = error;
+            this.cancel = cancel;
+        }
+
+        Timer get(SignalType signal) {
+            switch (signal) {
+                case ON_ERROR:
+                    return error;
+                case CANCEL:
+                    return cancel;
+                default:
+                    return success;
+            }
+        }
+
+    }
+
+}
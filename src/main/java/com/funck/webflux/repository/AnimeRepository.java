@@ -1,11 +1,69 @@
 package com.funck.webflux.repository;
 
 import com.funck.webflux.domain.Anime;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface AnimeRepository extends ReactiveCrudRepository<Anime, Integer> {
+public interface AnimeRepository extends ReactiveCrudRepository<Anime, Integer>, AnimeRepositoryCustom {
 
     Mono<Anime> findById(Integer id);
 
+    /**
+     * Paginação por cursor (keyset): busca pelo índice da chave primária a partir do último id
+     * retornado, sem o custo de OFFSET em páginas profundas
+     */
+    @Query("SELECT * FROM anime WHERE id > :after ORDER BY id LIMIT :limit")
+    Flux<Anime> findPageAfter(Integer after, int limit);
+
+    /**
+     * Busca por trecho do nome, os que começam com o texto primeiro e depois os nomes mais curtos. No
+     * Postgres o LIKE em lower(name) usa o índice de trigramas (pg_trgm) em vez de ler a tabela toda
+     *
+     * @param contains padrão %texto% já normalizado e escapado
+     * @param prefix   padrão texto% já normalizado e escapado
+     * @param limit
+     * @return
+     */
+    @Query("SELECT * FROM anime WHERE LOWER(name) LIKE :contains ESCAPE '\\' " +
+            "ORDER BY CASE WHEN LOWER(name) LIKE :prefix ESCAPE '\\' THEN 0 ELSE 1 END, LENGTH(name), id " +
+            "LIMIT :limit")
+    Flux<Anime> searchByName(String contains, String prefix, int limit);
+
+    /**
+     * Autocomplete pelo banco, usado enquanto o índice em memória não está pronto
+     */
+    @Query("SELECT * FROM anime WHERE LOWER(name) LIKE :prefix ESCAPE '\\' ORDER BY LOWER(name), id LIMIT :limit")
+    Flux<Anime> findByNamePrefix(String prefix, int limit);
+
+    /**
+     * Atualiza o anime em um único round trip, devolvendo a quantidade de linhas alteradas: zero quando
+     * o id não existe
+     */
+    @Modifying
+    @Query("UPDATE anime SET name = :name, version = version + 1 WHERE id = :id")
+    Mono<Integer> updateNameById(Integer id, String name);
+
+    /**
+     * Atualiza o anime só se ele ainda estiver na versão informada, zero linhas alteradas quando o id não
+     * existe ou a versão mudou
+     */
+    @Modifying
+    @Query("UPDATE anime SET name = :name, version = version + 1 WHERE id = :id AND version = :version")
+    Mono<Integer> updateNameByIdAndVersion(Integer id, String name, Long version);
+
+    /**
+     * Remove o anime em um único round trip, devolvendo a quantidade de linhas removidas: zero quando
+     * o id não existe
+     */
+    @Modifying
+    @Query("DELETE FROM anime WHERE id = :id")
+    Mono<Integer> removeById(Integer id);
+
+    @Modifying
+    @Query("DELETE FROM anime WHERE id = :id AND version = :version")
+    Mono<Integer> removeByIdAndVersion(Integer id, Long version);
+
 }
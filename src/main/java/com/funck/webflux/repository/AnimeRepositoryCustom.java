@@ -0,0 +1,32 @@
+package com.funck.webflux.repository;
+
+import com.funck.webflux.domain.Anime;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Consultas que precisam de acesso direto ao statement do R2DBC e por isso não podem ser derivadas
+ * pelo Spring Data
+ */
+public interface AnimeRepositoryCustom {
+
+    /**
+     * Lê a tabela inteira em lotes de fetchSize linhas por cursor do Postgres, o próximo lote só é
+     * buscado quando o assinante pede mais elementos
+     *
+     * @param fetchSize
+     * @return
+     */
+    Flux<Anime> streamAll(int fetchSize);
+
+    /**
+     * Insere todos os animes com um único statement, com um conjunto de binds por anime, e devolve os
+     * ids gerados na mesma ordem da lista
+     *
+     * @param animes
+     * @return
+     */
+    Flux<Integer> insertAll(List<Anime> animes);
+
+}
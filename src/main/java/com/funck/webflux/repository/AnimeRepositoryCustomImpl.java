@@ -0,0 +1,53 @@
+package com.funck.webflux.repository;
+
+import com.funck.webflux.domain.Anime;
+import io.r2dbc.spi.Statement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.util.Iterator;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class AnimeRepositoryCustomImpl implements AnimeRepositoryCustom {
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+
+    @Override
+    public Flux<Anime> streamAll(int fetchSize) {
+        // O parametro força o protocolo estendido, o unico em que o driver respeita o fetchSize. Sempre
+        // verdadeiro, não muda o resultado; um filtro por id esconderia as linhas com id <= 0
+        return databaseClient.sql("SELECT * FROM anime WHERE :all ORDER BY id")
+                .bind("all", true)
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map((row, metadata) -> converter.read(Anime.class, row, metadata))
+                .all();
+    }
+
+    @Override
+    public Flux<Integer> insertAll(List<Anime> animes) {
+        if (animes.isEmpty()) {
+            return Flux.empty();
+        }
+
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection.createStatement("INSERT INTO anime (name, version) VALUES ($1, " + Anime.INITIAL_VERSION + ")")
+                    .returnGeneratedValues("id");
+
+            Iterator<Anime> iterator = animes.iterator();
+            statement.bind(0, iterator.next().getName());
+
+            while (iterator.hasNext()) {
+                statement.add().bind(0, iterator.next().getName());
+            }
+
+            // Cada conjunto de binds gera um Result, na mesma ordem em que foram adicionados
+            return Flux.from(statement.execute())
+                    .concatMap(result -> result.map((row, metadata) -> row.get("id", Integer.class)));
+        });
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.funck.webflux.repository;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Marca as consultas que podem ir para uma réplica de leitura e guarda quem escreveu há pouco, para que o
+ * {@link ReplicaRoutingConnectionFactory} mande as leituras dessa pessoa ao primário até a escrita chegar
+ * nas réplicas. O que não é marcado, escritas e transações inclusive, sempre vai ao primário
+ */
+@Component
+public class ReplicaRouting {
+
+    static final String READ_ONLY = ReplicaRouting.class.getName() + ".READ_ONLY";
+
+    private static final Context READ_ONLY_CONTEXT = Context.of(READ_ONLY, true);
+
+    private static final Mono<Boolean> NOT_WRITTEN = Mono.just(false);
+
+    private final boolean enabled;
+    private final Cache<String, Boolean> writers;
+
+    @Autowired
+    public ReplicaRouting(AnimeProperties animeProperties) {
+        this(animeProperties.getReplicas(), Ticker.systemTicker());
+    }
+
+    ReplicaRouting(AnimeProperties.Replicas properties, Ticker ticker) {
+        this.enabled = !properties.getUrls().isEmpty() && properties.isReadYourWrites();
+        this.writers = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getReplicationLag())
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Permite que a consulta vá para uma réplica. Dentro de uma transação a conexão já está presa ao
+     * primário e a marcação não muda nada
+     *
+     * @param query
+     * @return
+     */
+    public static <T> Mono<T> readOnly(Mono<T> query) {
+        return query.contextWrite(READ_ONLY_CONTEXT);
+    }
+
+    public static <T> Flux<T> readOnly(Flux<T> query) {
+        return query.contextWrite(READ_ONLY_CONTEXT);
+    }
+
+    /**
+     * Se a consulta que roda com esse contexto foi marcada pelo readOnly
+     *
+     * @param context
+     * @return
+     */
+    public static boolean isReadOnly(ContextView context) {
+        return context.getOrDefault(READ_ONLY, false);
+    }
+
+    /**
+     * Registra que o usuário da requisição acabou de escrever, deve ser chamado depois do commit
+     *
+     * @return
+     */
+    public Mono<Void> recordWrite() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+
+        return currentUser()
+                .doOnNext(user -> writers.put(user, Boolean.TRUE))
+                .then();
+    }
+
+    /**
+     * Se o usuário da requisição escreveu dentro do replicationLag e precisa ler do primário
+     *
+     * @return
+     */
+    public Mono<Boolean> readsOwnWrites() {
+        if (!enabled) {
+            return NOT_WRITTEN;
+        }
+
+        return currentUser()
+                .map(user -> writers.getIfPresent(user) != null)
+                .defaultIfEmpty(false);
+    }
+
+    private static Mono<String> currentUser() {
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .filter(Authentication::isAuthenticated)
+                .map(Authentication::getName);
+    }
+
+}
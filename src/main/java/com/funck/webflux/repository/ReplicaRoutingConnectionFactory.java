@@ -0,0 +1,260 @@
+package com.funck.webflux.repository;
+
+import com.funck.webflux.config.AnimeProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.ValidationDepth;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.transaction.reactive.TransactionContext;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConnectionFactory que manda as consultas marcadas com {@link ReplicaRouting#readOnly} para as réplicas,
+ * em rodízio, e todo o resto para o primário. Conexões abertas dentro de uma transação sempre vêm do
+ * primário, e as consultas da transação reaproveitam essa conexão.
+ * <p>
+ * Uma réplica que falha ao abrir conexão sai do rodízio na hora e a consulta vai para o primário; a
+ * verificação periódica devolve a réplica quando ela volta a responder. Sem réplica saudável as leituras
+ * vão todas para o primário
+ */
+@Slf4j
+public class ReplicaRoutingConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+
+    private static final String PRIMARY = "primary";
+
+    private final ConnectionFactory primary;
+    private final List<Replica> replicas;
+    private final ReplicaRouting replicaRouting;
+    private final AnimeProperties.Replicas properties;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile Disposable healthChecks = Disposables.disposed();
+    private volatile boolean disposed;
+
+    public ReplicaRoutingConnectionFactory(ConnectionFactory primary, List<ConnectionFactory> replicas,
+                                           ReplicaRouting replicaRouting, AnimeProperties.Replicas properties) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas.size());
+        this.replicaRouting = replicaRouting;
+        this.properties = properties;
+
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica("replica-" + i, replicas.get(i)));
+        }
+    }
+
+    /**
+     * O primário quando a factory é de rodízio, senão ela mesma
+     *
+     * @param connectionFactory
+     * @return
+     */
+    public static ConnectionFactory primary(ConnectionFactory connectionFactory) {
+        return connectionFactory instanceof ReplicaRoutingConnectionFactory
+                ? ((ReplicaRoutingConnectionFactory) connectionFactory).primary
+                : connectionFactory;
+    }
+
+    /**
+     * O primário e as réplicas quando a factory é de rodízio, senão só ela mesma
+     *
+     * @param connectionFactory
+     * @return
+     */
+    public static List<ConnectionFactory> targets(ConnectionFactory connectionFactory) {
+        if (!(connectionFactory instanceof ReplicaRoutingConnectionFactory)) {
+            return List.of(connectionFactory);
+        }
+
+        ReplicaRoutingConnectionFactory routing = (ReplicaRoutingConnectionFactory) connectionFactory;
+        List<ConnectionFactory> targets = new ArrayList<>();
+        targets.add(routing.primary);
+        routing.replicas.forEach(replica -> targets.add(replica.connectionFactory));
+        return targets;
+    }
+
+    /**
+     * Métricas r2dbc.pool do primário e de cada réplica, com primary ou replica-N na tag name. O Spring
+     * Boot só liga essas métricas quando o bean é um ConnectionPool, o que deixa de valer com réplicas
+     *
+     * @param connectionFactory
+     * @return
+     */
+    public static MeterBinder poolMetrics(ConnectionFactory connectionFactory) {
+        return registry -> {
+            if (!(connectionFactory instanceof ReplicaRoutingConnectionFactory)) {
+                return;
+            }
+
+            ReplicaRoutingConnectionFactory routing = (ReplicaRoutingConnectionFactory) connectionFactory;
+            bindPoolMetrics(registry, PRIMARY, routing.primary);
+            routing.replicas.forEach(replica -> bindPoolMetrics(registry, replica.name, replica.connectionFactory));
+        };
+    }
+
+    public void start() {
+        // boundedElastic como na reconexão do canal de alterações, abrir conexão pode resolver DNS
+        healthChecks = Flux.interval(properties.getHealthCheckInterval(), Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .concatMap(tick -> checkHealth())
+                .subscribe();
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.deferContextual(context -> {
+            // A conexão de uma transação fica no primário mesmo que a transação inteira tenha sido marcada
+            if (!ReplicaRouting.isReadOnly(context) || context.hasKey(TransactionContext.class)) {
+                return fromPrimary();
+            }
+
+            return replicaRouting.readsOwnWrites()
+                    .flatMap(ownWrites -> ownWrites ? fromPrimary() : fromReplica());
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return primary.getMetadata();
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return primary;
+    }
+
+    public int healthyReplicas() {
+        return (int) replicas.stream()
+                .filter(replica -> replica.healthy)
+                .count();
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        healthChecks.dispose();
+        dispose(primary);
+        replicas.forEach(replica -> dispose(replica.connectionFactory));
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * Valida uma conexão de cada réplica, tirando do rodízio as que falham e devolvendo as que voltaram
+     *
+     * @return
+     */
+    Mono<Void> checkHealth() {
+        return Flux.fromIterable(replicas)
+                .flatMap(this::checkHealth)
+                .then();
+    }
+
+    private Mono<Void> checkHealth(Replica replica) {
+        return Mono.usingWhen(replica.connectionFactory.create(),
+                        connection -> Mono.from(connection.validate(ValidationDepth.REMOTE)),
+                        Connection::close)
+                .timeout(properties.getHealthCheckTimeout(), Schedulers.boundedElastic())
+                .defaultIfEmpty(false)
+                .onErrorReturn(false)
+                .doOnNext(healthy -> {
+                    if (healthy) {
+                        readmit(replica);
+                    } else {
+                        eject(replica, "validation failed");
+                    }
+                })
+                .then();
+    }
+
+    private Mono<Connection> fromPrimary() {
+        return Mono.from(primary.create());
+    }
+
+    private Mono<Connection> fromReplica() {
+        Replica replica = nextHealthy();
+
+        if (replica == null) {
+            return fromPrimary();
+        }
+
+        return Mono.<Connection>from(replica.connectionFactory.create())
+                .onErrorResume(error -> {
+                    eject(replica, error.toString());
+                    return fromPrimary();
+                });
+    }
+
+    private Replica nextHealthy() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+
+        return null;
+    }
+
+    private void eject(Replica replica, String reason) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            log.warn("Read replica {} ejected: {}", replica.name, reason);
+        }
+    }
+
+    private void readmit(Replica replica) {
+        if (!replica.healthy) {
+            replica.healthy = true;
+            log.info("Read replica {} is healthy again", replica.name);
+        }
+    }
+
+    private static void bindPoolMetrics(MeterRegistry registry, String name, ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof ConnectionPool) {
+            new ConnectionPoolMetrics((ConnectionPool) connectionFactory, name, Tags.empty()).bindTo(registry);
+        }
+    }
+
+    private static void dispose(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof Disposable) {
+            ((Disposable) connectionFactory).dispose();
+        }
+    }
+
+    private static class Replica {
+
+        private final String name;
+        private final ConnectionFactory connectionFactory;
+        private volatile boolean healthy = true;
+
+        Replica(String name, ConnectionFactory connectionFactory) {
+            this.name = name;
+            this.connectionFactory = connectionFactory;
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.funck.webflux.repository;
+
+import com.funck.webflux.config.AnimeProperties;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Envolve a ConnectionFactory do Spring Boot, que continua sendo o primário com o pool configurado em
+ * spring.r2dbc.pool, no {@link ReplicaRoutingConnectionFactory} quando há réplicas em anime.replicas.urls.
+ * Cada réplica ganha um pool com as mesmas configurações do primário
+ */
+public class ReplicaRoutingPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<AnimeProperties> animeProperties;
+    private final ObjectProvider<R2dbcProperties> r2dbcProperties;
+    private final ObjectProvider<ReplicaRouting> replicaRouting;
+
+    public ReplicaRoutingPostProcessor(ObjectProvider<AnimeProperties> animeProperties,
+                                       ObjectProvider<R2dbcProperties> r2dbcProperties,
+                                       ObjectProvider<ReplicaRouting> replicaRouting) {
+        this.animeProperties = animeProperties;
+        this.r2dbcProperties = r2dbcProperties;
+        this.replicaRouting = replicaRouting;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof ConnectionFactory) || bean instanceof ReplicaRoutingConnectionFactory) {
+            return bean;
+        }
+
+        AnimeProperties.Replicas properties = animeProperties.getObject().getReplicas();
+
+        if (properties.getUrls().isEmpty()) {
+            return bean;
+        }
+
+        R2dbcProperties r2dbc = r2dbcProperties.getObject();
+        List<ConnectionFactory> replicas = new ArrayList<>();
+
+        for (int i = 0; i < properties.getUrls().size(); i++) {
+            replicas.add(replicaPool("replica-" + i, properties.getUrls().get(i), r2dbc));
+        }
+
+        ReplicaRoutingConnectionFactory routing = new ReplicaRoutingConnectionFactory((ConnectionFactory) bean,
+                replicas, replicaRouting.getObject(), properties);
+        routing.start();
+        return routing;
+    }
+
+    private static ConnectionFactory replicaPool(String name, String url, R2dbcProperties properties) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url);
+        ConnectionFactoryOptions.Builder builder = options.mutate();
+
+        // Usuário e senha da URL têm prioridade, senão valem os do primário
+        if (!options.hasOption(ConnectionFactoryOptions.USER) && StringUtils.hasText(properties.getUsername())) {
+            builder.option(ConnectionFactoryOptions.USER, properties.getUsername());
+        }
+
+        if (!options.hasOption(ConnectionFactoryOptions.PASSWORD) && StringUtils.hasText(properties.getPassword())) {
+            builder.option(ConnectionFactoryOptions.PASSWORD, properties.getPassword());
+        }
+
+        R2dbcProperties.Pool pool = properties.getPool();
+        ConnectionPoolConfiguration.Builder configuration = ConnectionPoolConfiguration
+                .builder(ConnectionFactories.get(builder.build()))
+                .name(name);
+
+        // Mesmo mapeamento que o Spring Boot faz para o pool do primário
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        map.from(pool.getInitialSize()).to(configuration::initialSize);
+        map.from(pool.getMaxSize()).to(configuration::maxSize);
+        map.from(pool.getMaxIdleTime()).to(configuration::maxIdleTime);
+        map.from(pool.getMaxLifeTime()).to(configuration::maxLifeTime);
+        map.from(pool.getMaxAcquireTime()).to(configuration::maxAcquireTime);
+        map.from(pool.getMaxCreateConnectionTime()).to(configuration::maxCreateConnectionTime);
+        map.from(pool.getValidationQuery()).whenHasText().to(configuration::validationQuery);
+        map.from(pool.getValidationDepth()).to(configuration::validationDepth);
+
+        return new ConnectionPool(configuration.build());
+    }
+
+}
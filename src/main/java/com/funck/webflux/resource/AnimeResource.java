@@ -1,39 +1,160 @@
 package com.funck.webflux.resource;
 
+import com.funck.webflux.codec.AnimeProtobufEncoder;
+import com.funck.webflux.codec.StreamingCborEncoder;
+import com.funck.webflux.config.AnimeProperties;
 import com.funck.webflux.domain.Anime;
+import com.funck.webflux.domain.AnimeChange;
+import com.funck.webflux.domain.AnimePage;
+import com.funck.webflux.domain.IngestChunkResult;
+import com.funck.webflux.exception.AnimeVersionMismatchException;
+import com.funck.webflux.service.AnimeChangeCounter;
+import com.funck.webflux.service.AnimeChangeFeed;
+import com.funck.webflux.service.AnimeIngestService;
 import com.funck.webflux.service.AnimeService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
 
 @RequiredArgsConstructor
 @RestController
 @RequestMapping("animes")
 public class AnimeResource {
 
+    private static final String APPLICATION_STREAM_SMILE_VALUE = "application/stream+x-jackson-smile";
+
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private static final ServerSentEvent<AnimeChange> HEARTBEAT = ServerSentEvent.<AnimeChange>builder()
+            .comment("heartbeat")
+            .build();
+
     private final AnimeService animeService;
+    private final AnimeIngestService animeIngestService;
+    private final AnimeChangeCounter animeChangeCounter;
+    private final AnimeChangeFeed animeChangeFeed;
+    private final AnimeProperties animeProperties;
 
+    /**
+     * Lista os animes paginados por cursor, o link para a próxima página vai no header Link. O ETag vem do
+     * contador de alterações, então um If-None-Match atual responde 304 sem consultar o banco
+     *
+     * @param after id do último anime da página anterior
+     * @param limit tamanho da página, limitado pelo servidor
+     * @param exchange
+     * @return
+     */
     @GetMapping
-    public Flux<Anime> listAll() {
+    public Mono<ResponseEntity<List<Anime>>> listAll(@RequestParam(required = false) Integer after,
+                                                     @RequestParam(required = false) Integer limit,
+                                                     ServerWebExchange exchange) {
+        String etag = animeChangeCounter.etag();
+
+        if (exchange.checkNotModified(etag)) {
+            return Mono.empty();
+        }
+
+        return animeService.listPage(after, limit)
+                .map(page -> ResponseEntity.ok()
+                        .eTag(etag)
+                        .headers(headers -> addNextPageLink(headers, page))
+                        .body(page.getContent()));
+    }
+
+    /**
+     * Lista todos os animes em streaming, cada anime é escrito assim que chega do banco e a leitura
+     * acompanha a velocidade do cliente. Entre serviços há também as versões binárias em CBOR, Smile e
+     * protobuf
+     *
+     * @return
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE,
+            StreamingCborEncoder.APPLICATION_CBOR_SEQ_VALUE, APPLICATION_STREAM_SMILE_VALUE,
+            AnimeProtobufEncoder.APPLICATION_STREAM_PROTOBUF_VALUE})
+    public Flux<Anime> stream() {
         return animeService.listAll();
     }
 
+    /**
+     * Alterações de animes em SSE, para manter uma cópia do catálogo sem listar tudo de novo. O id de cada
+     * evento volta no Last-Event-ID quando o EventSource reconecta; um evento resync pede para recarregar
+     * a listagem, e a conexão é encerrada quando o cliente não acompanha o ritmo das alterações
+     *
+     * @param lastEventId
+     * @return
+     */
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<AnimeChange>> changes(@RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId) {
+        Duration heartbeat = animeProperties.getChanges().getHeartbeat();
+
+        return animeChangeFeed.events(lastEventId)
+                .map(event -> ServerSentEvent.builder(event.getChange())
+                        .id(event.getId())
+                        .event(event.getChange().getType().name().toLowerCase(Locale.ROOT))
+                        .build())
+                .publish(events -> Flux.merge(events, Flux.interval(heartbeat, heartbeat)
+                        .map(tick -> HEARTBEAT)
+                        .takeUntilOther(events.then())));
+    }
+
+    @GetMapping(params = "ids")
+    public Flux<Anime> findAllById(@RequestParam List<Integer> ids) {
+        return animeService.findAllById(ids);
+    }
+
+    /**
+     * Busca por trecho do nome, com os nomes que começam pelo texto primeiro. Com Accept
+     * application/x-ndjson cada resultado é escrito assim que chega do banco
+     *
+     * @param q
+     * @param limit
+     * @return
+     */
+    @GetMapping("/search")
+    public Flux<Anime> search(@RequestParam String q, @RequestParam(required = false) Integer limit) {
+        return animeService.search(q, limit);
+    }
+
+    @GetMapping("/autocomplete")
+    public Flux<Anime> autocomplete(@RequestParam String prefix, @RequestParam(required = false) Integer limit) {
+        return animeService.autocomplete(prefix, limit);
+    }
+
+    /**
+     * Busca o anime com a versão no ETag, um If-None-Match com a mesma versão responde 304 sem corpo
+     *
+     * @param id
+     * @return
+     */
     @GetMapping("/{id}")
-    public Mono<Anime> findById(@PathVariable Integer id) {
-        return animeService.findById(id);
+    public Mono<ResponseEntity<Anime>> findById(@PathVariable Integer id) {
+        return animeService.findById(id)
+                .map(anime -> ResponseEntity.ok()
+                        .headers(headers -> addVersionETag(headers, anime))
+                        .body(anime));
     }
 
     @PostMapping
@@ -48,16 +169,79 @@ public class AnimeResource {
         return animeService.saveAll(animes);
     }
 
+    /**
+     * Importação em streaming: recebe um anime por linha em NDJSON e devolve, também em NDJSON, o
+     * resultado de cada lote gravado com os ids aceitos e as linhas rejeitadas. O corpo chega linha a
+     * linha, sem decodificar, para que uma linha inválida seja rejeitada sozinha
+     *
+     * @param lines
+     * @return
+     */
+    @PostMapping(value = "/ingest",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<IngestChunkResult> ingest(@RequestBody Flux<String> lines) {
+        return animeIngestService.ingest(lines);
+    }
+
     @PutMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public Mono<Void> update(@Valid @RequestBody Anime anime, @PathVariable Integer id) {
-        return animeService.update(anime, id);
+    public Mono<Void> update(@Valid @RequestBody Anime anime, @PathVariable Integer id,
+                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        if (isUnconditional(ifMatch)) {
+            return animeService.update(anime, id);
+        }
+
+        return Mono.defer(() -> animeService.update(anime, id, parseVersion(ifMatch)));
     }
 
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public Mono<Void> delete(@PathVariable Integer id) {
-        return animeService.delete(id);
+    public Mono<Void> delete(@PathVariable Integer id,
+                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        if (isUnconditional(ifMatch)) {
+            return animeService.delete(id);
+        }
+
+        return Mono.defer(() -> animeService.delete(id, parseVersion(ifMatch)));
+    }
+
+    private void addVersionETag(HttpHeaders headers, Anime anime) {
+        if (anime.getVersion() != null) {
+            headers.setETag("\"" + anime.getVersion() + "\"");
+        }
+    }
+
+    private boolean isUnconditional(String ifMatch) {
+        return ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*");
+    }
+
+    private long parseVersion(String ifMatch) {
+        String etag = ifMatch.trim();
+
+        // If-Match exige comparação forte, um ETag fraco ou fora do formato nunca casa com a versão
+        if (etag.length() < 3 || etag.charAt(0) != '"' || etag.charAt(etag.length() - 1) != '"') {
+            throw new AnimeVersionMismatchException();
+        }
+
+        try {
+            return Long.parseLong(etag.substring(1, etag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new AnimeVersionMismatchException();
+        }
+    }
+
+    private void addNextPageLink(HttpHeaders headers, AnimePage page) {
+        if (!page.hasNext()) {
+            return;
+        }
+
+        String next = UriComponentsBuilder.fromPath("/animes")
+                .queryParam("after", page.getNextCursor())
+                .queryParam("limit", page.getLimit())
+                .toUriString();
+
+        headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
     }
 
 }
@@ -0,0 +1,131 @@
+package com.funck.webflux.security;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+/**
+ * Evita repetir a verificação do BCrypt a cada requisição HTTP Basic. Depois de uma autenticação com
+ * sucesso, guarda por pouco tempo um HMAC do usuário e senha, com uma chave aleatória gerada na
+ * subida da aplicação, junto com o hash da senha que foi verificado. A senha em texto nunca fica em
+ * memória e uma troca de senha invalida o atalho assim que o usuário é recarregado
+ */
+public class CachingAuthenticationManager implements ReactiveAuthenticationManager, MeterBinder {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final ReactiveAuthenticationManager delegate;
+    private final ReactiveUserDetailsService userDetailsService;
+    private final Cache<String, String> verified;
+    private final ThreadLocal<Mac> mac;
+
+    public CachingAuthenticationManager(ReactiveAuthenticationManager delegate,
+                                        ReactiveUserDetailsService userDetailsService,
+                                        AnimeProperties.Security.CredentialCache properties) {
+        this.delegate = delegate;
+        this.userDetailsService = userDetailsService;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+
+        SecretKey key = generateKey();
+        this.mac = ThreadLocal.withInitial(() -> newMac(key));
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        if (!(authentication instanceof UsernamePasswordAuthenticationToken)
+                || !(authentication.getCredentials() instanceof String)) {
+            return delegate.authenticate(authentication);
+        }
+
+        return Mono.defer(() -> {
+            String key = credentialKey(authentication.getName(), (String) authentication.getCredentials());
+            String verifiedPassword = verified.getIfPresent(key);
+
+            if (verifiedPassword == null) {
+                return authenticateAndRemember(authentication, key);
+            }
+
+            return authenticateVerified(authentication, key, verifiedPassword);
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, verified, "verified-credentials");
+    }
+
+    private Mono<Authentication> authenticateVerified(Authentication authentication, String key, String verifiedPassword) {
+        return userDetailsService.findByUsername(authentication.getName())
+                .filter(user -> verifiedPassword.equals(user.getPassword()) && isUsable(user))
+                .<Authentication>map(user ->
+                        new UsernamePasswordAuthenticationToken(user, user.getPassword(), user.getAuthorities()))
+                .switchIfEmpty(Mono.defer(() -> {
+                    verified.invalidate(key);
+                    return authenticateAndRemember(authentication, key);
+                }));
+    }
+
+    private Mono<Authentication> authenticateAndRemember(Authentication authentication, String key) {
+        return delegate.authenticate(authentication)
+                .doOnNext(result -> {
+                    if (result.getPrincipal() instanceof UserDetails) {
+                        verified.put(key, ((UserDetails) result.getPrincipal()).getPassword());
+                    }
+                });
+    }
+
+    private boolean isUsable(UserDetails user) {
+        return user.isEnabled()
+                && user.isAccountNonLocked()
+                && user.isAccountNonExpired()
+                && user.isCredentialsNonExpired();
+    }
+
+    private String credentialKey(String username, String password) {
+        Mac hmac = mac.get();
+        hmac.update(username.getBytes(StandardCharsets.UTF_8));
+        hmac.update((byte) 0);
+        hmac.update(password.getBytes(StandardCharsets.UTF_8));
+
+        return Base64.getEncoder().encodeToString(hmac.doFinal());
+    }
+
+    private static SecretKey generateKey() {
+        try {
+            return KeyGenerator.getInstance(ALGORITHM).generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not generate the credential cache key", e);
+        }
+    }
+
+    private static Mac newMac(SecretKey key) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create the credential cache HMAC", e);
+        }
+    }
+
+}
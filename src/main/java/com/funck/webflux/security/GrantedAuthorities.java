@@ -0,0 +1,48 @@
+package com.funck.webflux.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Converte a coluna authorities do usuário em permissões. Cada texto distinto é convertido uma única
+ * vez e cada permissão existe em uma única instância, então as verificações de acesso de cada
+ * requisição não alocam nada
+ */
+public final class GrantedAuthorities {
+
+    private static final Map<String, Set<GrantedAuthority>> PARSED = new ConcurrentHashMap<>();
+    private static final Map<String, GrantedAuthority> POOL = new ConcurrentHashMap<>();
+
+    private GrantedAuthorities() {
+    }
+
+    /**
+     * @param authorities permissões separadas por vírgula, como "ROLE_ADMIN,ROLE_USER"
+     * @return conjunto imutável e compartilhado entre todos os usuários com as mesmas permissões
+     */
+    public static Set<GrantedAuthority> parse(String authorities) {
+        if (authorities == null || authorities.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<GrantedAuthority> parsed = PARSED.get(authorities);
+        return parsed != null ? parsed : PARSED.computeIfAbsent(authorities, GrantedAuthorities::split);
+    }
+
+    private static Set<GrantedAuthority> split(String authorities) {
+        Set<GrantedAuthority> parsed = Arrays.stream(authorities.split(","))
+                .map(authority -> POOL.computeIfAbsent(authority, SimpleGrantedAuthority::new))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        return Collections.unmodifiableSet(parsed);
+    }
+
+}
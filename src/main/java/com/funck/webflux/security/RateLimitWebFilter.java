@@ -0,0 +1,182 @@
+package com.funck.webflux.security;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.exception.AnimeRateLimitException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Limita as requisições em /animes por usuário, com orçamentos separados para consultas e gravações,
+ * para que um cliente sozinho não ocupe o pool do R2DBC de todos. Roda depois da cadeia do Spring
+ * Security, então o usuário já está autenticado e quem não está nem chega aqui.
+ * <p>
+ * Cada usuário tem um token bucket no formato GCRA: um único long com o horário teórico da próxima
+ * requisição, atualizado por compare-and-set. Liberar uma requisição não trava nem aloca; os buckets
+ * ficam num cache do Caffeine e são descartados depois de um tempo sem uso
+ */
+public class RateLimitWebFilter implements WebFilter, Ordered, MeterBinder {
+
+    private static final String ANIMES = "/animes";
+
+    // Ordem do WebFilterChainProxy, definida no WebFluxSecurityConfiguration que não é público
+    private static final int SECURITY_FILTER_ORDER = -100;
+
+    private static final Long ALLOWED = 0L;
+
+    private final Route read;
+    private final Route write;
+    private final LongSupplier nanoTime;
+
+    public RateLimitWebFilter(AnimeProperties.Security.RateLimit properties) {
+        this(properties, System::nanoTime);
+    }
+
+    RateLimitWebFilter(AnimeProperties.Security.RateLimit properties, LongSupplier nanoTime) {
+        this.read = new Route("read", properties.getRead(), properties);
+        this.write = new Route("write", properties.getWrite(), properties);
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Logo depois do WebFilterChainProxy do Spring Security
+     *
+     * @return
+     */
+    @Override
+    public int getOrder() {
+        return SECURITY_FILTER_ORDER + 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        Route route = route(exchange.getRequest());
+
+        if (route == null) {
+            return chain.filter(exchange);
+        }
+
+        return exchange.getPrincipal()
+                .map(principal -> route.acquire(principal.getName(), nanoTime.getAsLong()))
+                .defaultIfEmpty(ALLOWED)
+                .flatMap(wait -> wait == 0 ? chain.filter(exchange) : reject(exchange, route, wait));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        read.bindTo(registry);
+        write.bindTo(registry);
+    }
+
+    private Route route(ServerHttpRequest request) {
+        String path = request.getPath().pathWithinApplication().value();
+
+        if (!path.startsWith(ANIMES) || (path.length() > ANIMES.length() && path.charAt(ANIMES.length()) != '/')) {
+            return null;
+        }
+
+        HttpMethod method = request.getMethod();
+
+        if (method == HttpMethod.GET || method == HttpMethod.HEAD) {
+            return read;
+        }
+
+        if (method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH
+                || method == HttpMethod.DELETE) {
+            return write;
+        }
+
+        return null;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, Route route, long wait) {
+        route.rejected.increment();
+
+        // Retry-After só aceita segundos inteiros, arredondado para cima para o cliente não voltar cedo demais
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+
+        return Mono.error(new AnimeRateLimitException());
+    }
+
+    private static class Route {
+
+        private final String name;
+        private final long interval;
+        private final long tolerance;
+        private final Cache<String, AtomicLong> buckets;
+        private final LongAdder rejected = new LongAdder();
+
+        // Criada uma vez só, uma lambda no get alocaria a cada requisição
+        private final Function<String, AtomicLong> newBucket = user -> new AtomicLong(Long.MIN_VALUE);
+
+        Route(String name, AnimeProperties.Security.Limit limit, AnimeProperties.Security.RateLimit properties) {
+            // Com zero ou negativo o intervalo estoura ou fica negativo, melhor falhar na subida
+            if (limit.getRate() <= 0 || limit.getBurst() <= 0) {
+                throw new IllegalArgumentException("anime.security.rate-limit." + name
+                        + ".rate and .burst must be positive, got rate=" + limit.getRate()
+                        + " and burst=" + limit.getBurst());
+            }
+
+            this.name = name;
+            this.interval = TimeUnit.SECONDS.toNanos(1) / limit.getRate();
+            this.tolerance = interval * (limit.getBurst() - 1);
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(properties.getMaximumSize())
+                    .expireAfterAccess(properties.getIdleTimeout())
+                    .build();
+        }
+
+        /**
+         * Zero quando a requisição pode seguir, senão quantos nanossegundos faltam para a próxima
+         */
+        long acquire(String user, long now) {
+            AtomicLong bucket = buckets.get(user, newBucket);
+
+            while (true) {
+                long arrival = bucket.get();
+                long start = Math.max(arrival, now);
+                long wait = start - tolerance - now;
+
+                if (wait > 0) {
+                    return wait;
+                }
+
+                if (bucket.compareAndSet(arrival, start + interval)) {
+                    return 0;
+                }
+            }
+        }
+
+        void bindTo(MeterRegistry registry) {
+            FunctionCounter.builder("anime.rate-limit.rejected", rejected, LongAdder::sum)
+                    .description("Requests rejected by the per-user rate limit")
+                    .tag("route", name)
+                    .register(registry);
+
+            Gauge.builder("anime.rate-limit.buckets", buckets, Cache::estimatedSize)
+                    .description("Users with a rate limit bucket in memory")
+                    .tag("route", name)
+                    .register(registry);
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.exception.AnimeTimeoutException;
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.repository.ReplicaRouting;
+import com.funck.webflux.service.AnimeQueryPolicy.Operation;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Agrupa os findById feitos dentro de uma janela curta em uma única consulta WHERE id IN (...),
+ * devolvendo o resultado para cada chamada. Ids que já estão sendo buscados não entram de novo na fila
+ */
+@Component
+public class AnimeBatchLoader implements DisposableBean {
+
+    // Varias threads do event loop emitem ao mesmo tempo, quem perde a disputa tenta de novo
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, result) -> result == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private final AnimeRepository animeRepository;
+    private final Duration timeout;
+    private final Map<Integer, Sinks.One<Anime>> pending = new ConcurrentHashMap<>();
+    private final Sinks.Many<Integer> requests =
+            Sinks.many().unicast().onBackpressureBuffer(Queues.<Integer>unboundedMultiproducer().get());
+    private final Disposable subscription;
+
+    public AnimeBatchLoader(AnimeRepository animeRepository, AnimeProperties animeProperties) {
+        AnimeProperties.BatchLoader properties = animeProperties.getBatchLoader();
+
+        this.animeRepository = animeRepository;
+        this.timeout = AnimeQueryPolicy.timeout(animeProperties.getQueries(), Operation.FIND_BY_ID);
+        this.subscription = requests.asFlux()
+                .bufferTimeout(properties.getMaxBatchSize(), properties.getWindow())
+                // Sem demanda o bufferTimeout falha quando a janela fecha, entao os lotes esperam aqui
+                .onBackpressureBuffer()
+                .flatMap(this::loadBatch, properties.getMaxConcurrentBatches())
+                .subscribe();
+    }
+
+    public Mono<Anime> load(Integer id) {
+        return Mono.defer(() -> {
+            Sinks.One<Anime> sink = Sinks.one();
+            Sinks.One<Anime> inFlight = pending.putIfAbsent(id, sink);
+
+            if (inFlight != null) {
+                return inFlight.asMono();
+            }
+
+            requests.emitNext(id, RETRY_NON_SERIALIZED);
+            return sink.asMono();
+        });
+    }
+
+    @Override
+    public void destroy() {
+        subscription.dispose();
+    }
+
+    /**
+     * O lote tem o mesmo prazo do findById. Quem espera já desiste no próprio prazo, mas um lote preso
+     * deixaria os ids no pending e todo load seguinte deles esperaria pelo mesmo lote
+     */
+    private Mono<Void> loadBatch(List<Integer> ids) {
+        return ReplicaRouting.readOnly(animeRepository.findAllById(ids))
+                .collectMap(Anime::getId)
+                .timeout(timeout, Mono.error(AnimeTimeoutException::new))
+                .doOnNext(animes -> ids.forEach(id -> complete(id, animes.get(id))))
+                .doOnError(error -> ids.forEach(id -> fail(id, error)))
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+
+    private void complete(Integer id, Anime anime) {
+        Sinks.One<Anime> sink = pending.remove(id);
+
+        if (anime == null) {
+            sink.tryEmitEmpty();
+        } else {
+            sink.tryEmitValue(anime);
+        }
+    }
+
+    private void fail(Integer id, Throwable error) {
+        pending.remove(id).tryEmitError(error);
+    }
+
+}
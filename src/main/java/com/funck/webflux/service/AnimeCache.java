@@ -0,0 +1,128 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Cache read-through do findById. Ids não encontrados também ficam no cache, com um tempo de vida
+ * menor, para que buscas repetidas por ids inexistentes não cheguem no banco
+ */
+@Component
+public class AnimeCache implements MeterBinder {
+
+    private final AsyncCache<Integer, Optional<Anime>> cache;
+    private final boolean replicas;
+    private final long replicationLag;
+
+    public AnimeCache(AnimeProperties animeProperties) {
+        AnimeProperties.Cache properties = animeProperties.getCache();
+
+        this.replicas = !animeProperties.getReplicas().getUrls().isEmpty();
+        this.replicationLag = animeProperties.getReplicas().getReplicationLag().toMillis();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new AnimeExpiry(properties.getTtl(), properties.getNotFoundTtl()))
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Busca o anime no cache, chamando o loader só quando o id não está no cache. Chamadas simultâneas
+     * pelo mesmo id compartilham o mesmo carregamento
+     *
+     * @param id
+     * @param loader
+     * @return
+     */
+    public Mono<Anime> get(Integer id, Function<Integer, Mono<Anime>> loader) {
+        return Mono.fromFuture(() -> cache.get(id, (key, executor) -> load(key, loader)))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    public void put(Anime anime) {
+        cache.put(anime.getId(), CompletableFuture.completedFuture(Optional.of(anime)));
+    }
+
+    /**
+     * Com réplicas de leitura, um findById logo depois da escrita pode trazer da réplica o valor antigo e
+     * colocá-lo de volta no cache, então a invalidação se repete depois do replicationLag
+     *
+     * @param id
+     */
+    public void invalidate(Integer id) {
+        cache.synchronous().invalidate(id);
+        afterReplicationLag(() -> cache.synchronous().invalidate(id));
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+        afterReplicationLag(() -> cache.synchronous().invalidateAll());
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "anime");
+    }
+
+    private void afterReplicationLag(Runnable invalidation) {
+        if (replicas) {
+            Schedulers.boundedElastic().schedule(invalidation, replicationLag, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private CompletableFuture<Optional<Anime>> load(Integer id, Function<Integer, Mono<Anime>> loader) {
+        return loader.apply(id)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .toFuture();
+    }
+
+    private static class AnimeExpiry implements Expiry<Integer, Optional<Anime>> {
+
+        private final long ttl;
+        private final long notFoundTtl;
+
+        AnimeExpiry(Duration ttl, Duration notFoundTtl) {
+            this.ttl = ttl.toNanos();
+            this.notFoundTtl = notFoundTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(Integer id, Optional<Anime> anime, long currentTime) {
+            return anime.isPresent() ? ttl : notFoundTtl;
+        }
+
+        @Override
+        public long expireAfterUpdate(Integer id, Optional<Anime> anime, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, anime, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Integer id, Optional<Anime> anime, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.domain.AnimeChange;
+import lombok.Value;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Canal que leva as alterações confirmadas para todas as instâncias, inclusive a que publicou. O
+ * AnimeChangeFeed é o único assinante e reparte as alterações entre os clientes do SSE
+ */
+public interface AnimeChangeChannel {
+
+    /**
+     * Publica as alterações de uma gravação já confirmada no banco
+     *
+     * @param changes
+     * @return
+     */
+    Mono<Void> publish(List<AnimeChange> changes);
+
+    /**
+     * Notificações na ordem em que o canal recebeu, sem fim. Depois de uma falha do canal vem uma
+     * notificação de lacuna, o que chegou nesse meio tempo foi perdido
+     *
+     * @return
+     */
+    Flux<Notification> notifications();
+
+    @Value
+    class Notification {
+
+        /**
+         * Publicada por esta instância, que já aplicou a alteração no cache, no índice e no ETag
+         */
+        boolean local;
+
+        List<AnimeChange> changes;
+
+        public static Notification gap() {
+            return new Notification(false, List.of(AnimeChange.resync()));
+        }
+
+        public boolean isGap() {
+            return changes.size() == 1 && changes.get(0).getType() == AnimeChange.Type.RESYNC;
+        }
+
+    }
+
+}
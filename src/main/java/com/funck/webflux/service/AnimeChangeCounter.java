@@ -0,0 +1,44 @@
+package com.funck.webflux.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Contador de alterações da tabela anime, usado como ETag da listagem. Responder um If-None-Match só
+ * compara strings, sem consultar o banco nem serializar a página.
+ * <p>
+ * O contador vive na memória, então o ETag leva também o instante da inicialização: depois de um
+ * restart nenhum ETag antigo volta a valer. Alterações feitas por outra instância chegam pelo
+ * AnimeChangeFeed
+ */
+@Component
+public class AnimeChangeCounter {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private long changes;
+
+    private volatile String etag = etag(0);
+
+    /**
+     * Deve ser chamado depois que a alteração foi confirmada no banco. Se o ETag mudasse antes, uma
+     * leitura no meio do caminho guardaria os dados antigos com o ETag novo
+     */
+    public synchronized void increment() {
+        etag = etag(++changes);
+    }
+
+    /**
+     * ETag forte, já com aspas, do estado atual. Precisa ser lido antes da consulta, assim uma alteração
+     * concorrente deixa a resposta com um ETag antigo, que só custa um download a mais na próxima vez
+     *
+     * @return
+     */
+    public String etag() {
+        return etag;
+    }
+
+    private String etag(long changes) {
+        return "\"" + epoch + "-" + changes + "\"";
+    }
+
+}
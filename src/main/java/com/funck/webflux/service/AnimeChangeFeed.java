@@ -0,0 +1,215 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.AnimeChange;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Feed das alterações de anime servido em /animes/changes. Toda alteração passa pelo AnimeChangeChannel,
+ * inclusive as desta instância, e recebe aqui um número de sequência. As últimas ficam num buffer
+ * circular, então um cliente que reconecta com Last-Event-ID recebe o que perdeu.
+ * <p>
+ * Cada assinante tem uma fila limitada. Quem fica para trás além dela é desconectado e, ao reconectar,
+ * retoma pelo buffer circular ou recebe um RESYNC para recarregar a listagem.
+ * <p>
+ * Alterações vindas de outra instância invalidam o cache, o índice de nomes e o ETag da listagem daqui
+ */
+@Slf4j
+@Component
+public class AnimeChangeFeed implements ApplicationRunner, DisposableBean {
+
+    // O ETag da listagem usa a mesma ideia: depois de um restart nenhum id antigo volta a valer
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AnimeChangeChannel animeChangeChannel;
+    private final AnimeCache animeCache;
+    private final AnimeNameIndex animeNameIndex;
+    private final AnimeChangeCounter animeChangeCounter;
+    private final int subscriberBuffer;
+
+    private final Event[] ring;
+    private final Set<Sinks.Many<Event>> subscribers = ConcurrentHashMap.newKeySet();
+    private long sequence;
+    private volatile Disposable subscription;
+
+    public AnimeChangeFeed(AnimeChangeChannel animeChangeChannel, AnimeCache animeCache, AnimeNameIndex animeNameIndex,
+                           AnimeChangeCounter animeChangeCounter, AnimeProperties animeProperties) {
+        this.animeChangeChannel = animeChangeChannel;
+        this.animeCache = animeCache;
+        this.animeNameIndex = animeNameIndex;
+        this.animeChangeCounter = animeChangeCounter;
+
+        AnimeProperties.Changes changes = animeProperties.getChanges();
+        this.ring = new Event[changes.getBufferSize()];
+        this.subscriberBuffer = Math.min(changes.getSubscriberBuffer(), changes.getBufferSize());
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        start();
+    }
+
+    void start() {
+        subscription = animeChangeChannel.notifications()
+                .subscribe(this::receive, error -> log.error("Anime change feed stopped", error));
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Publica as alterações de uma gravação já confirmada. Uma falha do canal não desfaz a gravação, só
+     * atrasa a invalidação nas outras instâncias até o fim do TTL do cache. Os assinantes daqui, que
+     * receberiam as alterações pelo canal, ganham um RESYNC no lugar delas
+     *
+     * @param changes
+     * @return
+     */
+    public Mono<Void> publish(List<AnimeChange> changes) {
+        if (changes.isEmpty()) {
+            return Mono.empty();
+        }
+
+        return animeChangeChannel.publish(changes)
+                .onErrorResume(error -> {
+                    log.warn("Could not publish {} anime changes: {}", changes.size(), error.toString());
+                    // O cache, o índice e o ETag daqui já foram atualizados pela própria gravação
+                    append(List.of(AnimeChange.resync()));
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Alterações a partir do Last-Event-ID, ou a partir de agora sem ele. Um id que não pode ser retomado,
+     * de antes de um restart ou que já saiu do buffer, começa com um RESYNC
+     *
+     * @param lastEventId
+     * @return
+     */
+    public Flux<Event> events(String lastEventId) {
+        return Flux.defer(() -> {
+            Sinks.Many<Event> live = Sinks.many().unicast().onBackpressureBuffer(Queues.<Event>get(subscriberBuffer).get());
+            List<Event> backlog = register(live, lastEventId);
+
+            return Flux.concat(Flux.fromIterable(backlog), live.asFlux())
+                    .doFinally(signal -> subscribers.remove(live));
+        });
+    }
+
+    int subscribers() {
+        return subscribers.size();
+    }
+
+    private synchronized List<Event> register(Sinks.Many<Event> live, String lastEventId) {
+        long after = resumableSequence(lastEventId);
+        List<Event> backlog = new ArrayList<>();
+
+        if (after < 0) {
+            backlog.add(new Event(id(sequence), AnimeChange.resync()));
+            after = sequence;
+        }
+
+        for (long next = after + 1; next <= sequence; next++) {
+            backlog.add(ring[slot(next)]);
+        }
+
+        subscribers.add(live);
+        return backlog;
+    }
+
+    /**
+     * Sequência do Last-Event-ID quando ela ainda está no buffer, -1 quando não dá para retomar
+     */
+    private long resumableSequence(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return sequence;
+        }
+
+        int separator = lastEventId.lastIndexOf('-');
+
+        if (separator < 0 || !lastEventId.substring(0, separator).equals(epoch)) {
+            return -1;
+        }
+
+        try {
+            long last = Long.parseLong(lastEventId.substring(separator + 1));
+            return last <= sequence && sequence - last <= ring.length ? last : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void receive(AnimeChangeChannel.Notification notification) {
+        if (notification.isGap()) {
+            // Não dá para saber o que mudou, então nada do que está em memória é confiável
+            log.warn("Anime change channel had a gap, invalidating the cache");
+            animeCache.invalidateAll();
+            animeChangeCounter.increment();
+        } else if (!notification.isLocal()) {
+            notification.getChanges().forEach(this::applyRemote);
+            animeChangeCounter.increment();
+        }
+
+        append(notification.getChanges());
+    }
+
+    private void applyRemote(AnimeChange change) {
+        animeCache.invalidate(change.getId());
+        animeNameIndex.apply(change);
+    }
+
+    private synchronized void append(List<AnimeChange> changes) {
+        for (AnimeChange change : changes) {
+            Event event = new Event(id(++sequence), change);
+            ring[slot(sequence)] = event;
+
+            for (Sinks.Many<Event> subscriber : subscribers) {
+                if (subscriber.tryEmitNext(event) == Sinks.EmitResult.FAIL_OVERFLOW) {
+                    // A fila cheia é descartada: o assinante recebe o que já estava nela e a conexão termina
+                    subscribers.remove(subscriber);
+                    subscriber.tryEmitComplete();
+                }
+            }
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+
+    private String id(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    @Value
+    public static class Event {
+
+        /**
+         * Id do SSE, que o cliente devolve no Last-Event-ID ao reconectar
+         */
+        String id;
+
+        AnimeChange change;
+
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.exception.AnimeOverloadedException;
+import com.funck.webflux.repository.ReplicaRoutingConnectionFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Limite adaptativo de chamadas ao banco em andamento, no estilo do gradient da Netflix. Acima do limite
+ * a chamada é recusada na hora com 503; esperar por uma conexão do pool só faria a requisição expirar
+ * mais tarde e atrasar todas as outras.
+ * <p>
+ * O limite segue a razão entre a latência de referência, uma média longa, e a latência recente: quando a
+ * recente passa da tolerância o limite cai, senão ele cresce devagar. Requisições esperando conexão no
+ * pool mostram que o limite já passou da capacidade do banco, e aí ele cai independente da latência
+ */
+@Component
+public class AnimeConcurrencyLimiter implements MeterBinder {
+
+    // Pesos das médias móveis: a de referência acompanha umas cem chamadas, a recente umas cinco
+    private static final double LONG_RTT_WEIGHT = 0.01;
+    private static final double SHORT_RTT_WEIGHT = 0.2;
+
+    private static final double SATURATED_BACKOFF = 0.9;
+
+    // O limite é recalculado de tanto em tanto, a cada liberação só as médias mudam
+    private static final int RECALCULATE_EVERY = 16;
+
+    private final AnimeProperties.Concurrency properties;
+    private final IntSupplier pendingAcquires;
+    private final LongSupplier nanoTime;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder shed = new LongAdder();
+    private volatile int limit;
+
+    // Protegidos pelo synchronized do record e do recalculate
+    private double estimatedLimit;
+    private double longRtt;
+    private double shortRtt;
+    private int maxConcurrent;
+    private long samples;
+
+    @Autowired
+    public AnimeConcurrencyLimiter(ConnectionFactory connectionFactory, AnimeProperties animeProperties) {
+        this(pendingAcquires(connectionFactory), System::nanoTime, animeProperties.getConcurrency());
+    }
+
+    AnimeConcurrencyLimiter(IntSupplier pendingAcquires, LongSupplier nanoTime, AnimeProperties.Concurrency properties) {
+        this.properties = properties;
+        this.pendingAcquires = pendingAcquires;
+        this.nanoTime = nanoTime;
+        this.estimatedLimit = properties.getInitialLimit();
+        this.limit = properties.getInitialLimit();
+    }
+
+    public <T> Mono<T> limit(Mono<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                return Mono.error(new AnimeOverloadedException());
+            }
+
+            long start = nanoTime.getAsLong();
+            return call.doFinally(signal -> release(start, signal));
+        });
+    }
+
+    public <T> Flux<T> limit(Flux<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                return Flux.error(new AnimeOverloadedException());
+            }
+
+            long start = nanoTime.getAsLong();
+            return call.doFinally(signal -> release(start, signal));
+        });
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("anime.concurrency.limit", this, AnimeConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit of concurrent database calls")
+                .register(registry);
+
+        Gauge.builder("anime.concurrency.in-flight", this, AnimeConcurrencyLimiter::getInFlight)
+                .description("Database calls in flight")
+                .register(registry);
+
+        FunctionCounter.builder("anime.concurrency.shed", shed, LongAdder::sum)
+                .description("Calls rejected with 503 because the limit was reached")
+                .register(registry);
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+
+            if (current >= limit) {
+                shed.increment();
+                return false;
+            }
+
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release(long start, SignalType signal) {
+        int concurrent = inFlight.getAndDecrement();
+
+        // Um cancelamento não diz nada sobre a latência do banco, só devolve a vaga
+        if (signal != SignalType.CANCEL && record(nanoTime.getAsLong() - start, concurrent)) {
+            // As métricas dos pools são lidas fora do lock, quem libera uma vaga não espera por elas
+            recalculate(pendingAcquires.getAsInt() > 0);
+        }
+    }
+
+    /**
+     * Atualiza as médias e diz se já é hora de recalcular o limite
+     */
+    private synchronized boolean record(long rtt, int concurrent) {
+        if (longRtt == 0) {
+            longRtt = rtt;
+            shortRtt = rtt;
+        }
+
+        shortRtt += (rtt - shortRtt) * SHORT_RTT_WEIGHT;
+        longRtt += (rtt - longRtt) * LONG_RTT_WEIGHT;
+
+        // Quando a latência cai bastante a referência acompanha mais rápido, senão o limite demora a subir
+        if (longRtt > shortRtt * 2) {
+            longRtt *= 0.95;
+        }
+
+        maxConcurrent = Math.max(maxConcurrent, concurrent);
+        return ++samples % RECALCULATE_EVERY == 0;
+    }
+
+    private synchronized void recalculate(boolean saturated) {
+        int concurrent = maxConcurrent;
+        maxConcurrent = 0;
+
+        // Com menos da metade do limite em uso a latência não diz nada sobre ele
+        if (!saturated && concurrent < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, properties.getTolerance() * longRtt / Math.max(1, shortRtt)));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+
+        if (saturated) {
+            newLimit = Math.min(newLimit, estimatedLimit * SATURATED_BACKOFF);
+        }
+
+        newLimit = estimatedLimit * (1 - properties.getSmoothing()) + newLimit * properties.getSmoothing();
+        estimatedLimit = Math.max(properties.getMinLimit(), Math.min(properties.getMaxLimit(), newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    private static IntSupplier pendingAcquires(ConnectionFactory connectionFactory) {
+        // Com réplicas, espera em qualquer um dos pools mostra que o limite passou da capacidade
+        List<ConnectionPool> pools = ReplicaRoutingConnectionFactory.targets(connectionFactory).stream()
+                .filter(ConnectionPool.class::isInstance)
+                .map(ConnectionPool.class::cast)
+                .collect(Collectors.toList());
+
+        return () -> {
+            int pending = 0;
+
+            for (ConnectionPool pool : pools) {
+                pending += pool.getMetrics()
+                        .map(PoolMetrics::pendingAcquireSize)
+                        .orElse(0);
+            }
+
+            return pending;
+        };
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.funck.webflux.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.domain.AnimeChange;
+import com.funck.webflux.domain.IngestChunkResult;
+import com.funck.webflux.domain.IngestRejection;
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.repository.ReplicaRouting;
+import com.funck.webflux.service.AnimeQueryPolicy.Operation;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class AnimeIngestService {
+
+    // Marca de tempo entre as linhas, comparada pela referência
+    private static final IngestLine FLUSH = new IngestLine(0, null, null);
+
+    private final AnimeRepository animeRepository;
+    private final AnimeProperties animeProperties;
+    private final Validator validator;
+    private final TransactionalOperator transactionalOperator;
+    private final AnimeCache animeCache;
+    private final AnimeChangeCounter animeChangeCounter;
+    private final AnimeNameIndex animeNameIndex;
+    private final AnimeChangeFeed animeChangeFeed;
+    private final ReplicaRouting replicaRouting;
+    private final AnimeConcurrencyLimiter animeConcurrencyLimiter;
+    private final AnimeQueryPolicy animeQueryPolicy;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Importa os animes conforme chegam, um por linha em JSON, agrupando em lotes por tamanho ou tempo. As
+     * linhas só são lidas conforme os lotes são gravados, então com o banco mais lento que a origem a
+     * leitura espera, e o consumo não depende do tamanho da importação. Uma linha que não é um anime vira
+     * uma rejeição no lote dela, sem interromper as outras
+     *
+     * @param lines
+     * @return
+     */
+    public Flux<IngestChunkResult> ingest(Flux<String> lines) {
+        AnimeProperties.Ingest ingest = animeProperties.getIngest();
+        Duration chunkTimeout = ingest.getChunkTimeout();
+        ObjectReader animeReader = objectMapper.readerFor(Anime.class);
+
+        return lines
+                .index()
+                .filter(line -> !line.getT2().isBlank())
+                .map(line -> read(animeReader, line.getT1() + 1, line.getT2()))
+                // O bufferTimeout falha quando o tempo fecha um lote sem demanda, o que acontece quando o banco
+                // não acompanha a origem. Aqui o tempo é uma marca entre as linhas, descartada enquanto um lote
+                // grava, e os lotes só são montados quando pedidos
+                .publish(read -> Flux.merge(read, Flux.interval(chunkTimeout, chunkTimeout)
+                        .map(tick -> FLUSH)
+                        .onBackpressureDrop()
+                        .takeUntilOther(read.then())))
+                .transform(read -> chunks(read, ingest.getChunkSize()))
+                .index()
+                .concatMap(chunk -> ingestChunk(chunk.getT1(), chunk.getT2()), 1);
+    }
+
+    /**
+     * Fecha o lote ao chegar no tamanho ou na marca de tempo. Uma marca sem linhas antes dela não gera lote
+     *
+     * @param lines
+     * @param chunkSize
+     * @return
+     */
+    private static Flux<List<IngestLine>> chunks(Flux<IngestLine> lines, int chunkSize) {
+        return Flux.defer(() -> {
+            AtomicInteger size = new AtomicInteger();
+
+            return lines
+                    .bufferUntil(line -> {
+                        if (line != FLUSH && size.incrementAndGet() < chunkSize) {
+                            return false;
+                        }
+
+                        size.set(0);
+                        return true;
+                    })
+                    .doOnNext(chunk -> chunk.removeIf(line -> line == FLUSH))
+                    .filter(chunk -> !chunk.isEmpty());
+        });
+    }
+
+    private IngestLine read(ObjectReader animeReader, long line, String json) {
+        Anime anime;
+
+        try {
+            anime = animeReader.readValue(json);
+        } catch (JsonProcessingException e) {
+            return new IngestLine(line, null, "Invalid JSON: " + e.getOriginalMessage());
+        }
+
+        if (anime == null) {
+            return new IngestLine(line, null, "Invalid JSON: null");
+        }
+
+        Set<ConstraintViolation<Anime>> violations = validator.validate(anime);
+
+        String reason = violations.isEmpty() ? null : violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "));
+
+        return new IngestLine(line, anime, reason);
+    }
+
+    private Mono<IngestChunkResult> ingestChunk(long chunk, List<IngestLine> lines) {
+        List<Anime> accepted = new ArrayList<>();
+        List<IngestRejection> rejected = new ArrayList<>();
+
+        for (IngestLine line : lines) {
+            if (line.isValid()) {
+                accepted.add(line.getAnime());
+            } else {
+                rejected.add(new IngestRejection(line.getLine(), line.getReason()));
+            }
+        }
+
+        if (accepted.isEmpty()) {
+            return Mono.just(new IngestChunkResult(chunk, List.of(), rejected));
+        }
+
+        // Prazo para cada sinal do banco, dentro da transação, que o cancelamento desfaz
+        return animeQueryPolicy.write(Operation.INGEST, animeRepository.insertAll(accepted))
+                .collectList()
+                .as(transactionalOperator::transactional)
+                .as(animeConcurrencyLimiter::limit)
+                .doOnSuccess(ids -> committed(accepted, ids))
+                // O publish não falha, então qualquer erro aqui ainda é da transação
+                .flatMap(ids -> animeChangeFeed.publish(changes(accepted, ids))
+                        .then(replicaRouting.recordWrite())
+                        .thenReturn(new IngestChunkResult(chunk, ids, rejected)))
+                .onErrorResume(error -> Mono.just(rolledBack(chunk, lines, error)));
+    }
+
+    private void committed(List<Anime> accepted, List<Integer> ids) {
+        for (int i = 0; i < ids.size(); i++) {
+            // Um findById anterior pode ter deixado o id no cache como não encontrado
+            animeCache.invalidate(ids.get(i));
+            animeNameIndex.put(ids.get(i), accepted.get(i).getName());
+        }
+
+        animeChangeCounter.increment();
+    }
+
+    private List<AnimeChange> changes(List<Anime> accepted, List<Integer> ids) {
+        List<AnimeChange> changes = new ArrayList<>(ids.size());
+
+        for (int i = 0; i < ids.size(); i++) {
+            changes.add(AnimeChange.inserted(accepted.get(i).withId(ids.get(i))));
+        }
+
+        return changes;
+    }
+
+    private IngestChunkResult rolledBack(long chunk, List<IngestLine> lines, Throwable error) {
+        // O lote inteiro volta atras, entao todas as linhas sao rejeitadas e a importacao segue no proximo lote
+        List<IngestRejection> rejected = lines.stream()
+                .map(line -> new IngestRejection(line.getLine(),
+                        line.isValid() ? "Chunk rolled back: " + error.getMessage() : line.getReason()))
+                .collect(Collectors.toList());
+
+        return new IngestChunkResult(chunk, List.of(), rejected);
+    }
+
+    @Value
+    private static class IngestLine {
+
+        long line;
+
+        Anime anime;
+
+        String reason;
+
+        boolean isValid() {
+            return reason == null;
+        }
+
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.domain.AnimeChange;
+import com.funck.webflux.repository.AnimeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Índice em memória dos nomes em ordem alfabética, para o autocomplete responder sem ir ao banco. É
+ * carregado em segundo plano quando a aplicação sobe e depois mantido pelo AnimeService a cada gravação;
+ * enquanto não fica pronto o autocomplete consulta o banco.
+ * <p>
+ * Desligado por padrão: cada anime ocupa perto de 200 bytes de heap. Gravações feitas por outra
+ * instância chegam pelo AnimeChangeFeed, mas o que se perde numa queda do canal só volta num restart
+ */
+@Slf4j
+@Component
+public class AnimeNameIndex implements ApplicationRunner, DisposableBean {
+
+    private final AnimeRepository animeRepository;
+    private final AnimeProperties animeProperties;
+    private final boolean enabled;
+
+    private final NavigableSet<Entry> entries = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<Integer, Entry> byId = new ConcurrentHashMap<>();
+
+    // Ids gravados durante a carga, a carga não pode sobrescrever o que já é mais novo que a leitura dela
+    private final Set<Integer> touched = ConcurrentHashMap.newKeySet();
+    private volatile boolean loading;
+    private volatile boolean ready;
+    private volatile Disposable subscription;
+
+    public AnimeNameIndex(AnimeRepository animeRepository, AnimeProperties animeProperties) {
+        this.animeRepository = animeRepository;
+        this.animeProperties = animeProperties;
+        this.enabled = animeProperties.getSearch().isPrefixIndex();
+    }
+
+    /**
+     * Normalização usada no índice e nas buscas, a comparação não diferencia maiúsculas
+     *
+     * @param name
+     * @return
+     */
+    public static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            // Não segura o readiness, o autocomplete usa o banco até a carga terminar
+            subscription = load().subscribe(
+                    count -> log.info("Anime name index loaded with {} animes", count),
+                    error -> log.warn("Anime name index load failed: {}", error.toString()));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    Mono<Long> load() {
+        return Mono.defer(() -> {
+            loading = true;
+
+            return animeRepository.streamAll(animeProperties.getStreaming().getFetchSize())
+                    .doOnNext(this::putLoaded)
+                    .count()
+                    .doOnSuccess(count -> ready = true)
+                    .doFinally(signal -> {
+                        loading = false;
+                        touched.clear();
+                    });
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Animes cujo nome começa com o prefixo, em ordem alfabética
+     *
+     * @param prefix prefixo já normalizado
+     * @param limit
+     * @return
+     */
+    public List<Anime> complete(String prefix, int limit) {
+        List<Anime> animes = new ArrayList<>(Math.min(limit, 32));
+
+        for (Entry entry : entries.tailSet(new Entry(prefix, Integer.MIN_VALUE, null))) {
+            if (animes.size() == limit || !entry.key.startsWith(prefix)) {
+                break;
+            }
+
+            animes.add(Anime.builder().id(entry.id).name(entry.name).build());
+        }
+
+        return animes;
+    }
+
+    public void put(Integer id, String name) {
+        if (!enabled) {
+            return;
+        }
+
+        markTouched(id);
+        byId.compute(id, (key, previous) -> {
+            if (previous != null) {
+                entries.remove(previous);
+            }
+
+            return add(id, name);
+        });
+    }
+
+    public void putAll(Iterable<Anime> animes) {
+        for (Anime anime : animes) {
+            put(anime.getId(), anime.getName());
+        }
+    }
+
+    public void remove(Integer id) {
+        if (!enabled) {
+            return;
+        }
+
+        markTouched(id);
+        byId.computeIfPresent(id, (key, previous) -> {
+            entries.remove(previous);
+            return null;
+        });
+    }
+
+    /**
+     * Aplica uma alteração confirmada, desta ou de outra instância
+     *
+     * @param change
+     */
+    public void apply(AnimeChange change) {
+        if (change.getType() == AnimeChange.Type.DELETE) {
+            remove(change.getId());
+        } else if (change.getType() != AnimeChange.Type.RESYNC) {
+            put(change.getId(), change.getName());
+        }
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private void putLoaded(Anime anime) {
+        byId.compute(anime.getId(), (key, previous) ->
+                previous != null || touched.contains(key) ? previous : add(key, anime.getName()));
+    }
+
+    private void markTouched(Integer id) {
+        if (loading) {
+            touched.add(id);
+        }
+    }
+
+    private Entry add(Integer id, String name) {
+        Entry entry = new Entry(normalize(name), id, name);
+        entries.add(entry);
+        return entry;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private final String key;
+        private final int id;
+        private final String name;
+
+        private Entry(String key, int id, String name) {
+            this.key = key;
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byKey = key.compareTo(other.key);
+            return byKey != 0 ? byKey : Integer.compare(id, other.id);
+        }
+
+    }
+
+}
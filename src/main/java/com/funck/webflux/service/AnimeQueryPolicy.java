@@ -0,0 +1,371 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.exception.AnimeTimeoutException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prazos e segundas tentativas das chamadas do AnimeService ao banco. Toda operação tem um prazo e,
+ * passando dele, quem espera recebe 504. As leituras são canceladas e as escritas seguem até o fim. As
+ * leituras, que podem ser repetidas sem efeito,
+ * ganham uma segunda tentativa quando a primeira passa do p95 da operação: a que responder primeiro vale
+ * e a outra é cancelada, então uma conexão lenta ou uma pausa do banco não vira a latência do cliente.
+ * <p>
+ * O p95 sai das últimas latências de cada operação. As segundas tentativas têm um orçamento, uma fração
+ * das leituras, para que um banco lento por igual não receba o dobro de consultas justo quando está
+ * sobrecarregado
+ */
+@Component
+public class AnimeQueryPolicy implements MeterBinder {
+
+    // Cada leitura deposita a fração do orçamento e cada segunda tentativa gasta uma unidade inteira
+    private static final long HEDGE_COST = 1_000;
+    private static final long MAX_HEDGE_BURST = 10 * HEDGE_COST;
+
+    private final AnimeProperties.Queries properties;
+    private final Scheduler scheduler;
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+    private final AtomicLong hedgeBudget = new AtomicLong(MAX_HEDGE_BURST);
+    private final long hedgeDeposit;
+
+    @Autowired
+    public AnimeQueryPolicy(AnimeProperties animeProperties) {
+        this(animeProperties.getQueries(), Schedulers.parallel());
+    }
+
+    AnimeQueryPolicy(AnimeProperties.Queries properties, Scheduler scheduler) {
+        this.properties = properties;
+        this.scheduler = scheduler;
+        this.hedgeDeposit = Math.round(properties.getHedging().getBudget() * HEDGE_COST);
+
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats(operation, properties));
+        }
+    }
+
+    /**
+     * Leitura com prazo e segunda tentativa. As duas tentativas devem ser frias, a segunda só é assinada
+     * se a primeira demorar
+     *
+     * @param operation
+     * @param attempt
+     * @param hedge
+     * @return
+     */
+    public <T> Mono<T> read(Operation operation, Mono<T> attempt, Mono<T> hedge) {
+        Stats operationStats = stats.get(operation);
+
+        if (!properties.getHedging().isEnabled()) {
+            return withDeadline(operationStats, attempt);
+        }
+
+        return withDeadline(operationStats, Mono.defer(() -> hedged(operationStats, attempt, hedge)));
+    }
+
+    /**
+     * Escrita com prazo. A chamada não é cancelada no prazo: a escrita pode já ter sido confirmada, e
+     * cancelar só pularia o que vem depois dela, o cache, o índice de nomes, o ETag e o feed. Por isso a
+     * chamada deve incluir esse trabalho todo, que termina mesmo depois do 504
+     *
+     * @param operation
+     * @param call
+     * @return
+     */
+    public <T> Mono<T> write(Operation operation, Mono<T> call) {
+        return withDeadline(stats.get(operation), Mono.deferContextual(context -> {
+            Sinks.One<T> result = Sinks.one();
+
+            // Assinada à parte, com o contexto da requisição, para o cancelamento do prazo não chegar nela
+            call.contextWrite(context)
+                    .subscribe(result::tryEmitValue, result::tryEmitError, result::tryEmitEmpty);
+
+            return result.asMono();
+        }));
+    }
+
+    /**
+     * Num Flux o prazo vale para cada sinal do banco, não para o total. Esta é cancelada no prazo, então
+     * deve rodar dentro de uma transação, que o cancelamento desfaz
+     *
+     * @param operation
+     * @param call
+     * @return
+     */
+    public <T> Flux<T> write(Operation operation, Flux<T> call) {
+        Stats operationStats = stats.get(operation);
+        return call.timeout(operationStats.timeout, operationStats.expired(), scheduler);
+    }
+
+    /**
+     * Prazo da operação, o dela em anime.queries.timeouts ou o padrão de leitura ou de escrita
+     *
+     * @param properties
+     * @param operation
+     * @return
+     */
+    static Duration timeout(AnimeProperties.Queries properties, Operation operation) {
+        Duration defaultTimeout = operation.read ? properties.getReadTimeout() : properties.getWriteTimeout();
+        return properties.getTimeouts().getOrDefault(operation.key, defaultTimeout);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        stats.values().forEach(operationStats -> operationStats.bindTo(registry));
+    }
+
+    private <T> Mono<T> withDeadline(Stats operationStats, Mono<T> call) {
+        return call.timeout(operationStats.timeout, operationStats.expired(), scheduler);
+    }
+
+    private <T> Mono<T> hedged(Stats operationStats, Mono<T> attempt, Mono<T> hedge) {
+        long start = scheduler.now(TimeUnit.NANOSECONDS);
+        long delay = operationStats.hedgeDelay();
+
+        operationStats.reads.increment();
+        depositHedgeBudget();
+
+        Mono<Attempt<T>> first = attempt
+                .map(value -> new Attempt<>(value, false))
+                .defaultIfEmpty(Attempt.empty(false));
+
+        if (delay < 0) {
+            return first
+                    .doOnNext(result -> operationStats.latencies.record(scheduler.now(TimeUnit.NANOSECONDS) - start))
+                    .flatMap(Attempt::value);
+        }
+
+        // Enquanto a outra tentativa ainda roda, um erro não decide a leitura: só o erro da última vale
+        AtomicInteger running = new AtomicInteger(1);
+        Mono<Attempt<T>> firstOrOther = first.onErrorResume(error -> unlessOtherIsRunning(running, error));
+
+        Mono<Attempt<T>> second = Mono.delay(Duration.ofNanos(delay), scheduler)
+                .flatMap(tick -> {
+                    if (!withdrawHedgeBudget()) {
+                        return Mono.never();
+                    }
+
+                    running.incrementAndGet();
+                    operationStats.hedges.increment();
+                    return hedge
+                            .map(value -> new Attempt<>(value, true))
+                            .defaultIfEmpty(Attempt.empty(true))
+                            .onErrorResume(error -> unlessOtherIsRunning(running, error));
+                });
+
+        // Quando a segunda ganha a primeira já passou do p95, então registrar o tempo até a resposta não
+        // muda o percentil mesmo sem saber quanto ela ainda levaria
+        return Mono.firstWithSignal(firstOrOther, second)
+                .doOnNext(result -> {
+                    operationStats.latencies.record(scheduler.now(TimeUnit.NANOSECONDS) - start);
+
+                    if (result.hedge) {
+                        operationStats.wins.increment();
+                    }
+                })
+                .flatMap(Attempt::value);
+    }
+
+    private static <T> Mono<T> unlessOtherIsRunning(AtomicInteger running, Throwable error) {
+        return running.decrementAndGet() > 0 ? Mono.never() : Mono.error(error);
+    }
+
+    private void depositHedgeBudget() {
+        while (true) {
+            long current = hedgeBudget.get();
+
+            if (current >= MAX_HEDGE_BURST || hedgeBudget.compareAndSet(current, Math.min(MAX_HEDGE_BURST, current + hedgeDeposit))) {
+                return;
+            }
+        }
+    }
+
+    private boolean withdrawHedgeBudget() {
+        while (true) {
+            long current = hedgeBudget.get();
+
+            if (current < HEDGE_COST) {
+                return false;
+            }
+
+            if (hedgeBudget.compareAndSet(current, current - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    public enum Operation {
+
+        FIND_BY_ID("find-by-id", true),
+        LIST_PAGE("list-page", true),
+        SEARCH("search", true),
+        AUTOCOMPLETE("autocomplete", true),
+        SAVE("save", false),
+        SAVE_ALL("save-all", false),
+        INGEST("ingest", false),
+        UPDATE("update", false),
+        DELETE("delete", false);
+
+        private final String key;
+        private final boolean read;
+
+        Operation(String key, boolean read) {
+            this.key = key;
+            this.read = read;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+    }
+
+    private static class Stats {
+
+        private final Operation operation;
+        private final Duration timeout;
+        private final Duration minDelay;
+        private final Latencies latencies;
+        private final Mono<Object> expired;
+
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder wins = new LongAdder();
+
+        Stats(Operation operation, AnimeProperties.Queries properties) {
+            this.operation = operation;
+            this.timeout = timeout(properties, operation);
+            this.minDelay = properties.getHedging().getMinDelay();
+            this.latencies = new Latencies(properties.getHedging());
+            this.expired = Mono.defer(() -> {
+                timeouts.increment();
+                return Mono.error(new AnimeTimeoutException());
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> Mono<T> expired() {
+            return (Mono<T>) expired;
+        }
+
+        long hedgeDelay() {
+            long percentile = latencies.percentile;
+            return percentile < 0 ? -1 : Math.max(percentile, minDelay.toNanos());
+        }
+
+        void bindTo(MeterRegistry registry) {
+            String tag = operation.key;
+
+            FunctionCounter.builder("anime.query.timeouts", timeouts, LongAdder::sum)
+                    .description("Database calls cancelled for passing the operation deadline")
+                    .tag("operation", tag)
+                    .register(registry);
+
+            if (!operation.read) {
+                return;
+            }
+
+            FunctionCounter.builder("anime.hedge.reads", reads, LongAdder::sum)
+                    .description("Reads that could be hedged")
+                    .tag("operation", tag)
+                    .register(registry);
+
+            FunctionCounter.builder("anime.hedge.sent", hedges, LongAdder::sum)
+                    .description("Second attempts fired because the first one passed the latency percentile")
+                    .tag("operation", tag)
+                    .register(registry);
+
+            FunctionCounter.builder("anime.hedge.wins", wins, LongAdder::sum)
+                    .description("Second attempts that answered before the first one")
+                    .tag("operation", tag)
+                    .register(registry);
+
+            TimeGauge.builder("anime.hedge.delay", latencies, TimeUnit.NANOSECONDS, value -> Math.max(0, hedgeDelay()))
+                    .description("How long a read waits before the second attempt")
+                    .tag("operation", tag)
+                    .register(registry);
+        }
+
+    }
+
+    /**
+     * Janela com as últimas latências, o percentil é recalculado de tanto em tanto e fica num volatile
+     * para a leitura não travar
+     */
+    private static class Latencies {
+
+        private static final int WINDOW = 1024;
+        private static final int RECALCULATE_EVERY = 64;
+
+        private final double percentileRank;
+        private final int minSamples;
+        private final long[] samples = new long[WINDOW];
+        private long count;
+
+        private volatile long percentile = -1;
+
+        Latencies(AnimeProperties.Queries.Hedging properties) {
+            this.percentileRank = properties.getPercentile();
+            this.minSamples = properties.getMinSamples();
+        }
+
+        void record(long nanos) {
+            long[] snapshot;
+
+            synchronized (this) {
+                samples[(int) (count++ % WINDOW)] = nanos;
+
+                if (count < minSamples || count % RECALCULATE_EVERY != 0) {
+                    return;
+                }
+
+                snapshot = Arrays.copyOf(samples, (int) Math.min(count, WINDOW));
+            }
+
+            // Ordenado fora do lock, quem mede não espera pelo recálculo
+            Arrays.sort(snapshot);
+            percentile = snapshot[Math.max(0, (int) Math.ceil(snapshot.length * percentileRank) - 1)];
+        }
+
+    }
+
+    private static class Attempt<T> {
+
+        private final T value;
+        private final boolean hedge;
+
+        Attempt(T value, boolean hedge) {
+            this.value = value;
+            this.hedge = hedge;
+        }
+
+        static <T> Attempt<T> empty(boolean hedge) {
+            return new Attempt<>(null, hedge);
+        }
+
+        Mono<T> value() {
+            return Mono.justOrEmpty(value);
+        }
+
+    }
+
+}
@@ -1,65 +1,302 @@
 package com.funck.webflux.service;
 
+import com.funck.webflux.config.AnimeProperties;
 import com.funck.webflux.domain.Anime;
+import com.funck.webflux.domain.AnimeChange;
+import com.funck.webflux.domain.AnimePage;
+import com.funck.webflux.exception.AnimeNotFoundException;
+import com.funck.webflux.exception.AnimeVersionMismatchException;
+import com.funck.webflux.exception.InvalidAnimeException;
 import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.repository.ReplicaRouting;
+import com.funck.webflux.service.AnimeQueryPolicy.Operation;
 import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.util.StringUtils;
-import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
-
-import static org.springframework.http.HttpStatus.NOT_FOUND;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class AnimeService {
 
+    private static final int FIRST_PAGE_CURSOR = 0;
+
     private final AnimeRepository animeRepository;
+    private final AnimeProperties animeProperties;
+    private final AnimeCache animeCache;
+    private final AnimeBatchLoader animeBatchLoader;
+    private final AnimeChangeCounter animeChangeCounter;
+    private final AnimeNameIndex animeNameIndex;
+    private final AnimeChangeFeed animeChangeFeed;
+    private final AnimeConcurrencyLimiter animeConcurrencyLimiter;
+    private final ReplicaRouting replicaRouting;
+    private final AnimeQueryPolicy animeQueryPolicy;
+    private final TransactionalOperator transactionalOperator;
 
     public Flux<Anime> listAll() {
-        return animeRepository.findAll();
+        int fetchSize = animeProperties.getStreaming().getFetchSize();
+
+        // limitRate impede que uma demanda unbounded do assinante peça a tabela inteira de uma vez. Fica fora
+        // do AnimeConcurrencyLimiter e do prazo do AnimeQueryPolicy: a conexão fica presa pelo tempo que o
+        // cliente levar para ler, não pelo banco
+        return ReplicaRouting.readOnly(animeRepository.streamAll(fetchSize))
+                .limitRate(fetchSize);
+    }
+
+    public Mono<AnimePage> listPage(Integer after, Integer limit) {
+        int pageSize = pageSize(limit);
+
+        // Busca um registro a mais so para saber se existe proxima pagina. Vai ao primario: o ETag da
+        // listagem muda no commit, e uma replica atrasada devolveria a pagina antiga com o ETag novo
+        Mono<List<Anime>> page = animeRepository.findPageAfter(after == null ? FIRST_PAGE_CURSOR : after, pageSize + 1)
+                .collectList();
+
+        return animeConcurrencyLimiter.limit(animeQueryPolicy.read(Operation.LIST_PAGE, page, page))
+                .map(animes -> toPage(animes, pageSize));
     }
 
     public Mono<Anime> findById(Integer id) {
-        return animeRepository.findById(id)
-                .switchIfEmpty(monoNotFoundError())
-                .log();
+        return replicaRouting.readsOwnWrites()
+                .flatMap(ownWrites -> find(id, ownWrites))
+                .switchIfEmpty(monoNotFoundError());
+    }
+
+    /**
+     * Busca vários animes pelo mesmo caminho do findById, ids não encontrados são ignorados
+     *
+     * @param ids
+     * @return
+     */
+    public Flux<Anime> findAllById(List<Integer> ids) {
+        if (ids.size() > animeProperties.getPagination().getMaxSize()) {
+            return Flux.error(new InvalidAnimeException("Too many ids"));
+        }
+
+        return replicaRouting.readsOwnWrites()
+                .flatMapMany(ownWrites -> Flux.fromIterable(ids)
+                        .flatMapSequential(id -> find(id, ownWrites)));
     }
 
     public Mono<Anime> save(Anime anime) {
-        return animeRepository.save(anime);
+        // Sem versão o Spring Data trata o anime como novo e grava a versão inicial
+        return animeQueryPolicy.write(Operation.SAVE, animeConcurrencyLimiter.limit(animeRepository.save(anime.withVersion(null)))
+                .doOnNext(animeCache::put)
+                .doOnNext(saved -> animeNameIndex.put(saved.getId(), saved.getName()))
+                .doOnNext(saved -> animeChangeCounter.increment())
+                .flatMap(saved -> animeChangeFeed.publish(List.of(AnimeChange.inserted(saved)))
+                        .then(replicaRouting.recordWrite())
+                        .thenReturn(saved)));
     }
 
-    @Transactional
     public Flux<Anime> saveAll(List<Anime> animes) {
-        return animeRepository.saveAll(animes)
-                .doOnNext(this::throwResponseStatusExceptionWhenEmptyname);
+        int chunkSize = animeProperties.getBatch().getChunkSize();
+
+        return Flux.defer(() -> {
+            List<Anime> inserted = new ArrayList<>(animes.size());
+
+            // Valida tudo antes do primeiro round trip, para nao gravar nada de um lote invalido
+            return Flux.fromIterable(animes)
+                    .doOnNext(this::throwResponseStatusExceptionWhenEmptyname)
+                    .thenMany(Flux.fromIterable(animes).buffer(chunkSize))
+                    .concatMap(this::insertChunk)
+                    // Invalida em vez de popular o cache, a transacao ainda pode sofrer rollback
+                    .doOnNext(saved -> animeCache.invalidate(saved.getId()))
+                    .doOnNext(inserted::add)
+                    .as(transactionalOperator::transactional)
+                    .as(animeConcurrencyLimiter::limit)
+                    // Fora da transacao, o indice e o contador so mudam depois do commit
+                    .doOnComplete(() -> animeNameIndex.putAll(inserted))
+                    .doOnTerminate(animeChangeCounter::increment)
+                    .concatWith(Mono.defer(() -> animeChangeFeed.publish(inserted.stream()
+                            .map(AnimeChange::inserted)
+                            .collect(Collectors.toList())))
+                            .then(replicaRouting.recordWrite())
+                            .then(Mono.<Anime>empty()));
+        });
+    }
+
+    /**
+     * Busca por trecho do nome, sem diferenciar maiúsculas, com os nomes que começam pelo texto primeiro
+     *
+     * @param query
+     * @param limit
+     * @return
+     */
+    public Flux<Anime> search(String query, Integer limit) {
+        return Flux.defer(() -> {
+            String escaped = escapeLike(normalizeQuery(query));
+
+            Mono<List<Anime>> animes = ReplicaRouting.readOnly(
+                    animeRepository.searchByName("%" + escaped + "%", escaped + "%", pageSize(limit)).collectList());
+
+            return animeConcurrencyLimiter.limit(animeQueryPolicy.read(Operation.SEARCH, animes, animes))
+                    .flatMapIterable(Function.identity());
+        });
+    }
+
+    /**
+     * Nomes que começam pelo prefixo em ordem alfabética, pelo índice em memória quando ele está pronto
+     *
+     * @param prefix
+     * @param limit
+     * @return
+     */
+    public Flux<Anime> autocomplete(String prefix, Integer limit) {
+        return Flux.defer(() -> {
+            String normalized = normalizeQuery(prefix);
+
+            if (animeNameIndex.isReady()) {
+                return Flux.fromIterable(animeNameIndex.complete(normalized, pageSize(limit)));
+            }
+
+            Mono<List<Anime>> animes = ReplicaRouting.readOnly(
+                    animeRepository.findByNamePrefix(escapeLike(normalized) + "%", pageSize(limit)).collectList());
+
+            return animeConcurrencyLimiter.limit(animeQueryPolicy.read(Operation.AUTOCOMPLETE, animes, animes))
+                    .flatMapIterable(Function.identity());
+        });
     }
 
     public Mono<Void> update(Anime anime, Integer id) {
-        return findById(id)
-                .map(animeFound -> anime.withId(animeFound.getId()))
-                .flatMap(animeRepository::save)
-                .thenEmpty(Mono.empty()); // ou somente then()
+        return animeQueryPolicy.write(Operation.UPDATE, animeConcurrencyLimiter.limit(animeRepository.updateNameById(id, anime.getName()))
+                .flatMap(this::requireRowsAffected)
+                .transform(write -> recordingChange(write, AnimeChange.updated(id, anime.getName())))
+                .transform(write -> invalidatingCache(id, write)));
+    }
+
+    /**
+     * Atualiza o anime só se ele ainda estiver na versão esperada, a conferência é feita no próprio UPDATE
+     *
+     * @param anime
+     * @param id
+     * @param expectedVersion versão vinda do If-Match
+     * @return
+     */
+    public Mono<Void> update(Anime anime, Integer id, long expectedVersion) {
+        return animeQueryPolicy.write(Operation.UPDATE, animeConcurrencyLimiter.limit(
+                        animeRepository.updateNameByIdAndVersion(id, anime.getName(), expectedVersion))
+                .flatMap(this::requireVersionMatched)
+                .transform(write -> recordingChange(write, AnimeChange.updated(id, anime.getName())))
+                .transform(write -> invalidatingCache(id, write)));
     }
 
     public Mono<Void> delete(Integer id) {
-        return findById(id)
-                .flatMap(animeRepository::delete);
+        return animeQueryPolicy.write(Operation.DELETE, animeConcurrencyLimiter.limit(animeRepository.removeById(id))
+                .flatMap(this::requireRowsAffected)
+                .transform(write -> recordingChange(write, AnimeChange.deleted(id)))
+                .transform(write -> invalidatingCache(id, write)));
+    }
+
+    public Mono<Void> delete(Integer id, long expectedVersion) {
+        return animeQueryPolicy.write(Operation.DELETE, animeConcurrencyLimiter.limit(animeRepository.removeByIdAndVersion(id, expectedVersion))
+                .flatMap(this::requireVersionMatched)
+                .transform(write -> recordingChange(write, AnimeChange.deleted(id)))
+                .transform(write -> invalidatingCache(id, write)));
+    }
+
+    /**
+     * O loader do cache roda fora do contexto da requisição, então quem acabou de escrever é decidido
+     * antes, aqui. Essa pessoa lê direto do primário, sem o cache, que pode ter voltado a guardar o valor
+     * de uma réplica atrasada, e sem o lote do AnimeBatchLoader, que lê das réplicas
+     */
+    private Mono<Anime> find(Integer id, boolean ownWrites) {
+        if (ownWrites) {
+            Mono<Anime> primary = Mono.defer(() -> animeRepository.findById(id));
+            return animeConcurrencyLimiter.limit(animeQueryPolicy.read(Operation.FIND_BY_ID, primary, primary));
+        }
+
+        return animeCache.get(id, this::load);
+    }
+
+    /**
+     * Só a ida ao banco ocupa uma vaga do limite, quem acha o anime no cache não passa por aqui. A segunda
+     * tentativa não entra no lote, que ainda é o mesmo da primeira
+     */
+    private Mono<Anime> load(Integer id) {
+        return animeConcurrencyLimiter.limit(animeQueryPolicy.read(Operation.FIND_BY_ID, animeBatchLoader.load(id),
+                Mono.defer(() -> ReplicaRouting.readOnly(animeRepository.findById(id)))));
+    }
+
+    private Mono<Void> recordingChange(Mono<Void> write, AnimeChange change) {
+        // Zero linhas alteradas vira erro antes daqui, entao so escritas confirmadas mudam o indice e o ETag da listagem
+        return write
+                .doOnSuccess(done -> {
+                    animeNameIndex.apply(change);
+                    animeChangeCounter.increment();
+                })
+                .then(Mono.defer(() -> animeChangeFeed.publish(List.of(change))))
+                .then(replicaRouting.recordWrite());
+    }
+
+    private Mono<Void> invalidatingCache(Integer id, Mono<Void> write) {
+        // doOnTerminate roda antes do sinal chegar no assinante, entao uma leitura encadeada ja nao ve o valor antigo
+        return write
+                .doOnTerminate(() -> animeCache.invalidate(id))
+                .doOnCancel(() -> animeCache.invalidate(id));
+    }
+
+    private Mono<Void> requireRowsAffected(Integer rows) {
+        // Nenhuma linha alterada significa que o id não existe, sem precisar de um SELECT antes
+        return rows > 0 ? Mono.empty() : monoNotFoundError();
+    }
+
+    private Mono<Void> requireVersionMatched(Integer rows) {
+        // Com If-Match, um anime que não existe também falha a pré-condição, então zero linhas é sempre 412
+        return rows > 0 ? Mono.empty() : Mono.error(new AnimeVersionMismatchException());
+    }
+
+    private Flux<Anime> insertChunk(List<Anime> chunk) {
+        return Flux.zip(Flux.fromIterable(chunk), animeQueryPolicy.write(Operation.SAVE_ALL, animeRepository.insertAll(chunk)),
+                (anime, id) -> anime.withId(id).withVersion(Anime.INITIAL_VERSION));
+    }
+
+    private int pageSize(Integer limit) {
+        AnimeProperties.Pagination pagination = animeProperties.getPagination();
+
+        if (limit == null) {
+            return pagination.getDefaultSize();
+        }
+
+        return Math.max(1, Math.min(limit, pagination.getMaxSize()));
+    }
+
+    private AnimePage toPage(List<Anime> animes, int pageSize) {
+        if (animes.size() <= pageSize) {
+            return new AnimePage(animes, pageSize, null);
+        }
+
+        List<Anime> content = animes.subList(0, pageSize);
+        return new AnimePage(content, pageSize, content.get(pageSize - 1).getId());
+    }
+
+    private String normalizeQuery(String query) {
+        if (!StringUtils.hasText(query)) {
+            throw new InvalidAnimeException("Invalid query");
+        }
+
+        return AnimeNameIndex.normalize(query.trim());
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
     }
 
     private <T> Mono<T> monoNotFoundError() {
-        return Mono.error(new ResponseStatusException(NOT_FOUND, "Anime not found"));
+        return Mono.error(new AnimeNotFoundException());
     }
 
     private void throwResponseStatusExceptionWhenEmptyname(Anime anime) {
         if (StringUtils.isEmpty(anime.getName())) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid name");
+            throw new InvalidAnimeException("Invalid name");
         }
     }
 
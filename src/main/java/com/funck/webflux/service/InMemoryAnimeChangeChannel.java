@@ -0,0 +1,37 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.domain.AnimeChange;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+
+/**
+ * Canal dentro do próprio processo, para uma instância só ou para bancos sem LISTEN/NOTIFY como o H2
+ * do perfil loadtest
+ */
+@Component
+@ConditionalOnProperty(prefix = "anime.changes", name = "channel", havingValue = "memory")
+public class InMemoryAnimeChangeChannel implements AnimeChangeChannel {
+
+    private final Sinks.Many<Notification> sink = Sinks.many().multicast().directBestEffort();
+
+    @Override
+    public Mono<Void> publish(List<AnimeChange> changes) {
+        return Mono.fromRunnable(() -> emit(new Notification(true, changes)));
+    }
+
+    @Override
+    public Flux<Notification> notifications() {
+        return sink.asFlux();
+    }
+
+    private synchronized void emit(Notification notification) {
+        // Serializado aqui porque gravações concorrentes publicam de threads diferentes
+        sink.tryEmitNext(notification);
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.funck.webflux.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.funck.webflux.domain.AnimeChange;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Canal pelo LISTEN/NOTIFY do Postgres. Todas as instâncias escutam numa única conexão dedicada, aberta
+ * fora do pool, e a publicação é um pg_notify numa conexão do pool. Cada notificação leva várias
+ * alterações até o limite de 8000 bytes do payload, medido no JSON serializado.
+ * <p>
+ * Se a conexão de escuta cai ela é reaberta com backoff, e como o Postgres não guarda notificações
+ * para quem não estava escutando, a reconexão chega ao feed como uma lacuna
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "anime.changes", name = "channel", havingValue = "postgres", matchIfMissing = true)
+public class PostgresAnimeChangeChannel implements AnimeChangeChannel {
+
+    static final String CHANNEL = "anime_changes";
+
+    // O Postgres recusa payloads a partir de 8000 bytes
+    static final int MAX_PAYLOAD_BYTES = 7_999;
+
+    private final String node = UUID.randomUUID().toString();
+    private final DatabaseClient databaseClient;
+    private final ObjectMapper objectMapper;
+    private final Flux<Notification> notifications;
+
+    public PostgresAnimeChangeChannel(DatabaseClient databaseClient, ObjectMapper objectMapper,
+                                      R2dbcProperties r2dbcProperties) {
+        this.databaseClient = databaseClient;
+        this.objectMapper = objectMapper;
+        this.notifications = listen(listenerConnectionFactory(r2dbcProperties)).share();
+    }
+
+    @Override
+    public Mono<Void> publish(List<AnimeChange> changes) {
+        return Flux.fromIterable(payloads(changes))
+                .concatMap(payload -> databaseClient.sql("SELECT pg_notify(:channel, :payload)")
+                        .bind("channel", CHANNEL)
+                        .bind("payload", payload)
+                        .fetch()
+                        .rowsUpdated())
+                .then();
+    }
+
+    @Override
+    public Flux<Notification> notifications() {
+        return notifications;
+    }
+
+    private Flux<Notification> listen(ConnectionFactory connectionFactory) {
+        AtomicBoolean firstAttempt = new AtomicBoolean(true);
+
+        return Flux.defer(() -> {
+            boolean reconnect = !firstAttempt.getAndSet(false);
+
+            return Flux.usingWhen(
+                    Mono.from(connectionFactory.create()).cast(PostgresqlConnection.class),
+                    connection -> connection.createStatement("LISTEN " + CHANNEL)
+                            .execute()
+                            .flatMap(PostgresqlResult::getRowsUpdated)
+                            .thenMany(Flux.concat(
+                                    // O que foi publicado enquanto não havia conexão escutando se perdeu
+                                    reconnect ? Mono.just(Notification.gap()) : Mono.<Notification>empty(),
+                                    connection.getNotifications()
+                                            .flatMapIterable(notification -> read(notification.getParameter())))),
+                    Connection::close);
+        })
+                .concatWith(Mono.error(() -> new IllegalStateException("Listener connection closed")))
+                .doOnError(error -> log.warn("Anime change listener failed, reconnecting: {}", error.toString()))
+                // A reconexão resolve o host e abre o socket, o que não pode acontecer numa thread do parallel
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .scheduler(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * Divide as alterações em payloads que cabem no limite do Postgres, medindo o JSON que vai de fato
+     * em cada um
+     */
+    List<String> payloads(List<AnimeChange> changes) {
+        List<String> payloads = new ArrayList<>();
+        List<Change> batch = new ArrayList<>();
+        // O envelope com o id da instância e a lista vazia
+        int envelopeBytes = bytes(new Payload(node, List.of()));
+        int batchBytes = envelopeBytes;
+
+        for (AnimeChange change : changes) {
+            Change entry = new Change(change.getType(), change.getId(), change.getName());
+            // O nome tem no máximo 255 caracteres, então uma alteração sozinha sempre cabe no payload
+            int bytes = bytes(entry);
+
+            if (!batch.isEmpty() && batchBytes + 1 + bytes > MAX_PAYLOAD_BYTES) {
+                payloads.add(write(batch));
+                batch = new ArrayList<>();
+                batchBytes = envelopeBytes;
+            }
+
+            // A vírgula entre as alterações da lista
+            batchBytes += batch.isEmpty() ? bytes : bytes + 1;
+            batch.add(entry);
+        }
+
+        if (!batch.isEmpty()) {
+            payloads.add(write(batch));
+        }
+
+        return payloads;
+    }
+
+    private String write(List<Change> changes) {
+        try {
+            return objectMapper.writeValueAsString(new Payload(node, changes));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write anime change notification", e);
+        }
+    }
+
+    private int bytes(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value).length;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write anime change notification", e);
+        }
+    }
+
+    private List<Notification> read(String payload) {
+        try {
+            Payload message = objectMapper.readValue(payload, Payload.class);
+            List<AnimeChange> changes = new ArrayList<>(message.getChanges().size());
+
+            for (Change change : message.getChanges()) {
+                changes.add(new AnimeChange(change.getType(), change.getId(), change.getName()));
+            }
+
+            return List.of(new Notification(node.equals(message.getNode()), changes));
+        } catch (JsonProcessingException | RuntimeException e) {
+            // Uma notificação ilegível não pode derrubar a escuta, mas o que ela trazia se perdeu
+            log.warn("Ignoring unreadable anime change notification: {}", e.toString());
+            return List.of(Notification.gap());
+        }
+    }
+
+    private static ConnectionFactory listenerConnectionFactory(R2dbcProperties properties) {
+        Assert.hasText(properties.getUrl(), "spring.r2dbc.url is required by the postgres anime change channel");
+
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(properties.getUrl());
+        ConnectionFactoryOptions.Builder builder = options.mutate();
+
+        // Uma URL r2dbc:pool:postgresql criaria outro pool, a escuta usa uma conexão direta
+        if ("pool".equals(options.getValue(ConnectionFactoryOptions.DRIVER))) {
+            builder.option(ConnectionFactoryOptions.DRIVER, options.getRequiredValue(ConnectionFactoryOptions.PROTOCOL));
+        }
+
+        if (properties.getUsername() != null) {
+            builder.option(ConnectionFactoryOptions.USER, properties.getUsername());
+        }
+
+        if (properties.getPassword() != null) {
+            builder.option(ConnectionFactoryOptions.PASSWORD, properties.getPassword());
+        }
+
+        return ConnectionFactories.get(builder.build());
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Payload {
+
+        private String node;
+
+        private List<Change> changes;
+
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Change {
+
+        private AnimeChange.Type type;
+
+        private Integer id;
+
+        private String name;
+
+    }
+
+}
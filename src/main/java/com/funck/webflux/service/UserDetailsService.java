@@ -1,21 +1,73 @@
 package com.funck.webflux.service;
 
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.repository.ReplicaRouting;
 import com.funck.webflux.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-@RequiredArgsConstructor
 @Service
-public class UserDetailsService implements ReactiveUserDetailsService {
+public class UserDetailsService implements ReactiveUserDetailsService, MeterBinder {
 
     private final UserRepository userRepository;
+    private final boolean cacheEnabled;
+    private final AsyncCache<String, UserDetails> cache;
 
+    public UserDetailsService(UserRepository userRepository, AnimeProperties animeProperties) {
+        AnimeProperties.Security.UserCache properties = animeProperties.getSecurity().getUserCache();
+
+        this.userRepository = userRepository;
+        this.cacheEnabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Busca o usuário no cache, indo ao banco só quando ele não está no cache. Usuários inexistentes não
+     * ficam no cache
+     *
+     * @param username
+     * @return
+     */
     @Override
     public Mono<UserDetails> findByUsername(String username) {
-        return userRepository.findByUsername(username)
+        if (!cacheEnabled) {
+            return query(username);
+        }
+
+        return Mono.fromFuture(() -> cache.get(username, (key, executor) -> query(key).toFuture()));
+    }
+
+    /**
+     * Remove o usuário do cache, deve ser chamado quando a senha ou as permissões dele mudarem
+     *
+     * @param username
+     */
+    public void evict(String username) {
+        cache.synchronous().invalidate(username);
+    }
+
+    public void evictAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "user-details");
+    }
+
+    private Mono<UserDetails> query(String username) {
+        return ReplicaRouting.readOnly(userRepository.findByUsername(username))
                 .cast(UserDetails.class);
     }
 
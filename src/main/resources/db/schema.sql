@@ -0,0 +1,28 @@
+-- Schema do Postgres, aplicado à parte no banco da spring.r2dbc.url (psql -d postgres -f db/schema.sql), a
+-- aplicação não roda DDL na subida. Tudo é IF NOT EXISTS, então rodar de novo sobre um banco existente só
+-- cria o que falta. O esquema do H2 do teste de carga fica em loadtest/schema.sql
+CREATE SCHEMA IF NOT EXISTS anime;
+
+SET search_path TO anime;
+
+CREATE TABLE IF NOT EXISTS anime (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0
+);
+
+-- Bancos criados antes do If-Match não têm a coluna da versão
+ALTER TABLE anime ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS tb_user (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    username VARCHAR(100) NOT NULL UNIQUE,
+    password VARCHAR(150) NOT NULL,
+    authorities VARCHAR(150) NOT NULL
+);
+
+-- Atende o LIKE em LOWER(name) da busca e do autocomplete, com o curinga no começo ou só no fim
+CREATE EXTENSION IF NOT EXISTS pg_trgm SCHEMA anime;
+
+CREATE INDEX IF NOT EXISTS anime_lower_name_trgm ON anime USING gin (LOWER(name) gin_trgm_ops);
@@ -0,0 +1,146 @@
+package com.funck.webflux.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.funck.webflux.config.CodecConfig;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.util.AnimeCreator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.DecoderHttpMessageReader;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.HttpMessageReader;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class AnimeJsonCodecTest {
+
+    private static final ResolvableType ANIME_TYPE = ResolvableType.forClass(Anime.class);
+    private static final ResolvableType ANIME_LIST_TYPE = ResolvableType.forClassWithGenerics(List.class, Anime.class);
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().modules(new BlackbirdModule()).build();
+    private final Jackson2JsonEncoder defaultEncoder = new Jackson2JsonEncoder(Jackson2ObjectMapperBuilder.json().build());
+    private final AnimeJsonEncoder encoder = new AnimeJsonEncoder(objectMapper);
+    private final AnimeJsonDecoder decoder = new AnimeJsonDecoder(objectMapper);
+
+    private final List<Anime> animes = List.of(AnimeCreator.createValidAnime(),
+            AnimeCreator.createValidAnime().withId(2).withName("Fullmetal \"Alchemist\" ãé"));
+
+    @Test
+    @DisplayName("encodes the same json as the default encoder for an anime and a list")
+    void encodeValue_MatchDefaultEncoder_whenAnimeOrList() {
+        Assertions.assertEquals(
+                string(defaultEncoder.encodeValue(animes.get(1), bufferFactory, ANIME_TYPE, MediaType.APPLICATION_JSON, null)),
+                string(encoder.encodeValue(animes.get(1), bufferFactory, ANIME_TYPE, MediaType.APPLICATION_JSON, null)));
+
+        Assertions.assertEquals(
+                string(defaultEncoder.encodeValue(animes, bufferFactory, ANIME_LIST_TYPE, MediaType.APPLICATION_JSON, null)),
+                string(encoder.encodeValue(animes, bufferFactory, ANIME_LIST_TYPE, MediaType.APPLICATION_JSON, null)));
+    }
+
+    @Test
+    @DisplayName("encodes a flux as a json array and as ndjson like the default encoder")
+    void encode_MatchDefaultEncoder_whenFlux() {
+        for (MediaType mediaType : List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON)) {
+            Assertions.assertEquals(encode(defaultEncoder, mediaType), encode(encoder, mediaType));
+        }
+    }
+
+    @Test
+    @DisplayName("the json chosen without Accept is written by this encoder, registered over the default one")
+    void codecConfig_UseAnimeJsonEncoder_whenJsonIsNegotiated() {
+        HttpMessageWriter<?> writer = configurer().getWriters().stream()
+                .filter(candidate -> candidate.canWrite(ANIME_TYPE, MediaType.APPLICATION_JSON))
+                .findFirst()
+                .orElseThrow();
+
+        Assertions.assertTrue(((EncoderHttpMessageWriter<?>) writer).getEncoder() instanceof AnimeJsonEncoder);
+    }
+
+    @Test
+    @DisplayName("a json body is read by this decoder and each binary body by its own decoder")
+    void codecConfig_UseDecoderOfContentType_whenBodyIsRead() {
+        ServerCodecConfigurer configurer = configurer();
+
+        Assertions.assertTrue(reader(configurer, MediaType.APPLICATION_JSON) instanceof AnimeJsonDecoder);
+        Assertions.assertTrue(reader(configurer, MediaType.APPLICATION_CBOR) instanceof Jackson2CborDecoder);
+        Assertions.assertTrue(reader(configurer, MediaType.parseMediaType("application/x-jackson-smile")) instanceof Jackson2SmileDecoder);
+    }
+
+    @Test
+    @DisplayName("other types go through the default encoder")
+    void encodeValue_UseDefaultEncoder_whenNotAnime() {
+        DataBuffer buffer = encoder.encodeValue(List.of("Naruto"), bufferFactory,
+                ResolvableType.forClassWithGenerics(List.class, String.class), MediaType.APPLICATION_JSON, null);
+
+        Assertions.assertEquals("[\"Naruto\"]", string(buffer));
+    }
+
+    @Test
+    @DisplayName("decodes an anime and a list with the prebuilt readers")
+    void decode_ReturnAnimes_whenAnimeOrList() {
+        DataBuffer list = encoder.encodeValue(animes, bufferFactory, ANIME_LIST_TYPE, MediaType.APPLICATION_JSON, null);
+        DataBuffer single = encoder.encodeValue(animes.get(1), bufferFactory, ANIME_TYPE, MediaType.APPLICATION_JSON, null);
+
+        Assertions.assertEquals(animes, decoder.decode(list, ANIME_LIST_TYPE, MediaType.APPLICATION_JSON, null));
+        Assertions.assertEquals(animes.get(1), decoder.decode(single, ANIME_TYPE, MediaType.APPLICATION_JSON, null));
+    }
+
+    @Test
+    @DisplayName("malformed json is a decoding error")
+    void decode_ThrowDecodingException_whenMalformed() {
+        DataBuffer buffer = bufferFactory.wrap("{\"name\":".getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertThrows(DecodingException.class,
+                () -> decoder.decode(buffer, ANIME_TYPE, MediaType.APPLICATION_JSON, null));
+    }
+
+    private ServerCodecConfigurer configurer() {
+        CodecConfig codecConfig = new CodecConfig();
+        ServerCodecConfigurer configurer = ServerCodecConfigurer.create();
+        codecConfig.jsonCodecCustomizer(objectMapper).customize(configurer);
+        codecConfig.binaryCodecCustomizer(Jackson2ObjectMapperBuilder.json()).customize(configurer);
+        return configurer;
+    }
+
+    private static Decoder<?> reader(ServerCodecConfigurer configurer, MediaType mediaType) {
+        HttpMessageReader<?> reader = configurer.getReaders().stream()
+                .filter(candidate -> candidate.canRead(ANIME_LIST_TYPE, mediaType))
+                .findFirst()
+                .orElseThrow();
+
+        return ((DecoderHttpMessageReader<?>) reader).getDecoder();
+    }
+
+    private String encode(Jackson2JsonEncoder encoder, MediaType mediaType) {
+        return encoder.encode(Flux.fromIterable(animes), bufferFactory, ANIME_TYPE, mediaType, null)
+                .map(this::string)
+                .collect(Collectors.joining())
+                .block();
+    }
+
+    private String string(DataBuffer buffer) {
+        String value = buffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(buffer);
+        return value;
+    }
+
+}
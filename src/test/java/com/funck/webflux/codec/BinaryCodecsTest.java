@@ -0,0 +1,196 @@
+package com.funck.webflux.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.util.AnimeCreator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class BinaryCodecsTest {
+
+    private static final ResolvableType ANIME_TYPE = ResolvableType.forClass(Anime.class);
+    private static final ResolvableType ANIME_LIST_TYPE = ResolvableType.forClassWithGenerics(List.class, Anime.class);
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    private final AnimeProtobufEncoder protobufEncoder = new AnimeProtobufEncoder();
+    private final AnimeProtobufDecoder protobufDecoder = new AnimeProtobufDecoder();
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private final StreamingCborEncoder cborEncoder = new StreamingCborEncoder(cborMapper);
+
+    @Test
+    @DisplayName("protobuf round trips a single anime and a list")
+    void protobuf_RoundTrip_whenAnimeOrList() {
+        Anime anime = AnimeCreator.createValidAnime();
+        List<Anime> animes = List.of(anime, anime.withId(2).withName("Bleach").withVersion(7L));
+
+        DataBuffer single = protobufEncoder.encodeValue(anime, bufferFactory, ANIME_TYPE, AnimeProtobuf.APPLICATION_PROTOBUF, null);
+        DataBuffer list = protobufEncoder.encodeValue(animes, bufferFactory, ANIME_LIST_TYPE, AnimeProtobuf.APPLICATION_PROTOBUF, null);
+
+        Assertions.assertEquals(anime, protobufDecoder.decode(single, ANIME_TYPE, AnimeProtobuf.APPLICATION_PROTOBUF, null));
+        Assertions.assertEquals(animes, protobufDecoder.decode(list, ANIME_LIST_TYPE, AnimeProtobuf.APPLICATION_PROTOBUF, null));
+    }
+
+    @Test
+    @DisplayName("protobuf writes a flux of animes as one list and reads it back as a flux")
+    void protobuf_CollectFlux_whenStreaming() {
+        List<Anime> animes = List.of(AnimeCreator.createValidAnime(), AnimeCreator.createValidAnime().withId(2));
+
+        Flux<DataBuffer> encoded = protobufEncoder.encode(Flux.fromIterable(animes), bufferFactory, ANIME_TYPE,
+                AnimeProtobuf.APPLICATION_PROTOBUF, null);
+
+        StepVerifier.create(protobufDecoder.decode(encoded, ANIME_TYPE, AnimeProtobuf.APPLICATION_PROTOBUF, null))
+                .expectNextSequence(animes)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("protobuf writes each anime of a flux as its own length-delimited message when streaming")
+    void protobuf_WriteDelimited_whenStreamType() {
+        List<Anime> animes = List.of(AnimeCreator.createValidAnime(), AnimeCreator.createValidAnime().withId(2));
+
+        List<DataBuffer> encoded = protobufEncoder.encode(Flux.fromIterable(animes), bufferFactory, ANIME_TYPE,
+                AnimeProtobufEncoder.APPLICATION_STREAM_PROTOBUF, null).collectList().block();
+
+        Assertions.assertEquals(2, encoded.size());
+
+        for (int i = 0; i < animes.size(); i++) {
+            ProtobufReader reader = new ProtobufReader(bytes(encoded.get(i)));
+            Assertions.assertEquals(animes.get(i), AnimeProtobuf.readAnime(reader.message()));
+            Assertions.assertFalse(reader.hasRemaining());
+        }
+    }
+
+    @Test
+    @DisplayName("protobuf skips unknown fields so newer producers stay compatible")
+    void protobuf_SkipUnknownFields_whenDecoding() {
+        ProtobufWriter writer = new ProtobufWriter(64)
+                .string(9, "ignored")
+                .int64(1, 5L)
+                .int64(10, 42L)
+                .string(2, "Naruto");
+
+        Object anime = protobufDecoder.decode(bufferFactory.wrap(copy(writer)), ANIME_TYPE,
+                AnimeProtobuf.APPLICATION_PROTOBUF, null);
+
+        Assertions.assertEquals(Anime.builder().id(5).name("Naruto").build(), anime);
+    }
+
+    @Test
+    @DisplayName("protobuf skips known fields that arrive with another wire type")
+    void protobuf_SkipField_whenWireTypeDoesNotMatch() {
+        ProtobufWriter writer = new ProtobufWriter(64)
+                .string(1, "5")
+                .int64(2, 7L)
+                .string(3, "1")
+                .int64(1, 5L)
+                .string(2, "Naruto");
+
+        Object anime = protobufDecoder.decode(bufferFactory.wrap(copy(writer)), ANIME_TYPE,
+                AnimeProtobuf.APPLICATION_PROTOBUF, null);
+
+        Assertions.assertEquals(Anime.builder().id(5).name("Naruto").build(), anime);
+
+        ProtobufWriter list = new ProtobufWriter(64)
+                .int64(1, 3L)
+                .message(1, new ProtobufWriter(64).string(2, "Bleach"));
+
+        Assertions.assertEquals(List.of(Anime.builder().name("Bleach").build()), protobufDecoder.decode(
+                bufferFactory.wrap(copy(list)), ANIME_LIST_TYPE, AnimeProtobuf.APPLICATION_PROTOBUF, null));
+    }
+
+    @Test
+    @DisplayName("protobuf rejects a truncated message")
+    void protobuf_ThrowDecodingException_whenTruncated() {
+        byte[] bytes = copy(new ProtobufWriter(64).string(2, "Naruto"));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 2);
+
+        Assertions.assertThrows(DecodingException.class, () -> protobufDecoder.decode(bufferFactory.wrap(truncated),
+                ANIME_TYPE, AnimeProtobuf.APPLICATION_PROTOBUF, null));
+    }
+
+    @Test
+    @DisplayName("protobuf writes error attributes as string entries")
+    void protobuf_WriteEntries_whenErrorAttributes() {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("status", 404);
+        attributes.put("message", "Anime not found");
+        attributes.put("trace", null);
+
+        Assertions.assertTrue(protobufEncoder.canEncode(ResolvableType.forClass(Map.class), AnimeProtobuf.APPLICATION_PROTOBUF));
+        DataBuffer buffer = protobufEncoder.encodeValue(attributes, bufferFactory, ResolvableType.forClass(Map.class),
+                AnimeProtobuf.APPLICATION_PROTOBUF, null);
+
+        ProtobufReader reader = new ProtobufReader(bytes(buffer));
+        Map<String, String> entries = new LinkedHashMap<>();
+
+        while (reader.hasRemaining()) {
+            Assertions.assertEquals(1, reader.tag() >>> 3);
+            ProtobufReader entry = reader.message();
+            entry.tag();
+            String key = entry.string();
+            entry.tag();
+            entries.put(key, entry.string());
+        }
+
+        Assertions.assertEquals(Map.of("status", "404", "message", "Anime not found"), entries);
+    }
+
+    @Test
+    @DisplayName("cbor writes a flux as a single array and cbor-seq as one item per element")
+    void cbor_EncodeFlux_whenArrayOrSequence() throws Exception {
+        List<Anime> animes = List.of(AnimeCreator.createValidAnime(), AnimeCreator.createValidAnime().withId(2));
+
+        List<DataBuffer> array = cborEncoder.encode(Flux.fromIterable(animes), bufferFactory, ANIME_TYPE,
+                MediaType.APPLICATION_CBOR, null).collectList().block();
+        List<DataBuffer> sequence = cborEncoder.encode(Flux.fromIterable(animes), bufferFactory, ANIME_TYPE,
+                StreamingCborEncoder.APPLICATION_CBOR_SEQ, null).collectList().block();
+
+        Assertions.assertEquals(1, array.size());
+        Assertions.assertEquals(List.of(animes.get(0), animes.get(1)),
+                List.of(cborMapper.readValue(bytes(array.get(0)), Anime[].class)));
+
+        Assertions.assertEquals(2, sequence.size());
+        Assertions.assertEquals(animes.get(1), cborMapper.readValue(bytes(sequence.get(1)), Anime.class));
+        DataBufferUtils.release(sequence.get(0));
+    }
+
+    @Test
+    @DisplayName("cbor still writes a mono as a single value")
+    void cbor_EncodeValue_whenMono() throws Exception {
+        Anime anime = AnimeCreator.createValidAnime();
+
+        DataBuffer buffer = cborEncoder.encode(Mono.just(anime), bufferFactory, ANIME_TYPE, MediaType.APPLICATION_CBOR, null)
+                .single()
+                .block();
+
+        Assertions.assertEquals(anime, cborMapper.readValue(bytes(buffer), Anime.class));
+    }
+
+    private static byte[] copy(ProtobufWriter writer) {
+        return Arrays.copyOf(writer.buffer(), writer.size());
+    }
+
+    private static byte[] bytes(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.funck.webflux.config;
+
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.repository.UserRepository;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyString;
+
+class DatabaseWarmupTest {
+
+    private final ConnectionPool connectionPool = Mockito.mock(ConnectionPool.class);
+
+    private final PoolMetrics poolMetrics = Mockito.mock(PoolMetrics.class);
+
+    private final AnimeRepository animeRepository = Mockito.mock(AnimeRepository.class);
+
+    private final UserRepository userRepository = Mockito.mock(UserRepository.class);
+
+    private final AnimeProperties animeProperties = new AnimeProperties();
+
+    private final DatabaseWarmup databaseWarmup =
+            new DatabaseWarmup(connectionPool, animeRepository, userRepository, animeProperties);
+
+    @BeforeEach
+    void setUp() {
+        BDDMockito.when(connectionPool.warmup()).thenReturn(Mono.just(3));
+        BDDMockito.when(connectionPool.getMetrics()).thenReturn(Optional.of(poolMetrics));
+        BDDMockito.when(poolMetrics.idleSize()).thenReturn(3);
+
+        BDDMockito.when(animeRepository.findPageAfter(anyInt(), anyInt())).thenReturn(Flux.empty());
+        BDDMockito.when(animeRepository.findAllById(anyIterable())).thenReturn(Flux.empty());
+        BDDMockito.when(userRepository.findByUsername(anyString())).thenReturn(Mono.empty());
+    }
+
+    @Test
+    @DisplayName("warmup opens the initial connections and runs the hot queries on each of them")
+    void warmup_RunHotQueriesPerConnection_whenPoolIsWarmedUp() {
+        StepVerifier.create(databaseWarmup.warmup())
+                .expectNext(3)
+                .verifyComplete();
+
+        Mockito.verify(animeRepository, Mockito.times(3)).findPageAfter(0, 21);
+        Mockito.verify(userRepository, Mockito.times(3)).findByUsername("");
+    }
+
+    @Test
+    @DisplayName("run does not fail the startup when the warm-up fails")
+    void run_KeepStarting_whenWarmupFails() {
+        BDDMockito.when(connectionPool.warmup()).thenReturn(Mono.error(new IllegalStateException("down")));
+
+        Assertions.assertDoesNotThrow(() -> databaseWarmup.run(null));
+        Mockito.verifyNoInteractions(animeRepository);
+    }
+
+    @Test
+    @DisplayName("run does nothing when the warm-up is disabled")
+    void run_Skip_whenDisabled() {
+        animeProperties.getWarmup().setEnabled(false);
+
+        databaseWarmup.run(null);
+
+        Mockito.verifyNoInteractions(connectionPool, animeRepository, userRepository);
+    }
+
+}
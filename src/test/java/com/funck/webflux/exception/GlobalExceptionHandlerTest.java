@@ -0,0 +1,135 @@
+package com.funck.webflux.exception;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.funck.webflux.codec.StreamingCborEncoder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.WebProperties;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+class GlobalExceptionHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private GlobalExceptionHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        GenericApplicationContext applicationContext = new GenericApplicationContext();
+        applicationContext.refresh();
+
+        ServerCodecConfigurer codecConfigurer = ServerCodecConfigurer.create();
+        codecConfigurer.customCodecs().register(new StreamingCborEncoder(new ObjectMapper(new CBORFactory())));
+
+        handler = new GlobalExceptionHandler(new CustomAttributes(), new WebProperties.Resources(),
+                applicationContext, codecConfigurer);
+        handler.afterPropertiesSet();
+    }
+
+    @Test
+    @DisplayName("known errors are rendered with the same fields as the full error attributes")
+    void handle_RenderSameFields_whenErrorIsKnown() throws Exception {
+        MockServerWebExchange preRendered = render("/animes/1", new AnimeNotFoundException());
+        MockServerWebExchange full = render("/animes/1", new ResponseStatusException(HttpStatus.NOT_FOUND, "Anime not found"));
+
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, preRendered.getResponse().getStatusCode());
+        Assertions.assertEquals(MediaType.APPLICATION_JSON, preRendered.getResponse().getHeaders().getContentType());
+
+        Map<String, Object> preRenderedBody = body(preRendered);
+        Map<String, Object> fullBody = body(full);
+
+        Assertions.assertNotNull(preRenderedBody.remove("timestamp"));
+        Assertions.assertNotNull(fullBody.remove("timestamp"));
+        Assertions.assertEquals(preRendered.getRequest().getId(), preRenderedBody.remove("requestId"));
+        Assertions.assertNotNull(fullBody.remove("requestId"));
+        Assertions.assertEquals(fullBody, preRenderedBody);
+    }
+
+    @Test
+    @DisplayName("known errors are escaped in the pre-rendered json")
+    void handle_EscapeValues_whenPreRendered() throws Exception {
+        InvalidAnimeException exception = new InvalidAnimeException("Invalid \"name\"");
+        Map<String, Object> body = body(render("/animes", exception));
+
+        Assertions.assertEquals(400, body.get("status"));
+        Assertions.assertEquals(exception.getMessage(), body.get("message"));
+    }
+
+    @Test
+    @DisplayName("trace=true renders the full error attributes with the stack trace")
+    void handle_RenderFullAttributes_whenTraceIsRequested() throws Exception {
+        Map<String, Object> body = body(render("/animes/1?trace=true", new AnimeNotFoundException()));
+
+        Assertions.assertEquals(404, body.get("status"));
+        Assertions.assertTrue(body.containsKey("trace"));
+    }
+
+    @Test
+    @DisplayName("errors are written in the binary format the client accepts")
+    void handle_RenderCbor_whenClientAcceptsCbor() throws Exception {
+        AnimeNotFoundException exception = new AnimeNotFoundException();
+        MockServerWebExchange exchange = render(MockServerHttpRequest.get("/animes/1")
+                .accept(MediaType.APPLICATION_CBOR), exception);
+
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, exchange.getResponse().getStatusCode());
+        Assertions.assertEquals(MediaType.APPLICATION_CBOR, exchange.getResponse().getHeaders().getContentType());
+
+        byte[] bytes = DataBufferUtils.join(exchange.getResponse().getBody())
+                .map(buffer -> {
+                    byte[] content = new byte[buffer.readableByteCount()];
+                    buffer.read(content);
+                    DataBufferUtils.release(buffer);
+                    return content;
+                })
+                .block();
+        Map<String, Object> body = new ObjectMapper(new CBORFactory()).readValue(bytes,
+                new TypeReference<Map<String, Object>>() {
+                });
+
+        Assertions.assertEquals(404, body.get("status"));
+        Assertions.assertEquals(exception.getMessage(), body.get("message"));
+    }
+
+    @Test
+    @DisplayName("errors fall back to json when no codec writes the accepted types")
+    void handle_RenderJson_whenAcceptIsUnknownOrWildcard() throws Exception {
+        MockServerWebExchange unknown = render(MockServerHttpRequest.get("/animes/1")
+                .accept(MediaType.IMAGE_PNG), new AnimeNotFoundException());
+        MockServerWebExchange wildcard = render(MockServerHttpRequest.get("/animes/1")
+                .accept(MediaType.IMAGE_PNG, MediaType.ALL), new AnimeNotFoundException());
+
+        Assertions.assertEquals(MediaType.APPLICATION_JSON, unknown.getResponse().getHeaders().getContentType());
+        Assertions.assertEquals(404, body(unknown).get("status"));
+        Assertions.assertEquals(MediaType.APPLICATION_JSON, wildcard.getResponse().getHeaders().getContentType());
+    }
+
+    private MockServerWebExchange render(String uri, Throwable error) {
+        return render(MockServerHttpRequest.get(uri), error);
+    }
+
+    private MockServerWebExchange render(MockServerHttpRequest.BaseBuilder<?> request, Throwable error) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        handler.handle(exchange, error).block();
+        return exchange;
+    }
+
+    private Map<String, Object> body(MockServerWebExchange exchange) throws Exception {
+        return objectMapper.readValue(exchange.getResponse().getBodyAsString().block(),
+                new TypeReference<Map<String, Object>>() {
+                });
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.funck.webflux.metrics;
+
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.util.AnimeCreator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class RepositoryMetricsPostProcessorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AnimeRepository animeRepository = Mockito.mock(AnimeRepository.class);
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider = Mockito.mock(ObjectProvider.class);
+
+    private AnimeRepository timedRepository;
+
+    private final Anime anime = AnimeCreator.createValidAnime();
+
+    @BeforeEach
+    void setUp() {
+        BDDMockito.when(meterRegistryProvider.getObject()).thenReturn(meterRegistry);
+
+        timedRepository = (AnimeRepository) new RepositoryMetricsPostProcessor(meterRegistryProvider)
+                .postProcessAfterInitialization(animeRepository, "animeRepository");
+    }
+
+    @Test
+    @DisplayName("repository methods are timed only when subscribed")
+    void findById_RecordTimer_whenSubscribed() {
+        BDDMockito.when(animeRepository.findById(1)).thenReturn(Mono.just(anime));
+
+        Mono<Anime> findById = timedRepository.findById(1);
+        Assertions.assertEquals(0, timer("findById", "success").count());
+
+        StepVerifier.create(findById)
+                .expectNext(anime)
+                .verifyComplete();
+
+        Assertions.assertEquals(1, timer("findById", "success").count());
+    }
+
+    @Test
+    @DisplayName("repository errors are timed with the error outcome")
+    void streamAll_RecordErrorTimer_whenRepositoryFails() {
+        BDDMockito.when(animeRepository.streamAll(256)).thenReturn(Flux.error(new IllegalStateException()));
+
+        StepVerifier.create(timedRepository.streamAll(256))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        Assertions.assertEquals(1, timer("streamAll", "error").count());
+        Assertions.assertEquals(0, timer("streamAll", "success").count());
+    }
+
+    @Test
+    @DisplayName("non repository beans are not proxied")
+    void postProcess_KeepBean_whenBeanIsNotRepository() {
+        Object bean = new Object();
+
+        Assertions.assertSame(bean, new RepositoryMetricsPostProcessor(meterRegistryProvider)
+                .postProcessAfterInitialization(bean, "bean"));
+    }
+
+    private Timer timer(String method, String outcome) {
+        return meterRegistry.get(RepositoryMetricsInterceptor.METRIC_NAME)
+                .tags("repository", "animeRepository", "method", method, "outcome", outcome)
+                .timer();
+    }
+
+}
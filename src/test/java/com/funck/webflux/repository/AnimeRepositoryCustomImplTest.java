@@ -0,0 +1,46 @@
+package com.funck.webflux.repository;
+
+import com.funck.webflux.domain.Anime;
+import io.r2dbc.h2.H2ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.convert.MappingR2dbcConverter;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.test.StepVerifier;
+
+import java.util.UUID;
+
+class AnimeRepositoryCustomImplTest {
+
+    private DatabaseClient databaseClient;
+
+    private AnimeRepositoryCustomImpl animeRepositoryCustom;
+
+    @BeforeEach
+    void setUp() {
+        databaseClient = DatabaseClient.create(H2ConnectionFactory.inMemory("anime-" + UUID.randomUUID()));
+        animeRepositoryCustom = new AnimeRepositoryCustomImpl(databaseClient,
+                new MappingR2dbcConverter(new R2dbcMappingContext()));
+
+        databaseClient.sql("CREATE TABLE anime (id INT PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+                        + "version BIGINT NOT NULL DEFAULT 0)").then()
+                .block();
+    }
+
+    @Test
+    @DisplayName("streamAll returns every anime ordered by id, including ids that are not positive")
+    void streamAll_ReturnEveryAnimeOrderedById_whenIdsAreNotPositive() {
+        databaseClient.sql("INSERT INTO anime (id, name) VALUES (2, 'Naruto'), (-1, 'Bleach'), (0, 'Trigun')")
+                .then()
+                .block();
+
+        StepVerifier.create(animeRepositoryCustom.streamAll(1))
+                .expectNext(new Anime(-1, "Bleach", 0L))
+                .expectNext(new Anime(0, "Trigun", 0L))
+                .expectNext(new Anime(2, "Naruto", 0L))
+                .verifyComplete();
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.funck.webflux.repository;
+
+import com.funck.webflux.config.AnimeProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Um banco H2 em memória para o primário e um para cada réplica, cada um respondendo com o próprio nome
+ */
+class ReplicaRoutingConnectionFactoryTest {
+
+    private final AnimeProperties.Replicas properties = new AnimeProperties.Replicas();
+
+    private final AtomicLong ticker = new AtomicLong();
+
+    private ReplicaRouting replicaRouting;
+
+    @BeforeEach
+    void setUp() {
+        properties.setUrls(List.of("r2dbc:h2:mem:///replica-0", "r2dbc:h2:mem:///replica-1"));
+        properties.setReplicationLag(Duration.ofSeconds(2));
+
+        replicaRouting = new ReplicaRouting(properties, ticker::get);
+    }
+
+    @Test
+    @DisplayName("read-only queries rotate between the replicas and everything else goes to the primary")
+    void create_RouteReadOnlyToReplicas_whenQueryIsMarked() {
+        ReplicaRoutingConnectionFactory routing = routing(database("replica-0"), database("replica-1"));
+
+        Assertions.assertEquals("primary", node(routing).block());
+
+        List<String> reads = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            reads.add(ReplicaRouting.readOnly(node(routing)).block());
+        }
+
+        Assertions.assertEquals(List.of("replica-0", "replica-1", "replica-0", "replica-1"), reads);
+    }
+
+    @Test
+    @DisplayName("a transaction stays on the primary even when it is marked as read-only")
+    void create_UsePrimary_whenInsideTransaction() {
+        ReplicaRoutingConnectionFactory routing = routing(database("replica-0"), database("replica-1"));
+        TransactionalOperator transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(routing));
+
+        Mono<String> markedTransaction = ReplicaRouting.readOnly(transactionalOperator.transactional(node(routing)));
+        Mono<String> markedQuery = transactionalOperator.transactional(ReplicaRouting.readOnly(node(routing)));
+
+        Assertions.assertEquals("primary", markedTransaction.block());
+        Assertions.assertEquals("primary", markedQuery.block());
+    }
+
+    @Test
+    @DisplayName("a user reads from the primary for the replication lag after writing, other users keep the replicas")
+    void create_ReadYourWrites_whenUserWroteRecently() {
+        ReplicaRoutingConnectionFactory routing = routing(database("replica-0"));
+
+        replicaRouting.recordWrite()
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(user("felipe")))
+                .block();
+
+        Assertions.assertEquals("primary", readAs(routing, "felipe"));
+        Assertions.assertEquals("replica-0", readAs(routing, "other"));
+
+        ticker.addAndGet(properties.getReplicationLag().plusMillis(1).toNanos());
+
+        Assertions.assertEquals("replica-0", readAs(routing, "felipe"));
+    }
+
+    @Test
+    @DisplayName("a failing replica is ejected with the read served by the primary and comes back after a health check")
+    void create_EjectReplica_whenConnectionFails() {
+        AtomicBoolean down = new AtomicBoolean(true);
+        ConnectionFactory flaky = new FlakyConnectionFactory(database("replica-0"), down);
+        ReplicaRoutingConnectionFactory routing = routing(flaky, database("replica-1"));
+
+        Assertions.assertEquals("primary", ReplicaRouting.readOnly(node(routing)).block());
+        Assertions.assertEquals(1, routing.healthyReplicas());
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals("replica-1", ReplicaRouting.readOnly(node(routing)).block());
+        }
+
+        routing.checkHealth().block();
+        Assertions.assertEquals(1, routing.healthyReplicas());
+
+        down.set(false);
+        routing.checkHealth().block();
+        Assertions.assertEquals(2, routing.healthyReplicas());
+
+        List<String> reads = List.of(ReplicaRouting.readOnly(node(routing)).block(),
+                ReplicaRouting.readOnly(node(routing)).block());
+        Assertions.assertTrue(reads.containsAll(List.of("replica-0", "replica-1")), reads.toString());
+    }
+
+    @Test
+    @DisplayName("pool metrics are bound for the primary and each replica pool, which Boot skips once the bean is wrapped")
+    void poolMetrics_BindEachPool_whenFactoryIsRouting() {
+        ReplicaRoutingConnectionFactory routing = new ReplicaRoutingConnectionFactory(pool(database("primary")),
+                List.of(pool(database("replica-0")), pool(database("replica-1"))), replicaRouting, properties);
+        MeterRegistry registry = new SimpleMeterRegistry();
+
+        ReplicaRoutingConnectionFactory.poolMetrics(routing).bindTo(registry);
+
+        for (String name : List.of("primary", "replica-0", "replica-1")) {
+            Assertions.assertEquals(4, registry.get("r2dbc.pool.max.allocated").tag("name", name).gauge().value());
+        }
+
+        routing.dispose();
+    }
+
+    private ReplicaRoutingConnectionFactory routing(ConnectionFactory... replicas) {
+        return new ReplicaRoutingConnectionFactory(database("primary"), List.of(replicas), replicaRouting, properties);
+    }
+
+    private String readAs(ConnectionFactory routing, String username) {
+        return ReplicaRouting.readOnly(node(routing))
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(user(username)))
+                .block();
+    }
+
+    private static Mono<String> node(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory)
+                .sql("SELECT name FROM node")
+                .map(row -> row.get("name", String.class))
+                .one();
+    }
+
+    private static ConnectionFactory database(String name) {
+        ConnectionFactory connectionFactory = H2ConnectionFactory.inMemory(name + "-" + UUID.randomUUID());
+        DatabaseClient databaseClient = DatabaseClient.create(connectionFactory);
+
+        databaseClient.sql("CREATE TABLE node (name VARCHAR(20))").then()
+                .then(databaseClient.sql("INSERT INTO node VALUES ('" + name + "')").then())
+                .block();
+
+        return connectionFactory;
+    }
+
+    private static ConnectionPool pool(ConnectionFactory connectionFactory) {
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(0)
+                .maxSize(4)
+                .build());
+    }
+
+    private static UsernamePasswordAuthenticationToken user(String username) {
+        return new UsernamePasswordAuthenticationToken(username, null, AuthorityUtils.NO_AUTHORITIES);
+    }
+
+    private static class FlakyConnectionFactory implements ConnectionFactory {
+
+        private final ConnectionFactory delegate;
+        private final AtomicBoolean down;
+
+        FlakyConnectionFactory(ConnectionFactory delegate, AtomicBoolean down) {
+            this.delegate = delegate;
+            this.down = down;
+        }
+
+        @Override
+        public Mono<Connection> create() {
+            return Mono.defer(() -> down.get()
+                    ? Mono.error(new IllegalStateException("replica down"))
+                    : Mono.from(delegate.create()));
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return delegate.getMetadata();
+        }
+
+    }
+
+}
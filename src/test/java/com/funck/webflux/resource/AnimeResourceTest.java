@@ -1,6 +1,18 @@
 package com.funck.webflux.resource;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.funck.webflux.codec.AnimeProtobufDecoder;
+import com.funck.webflux.codec.AnimeProtobufEncoder;
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.config.CodecConfig;
 import com.funck.webflux.domain.Anime;
+import com.funck.webflux.domain.AnimeChange;
+import com.funck.webflux.domain.AnimePage;
+import com.funck.webflux.domain.IngestChunkResult;
+import com.funck.webflux.exception.AnimeVersionMismatchException;
+import com.funck.webflux.service.AnimeChangeCounter;
+import com.funck.webflux.service.AnimeChangeFeed;
+import com.funck.webflux.service.AnimeIngestService;
 import com.funck.webflux.service.AnimeService;
 import com.funck.webflux.util.AnimeCreator;
 import org.junit.jupiter.api.Assertions;
@@ -12,7 +24,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.blockhound.BlockHound;
 import reactor.blockhound.BlockingOperationError;
 import reactor.core.publisher.Flux;
@@ -35,6 +57,18 @@ class AnimeResourceTest {
     @Mock
     private AnimeService animeService;
 
+    @Mock
+    private AnimeIngestService animeIngestService;
+
+    @Spy
+    private AnimeChangeCounter animeChangeCounter = new AnimeChangeCounter();
+
+    @Mock
+    private AnimeChangeFeed animeChangeFeed;
+
+    @Spy
+    private AnimeProperties animeProperties = new AnimeProperties();
+
     private Anime anime = AnimeCreator.createValidAnime();
 
     @BeforeAll
@@ -47,6 +81,9 @@ class AnimeResourceTest {
         BDDMockito.when(animeService.listAll())
                 .thenReturn(Flux.just(anime));
 
+        BDDMockito.when(animeService.listPage(null, null))
+                .thenReturn(Mono.just(new AnimePage(List.of(anime), 20, null)));
+
         BDDMockito.when(animeService.findById(anyInt()))
                 .thenReturn(Mono.just(anime));
 
@@ -76,9 +113,95 @@ class AnimeResourceTest {
     }
 
     @Test
-    @DisplayName("findAll returns a mono of Anime")
+    @DisplayName("findAll returns a page of Anime")
     void findAll_ReturnFluxOfAnime_whenSuccessful() {
-        StepVerifier.create(animeResource.listAll())
+        StepVerifier.create(animeResource.listAll(null, null, listRequest(null)))
+                .expectSubscription()
+                .assertNext(response -> {
+                    Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+                    Assertions.assertEquals(List.of(anime), response.getBody());
+                    Assertions.assertEquals(animeChangeCounter.etag(), response.getHeaders().getETag());
+                    Assertions.assertFalse(response.getHeaders().containsKey(HttpHeaders.LINK));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAll returns not modified without listing when If-None-Match has the current ETag")
+    void findAll_ReturnNotModified_whenETagMatches() {
+        MockServerWebExchange exchange = listRequest(animeChangeCounter.etag());
+
+        StepVerifier.create(animeResource.listAll(null, null, exchange))
+                .expectSubscription()
+                .verifyComplete();
+
+        Assertions.assertEquals(HttpStatus.NOT_MODIFIED, exchange.getResponse().getStatusCode());
+        BDDMockito.verify(animeService, BDDMockito.never()).listPage(null, null);
+    }
+
+    @Test
+    @DisplayName("findAll lists again when the animes changed after the ETag")
+    void findAll_ReturnPage_whenETagIsStale() {
+        String stale = animeChangeCounter.etag();
+        animeChangeCounter.increment();
+
+        StepVerifier.create(animeResource.listAll(null, null, listRequest(stale)))
+                .expectSubscription()
+                .assertNext(response -> Assertions.assertEquals(List.of(anime), response.getBody()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAll returns the next page link when there are more animes")
+    void findAll_ReturnNextPageLink_whenHasNextPage() {
+        BDDMockito.when(animeService.listPage(null, 1))
+                .thenReturn(Mono.just(new AnimePage(List.of(anime), 1, anime.getId())));
+
+        StepVerifier.create(animeResource.listAll(null, 1, listRequest(null)))
+                .expectSubscription()
+                .assertNext(response -> Assertions.assertEquals(
+                        "</animes?after=1&limit=1>; rel=\"next\"",
+                        response.getHeaders().getFirst(HttpHeaders.LINK)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search returns the animes found by name")
+    void search_ReturnFluxOfAnime_whenSuccessful() {
+        BDDMockito.when(animeService.search("nar", null)).thenReturn(Flux.just(anime));
+
+        StepVerifier.create(animeResource.search("nar", null))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("autocomplete returns the animes starting with the prefix")
+    void autocomplete_ReturnFluxOfAnime_whenSuccessful() {
+        BDDMockito.when(animeService.autocomplete("nar", 5)).thenReturn(Flux.just(anime));
+
+        StepVerifier.create(animeResource.autocomplete("nar", 5))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("stream returns a flux of Anime")
+    void stream_ReturnFluxOfAnime_whenSuccessful() {
+        StepVerifier.create(animeResource.stream())
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAllById returns a flux of Anime")
+    void findAllById_ReturnFluxOfAnime_whenSuccessful() {
+        BDDMockito.when(animeService.findAllById(List.of(1))).thenReturn(Flux.just(anime));
+
+        StepVerifier.create(animeResource.findAllById(List.of(1)))
                 .expectSubscription()
                 .expectNext(anime)
                 .verifyComplete();
@@ -89,7 +212,10 @@ class AnimeResourceTest {
     void findById_ReturnMonoOfAnime_whenSuccessful() {
         StepVerifier.create(animeResource.findById(1))
                 .expectSubscription()
-                .expectNext(anime)
+                .assertNext(response -> {
+                    Assertions.assertEquals(anime, response.getBody());
+                    Assertions.assertEquals("\"0\"", response.getHeaders().getETag());
+                })
                 .verifyComplete();
     }
 
@@ -115,24 +241,191 @@ class AnimeResourceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("Ingest returns the result of each chunk")
+    void ingest_ReturnChunkResults_whenSuccessful() {
+        Flux<String> lines = Flux.just("{\"name\":\"Naruto\"}");
+        IngestChunkResult result = new IngestChunkResult(0, List.of(1), List.of());
+
+        BDDMockito.when(animeIngestService.ingest(lines)).thenReturn(Flux.just(result));
+
+        StepVerifier.create(animeResource.ingest(lines))
+                .expectSubscription()
+                .expectNext(result)
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("Delete removes anime when successful")
     void delete_Remove_whenSuccessful() {
         BDDMockito.when(animeService.delete(1)).thenReturn(Mono.empty());
 
-        StepVerifier.create(animeResource.delete(1))
+        StepVerifier.create(animeResource.delete(1, null))
                 .expectSubscription()
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("Delete checks the version of the If-Match header")
+    void delete_UseIfMatchVersion_whenHeaderIsPresent() {
+        BDDMockito.when(animeService.delete(1, 3L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(animeResource.delete(1, "\"3\""))
+                .expectSubscription()
+                .verifyComplete();
+
+        BDDMockito.verify(animeService).delete(1, 3L);
+    }
+
     @Test
     @DisplayName("Update save updated anime when successful and returns empty mono")
     void update_SaveUpdateAndReturnEmptyMono_whenSuccessful() {
         BDDMockito.when(animeService.update(anime, 1)).thenReturn(Mono.empty());
 
-        StepVerifier.create(animeResource.update(anime, 1))
+        StepVerifier.create(animeResource.update(anime, 1, null))
+                .expectSubscription()
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Update checks the version of the If-Match header")
+    void update_UseIfMatchVersion_whenHeaderIsPresent() {
+        BDDMockito.when(animeService.update(anime, 1, 3L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(animeResource.update(anime, 1, "\"3\""))
                 .expectSubscription()
                 .verifyComplete();
+
+        BDDMockito.verify(animeService).update(anime, 1, 3L);
+    }
+
+    @Test
+    @DisplayName("Update ignores an If-Match header with any version")
+    void update_Unconditional_whenIfMatchIsWildcard() {
+        BDDMockito.when(animeService.update(anime, 1)).thenReturn(Mono.empty());
+
+        StepVerifier.create(animeResource.update(anime, 1, "*"))
+                .expectSubscription()
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Update fails the precondition when the If-Match header is weak or malformed")
+    void update_ReturnPreconditionFailed_whenIfMatchIsInvalid() {
+        StepVerifier.create(animeResource.update(anime, 1, "W/\"3\""))
+                .expectError(AnimeVersionMismatchException.class)
+                .verify();
+
+        StepVerifier.create(animeResource.update(anime, 1, "\"abc\""))
+                .expectError(AnimeVersionMismatchException.class)
+                .verify();
+    }
+
+    private MockServerWebExchange listRequest(String ifNoneMatch) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/animes");
+
+        if (ifNoneMatch != null) {
+            request.ifNoneMatch(ifNoneMatch);
+        }
+
+        return MockServerWebExchange.from(request);
+    }
+
+    @Test
+    @DisplayName("changes maps the feed events to server sent events with the sequence id and the change type")
+    void changes_ReturnServerSentEvents_whenFeedHasChanges() {
+        AnimeChangeFeed.Event event = new AnimeChangeFeed.Event("abc-7", AnimeChange.updated(1, "Naruto"));
+
+        BDDMockito.when(animeChangeFeed.events("abc-6"))
+                .thenReturn(Flux.just(event));
+
+        // Em tempo virtual para o intervalo do heartbeat não ficar agendado no parallel
+        StepVerifier.withVirtualTime(() -> animeResource.changes("abc-6"))
+                .assertNext(sse -> {
+                    Assertions.assertEquals("abc-7", sse.id());
+                    Assertions.assertEquals("update", sse.event());
+                    Assertions.assertEquals(event.getChange(), sse.data());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("changes sends heartbeat comments while the feed is idle")
+    void changes_SendHeartbeat_whenFeedIsIdle() {
+        BDDMockito.when(animeChangeFeed.events(null))
+                .thenReturn(Flux.never());
+
+        StepVerifier.withVirtualTime(() -> animeResource.changes(null))
+                .expectSubscription()
+                .thenAwait(animeProperties.getChanges().getHeartbeat().multipliedBy(2))
+                .expectNextMatches(sse -> "heartbeat".equals(sse.comment()) && sse.data() == null)
+                .expectNextMatches(sse -> "heartbeat".equals(sse.comment()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("responses are JSON without Accept or with a wildcard, binary formats only when asked by name")
+    void findById_ReturnJson_whenAcceptIsMissingOrWildcard() {
+        WebTestClient client = webTestClient();
+
+        client.get().uri("/animes/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Anime.class).isEqualTo(anime);
+
+        client.get().uri("/animes/1")
+                .accept(MediaType.ALL)
+                .exchange()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Anime.class).isEqualTo(anime);
+
+        client.get().uri("/animes")
+                .accept(MediaType.ALL)
+                .exchange()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBodyList(Anime.class).isEqualTo(List.of(anime));
+
+        client.get().uri("/animes/1")
+                .accept(MediaType.parseMediaType("application/x-protobuf"))
+                .exchange()
+                .expectHeader().contentType("application/x-protobuf");
+    }
+
+    @Test
+    @DisplayName("stream writes each anime as a length-delimited protobuf message")
+    void stream_ReturnDelimitedProtobuf_whenAccepted() {
+        byte[] body = webTestClient().get().uri("/animes")
+                .accept(AnimeProtobufEncoder.APPLICATION_STREAM_PROTOBUF)
+                .exchange()
+                .expectHeader().contentType(AnimeProtobufEncoder.APPLICATION_STREAM_PROTOBUF)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        // Mensagens pequenas, o tamanho cabe num byte do varint
+        Assertions.assertEquals(body.length - 1, body[0]);
+
+        Object decoded = new AnimeProtobufDecoder().decode(DefaultDataBufferFactory.sharedInstance.wrap(body).slice(1, body[0]),
+                ResolvableType.forClass(Anime.class), MediaType.parseMediaType("application/x-protobuf"), null);
+        Assertions.assertEquals(anime, decoded);
+    }
+
+    /**
+     * O controller com os codecs e a negociação de conteúdo do CodecConfig, sem subir o contexto
+     */
+    private WebTestClient webTestClient() {
+        CodecConfig codecConfig = new CodecConfig();
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        return WebTestClient.bindToController(animeResource)
+                .httpMessageCodecs(configurer -> {
+                    codecConfig.jsonCodecCustomizer(objectMapper).customize(configurer);
+                    codecConfig.binaryCodecCustomizer(Jackson2ObjectMapperBuilder.json()).customize(configurer);
+                })
+                .contentTypeResolver(codecConfig::configureContentTypeResolver)
+                .build();
     }
 
-}
\ No newline at end of file
+}
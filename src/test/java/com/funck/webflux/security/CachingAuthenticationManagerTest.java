@@ -0,0 +1,96 @@
+package com.funck.webflux.security;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.mockito.ArgumentMatchers.any;
+
+class CachingAuthenticationManagerTest {
+
+    private final ReactiveAuthenticationManager delegate = Mockito.mock(ReactiveAuthenticationManager.class);
+    private final ReactiveUserDetailsService userDetailsService = Mockito.mock(ReactiveUserDetailsService.class);
+
+    private final User user = new User(1, "Felipe", "felipe", "{bcrypt}hash", "ROLE_USER");
+
+    private CachingAuthenticationManager authenticationManager;
+
+    @BeforeEach
+    void setUp() {
+        authenticationManager = new CachingAuthenticationManager(delegate, userDetailsService,
+                new AnimeProperties.Security.CredentialCache());
+
+        BDDMockito.when(userDetailsService.findByUsername("felipe"))
+                .thenReturn(Mono.just(user));
+
+        BDDMockito.when(delegate.authenticate(login("1234")))
+                .thenReturn(Mono.just(authenticated(user)));
+
+        BDDMockito.when(delegate.authenticate(login("wrong")))
+                .thenReturn(Mono.error(new BadCredentialsException("Invalid Credentials")));
+    }
+
+    @Test
+    @DisplayName("authenticate verifies the password only once for repeated requests")
+    void authenticate_SkipDelegate_whenCredentialWasVerified() {
+        StepVerifier.create(authenticationManager.authenticate(login("1234"))
+                        .then(authenticationManager.authenticate(login("1234"))))
+                .expectSubscription()
+                .expectNextMatches(authentication -> authentication.isAuthenticated()
+                        && authentication.getPrincipal() == user)
+                .verifyComplete();
+
+        BDDMockito.verify(delegate, BDDMockito.times(1)).authenticate(any());
+    }
+
+    @Test
+    @DisplayName("authenticate does not remember failed credentials")
+    void authenticate_CallDelegate_whenPasswordIsWrong() {
+        StepVerifier.create(authenticationManager.authenticate(login("wrong")))
+                .expectError(BadCredentialsException.class)
+                .verify();
+
+        StepVerifier.create(authenticationManager.authenticate(login("wrong")))
+                .expectError(BadCredentialsException.class)
+                .verify();
+
+        BDDMockito.verify(delegate, BDDMockito.times(2)).authenticate(any());
+    }
+
+    @Test
+    @DisplayName("authenticate verifies the password again when the password of the user changed")
+    void authenticate_CallDelegate_whenPasswordChanged() {
+        StepVerifier.create(authenticationManager.authenticate(login("1234")))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        BDDMockito.when(userDetailsService.findByUsername("felipe"))
+                .thenReturn(Mono.just(new User(1, "Felipe", "felipe", "{bcrypt}other", "ROLE_USER")));
+        BDDMockito.when(delegate.authenticate(login("1234")))
+                .thenReturn(Mono.error(new BadCredentialsException("Invalid Credentials")));
+
+        StepVerifier.create(authenticationManager.authenticate(login("1234")))
+                .expectError(BadCredentialsException.class)
+                .verify();
+    }
+
+    private Authentication login(String password) {
+        return new UsernamePasswordAuthenticationToken("felipe", password);
+    }
+
+    private Authentication authenticated(User user) {
+        return new UsernamePasswordAuthenticationToken(user, user.getPassword(), user.getAuthorities());
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.funck.webflux.security;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+import java.util.Set;
+
+class GrantedAuthoritiesTest {
+
+    @Test
+    @DisplayName("parse returns the authorities in the order they were declared")
+    void parse_ReturnAuthorities_whenSuccessful() {
+        Set<GrantedAuthority> authorities = GrantedAuthorities.parse("ROLE_ADMIN,ROLE_USER");
+
+        Assertions.assertEquals(
+                List.of(new SimpleGrantedAuthority("ROLE_ADMIN"), new SimpleGrantedAuthority("ROLE_USER")),
+                List.copyOf(authorities));
+    }
+
+    @Test
+    @DisplayName("parse returns the same instances for the same authorities")
+    void parse_ReturnSharedInstances_whenCalledAgain() {
+        Set<GrantedAuthority> admin = GrantedAuthorities.parse("ROLE_ADMIN,ROLE_USER");
+        Set<GrantedAuthority> user = GrantedAuthorities.parse("ROLE_USER");
+
+        Assertions.assertSame(admin, GrantedAuthorities.parse(new String("ROLE_ADMIN,ROLE_USER")));
+        Assertions.assertSame(List.copyOf(admin).get(1), user.iterator().next());
+    }
+
+    @Test
+    @DisplayName("parse returns an immutable set")
+    void parse_ReturnImmutableSet_whenSuccessful() {
+        Set<GrantedAuthority> authorities = GrantedAuthorities.parse("ROLE_USER");
+
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN")));
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.funck.webflux.security;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.exception.AnimeRateLimitException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RateLimitWebFilterTest {
+
+    private final AnimeProperties.Security.RateLimit properties = new AnimeProperties.Security.RateLimit();
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger passed = new AtomicInteger();
+
+    private final WebFilterChain chain = exchange -> Mono.fromRunnable(passed::incrementAndGet);
+
+    private RateLimitWebFilter rateLimitWebFilter;
+
+    @BeforeEach
+    void setUp() {
+        properties.getRead().setRate(10);
+        properties.getRead().setBurst(3);
+        properties.getWrite().setRate(1);
+        properties.getWrite().setBurst(1);
+
+        rateLimitWebFilter = new RateLimitWebFilter(properties, now::get);
+    }
+
+    @Test
+    @DisplayName("filter lets the burst through and then rejects with too many requests and Retry-After")
+    void filter_RejectWithRetryAfter_whenBurstIsExhausted() {
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(rateLimitWebFilter.filter(exchange(get("/animes"), "felipe"), chain))
+                    .verifyComplete();
+        }
+
+        ServerWebExchange rejected = exchange(get("/animes/1"), "felipe");
+
+        StepVerifier.create(rateLimitWebFilter.filter(rejected, chain))
+                .verifyError(AnimeRateLimitException.class);
+
+        Assertions.assertEquals(3, passed.get());
+        Assertions.assertEquals("1", rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    @DisplayName("filter accepts again once the bucket refills at the configured rate")
+    void filter_Accept_whenBucketRefills() {
+        for (int i = 0; i < 3; i++) {
+            rateLimitWebFilter.filter(exchange(get("/animes"), "felipe"), chain).block();
+        }
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        StepVerifier.create(rateLimitWebFilter.filter(exchange(get("/animes"), "felipe"), chain))
+                .verifyComplete();
+        StepVerifier.create(rateLimitWebFilter.filter(exchange(get("/animes"), "felipe"), chain))
+                .verifyError(AnimeRateLimitException.class);
+    }
+
+    @Test
+    @DisplayName("constructor throws IllegalArgumentException when rate or burst is not positive")
+    void constructor_ThrowIllegalArgumentException_whenRateOrBurstIsNotPositive() {
+        properties.getRead().setRate(0);
+
+        IllegalArgumentException exception = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new RateLimitWebFilter(properties, now::get));
+        Assertions.assertTrue(exception.getMessage().contains("rate-limit.read"));
+
+        properties.getRead().setRate(10);
+        properties.getWrite().setBurst(-1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RateLimitWebFilter(properties, now::get));
+    }
+
+    @Test
+    @DisplayName("filter keeps separate budgets per user and for reads and writes")
+    void filter_SeparateBudgets_whenUserOrRouteDiffers() {
+        StepVerifier.create(rateLimitWebFilter.filter(exchange(MockServerHttpRequest.put("/animes/1"), "admin"), chain))
+                .verifyComplete();
+        StepVerifier.create(rateLimitWebFilter.filter(exchange(MockServerHttpRequest.delete("/animes/1"), "admin"), chain))
+                .verifyError(AnimeRateLimitException.class);
+
+        StepVerifier.create(rateLimitWebFilter.filter(exchange(get("/animes/1"), "admin"), chain))
+                .verifyComplete();
+        StepVerifier.create(rateLimitWebFilter.filter(exchange(MockServerHttpRequest.post("/animes"), "other"), chain))
+                .verifyComplete();
+
+        Assertions.assertEquals(3, passed.get());
+    }
+
+    @Test
+    @DisplayName("filter does not limit anonymous requests or paths outside /animes")
+    void filter_Skip_whenAnonymousOrOtherPath() {
+        properties.getRead().setBurst(1);
+        rateLimitWebFilter = new RateLimitWebFilter(properties, now::get);
+
+        for (int i = 0; i < 3; i++) {
+            rateLimitWebFilter.filter(MockServerWebExchange.from(get("/animes")), chain).block();
+            rateLimitWebFilter.filter(exchange(get("/actuator/health"), "felipe"), chain).block();
+            rateLimitWebFilter.filter(exchange(get("/animesx"), "felipe"), chain).block();
+        }
+
+        Assertions.assertEquals(9, passed.get());
+    }
+
+    private static MockServerHttpRequest.BaseBuilder<?> get(String path) {
+        return MockServerHttpRequest.get(path);
+    }
+
+    private static ServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request, String username) {
+        Principal principal = new UsernamePasswordAuthenticationToken(username, null);
+
+        return MockServerWebExchange.from(request)
+                .mutate()
+                .principal(Mono.just(principal))
+                .build();
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.exception.AnimeTimeoutException;
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.util.AnimeCreator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyIterable;
+
+class AnimeBatchLoaderTest {
+
+    private final AnimeRepository animeRepository = Mockito.mock(AnimeRepository.class);
+
+    private final Anime naruto = AnimeCreator.createValidAnime();
+    private final Anime bleach = naruto.withId(2).withName("Bleach");
+
+    private AnimeBatchLoader animeBatchLoader;
+
+    @BeforeEach
+    void setUp() {
+        AnimeProperties animeProperties = new AnimeProperties();
+        animeProperties.getBatchLoader().setWindow(Duration.ofMillis(50));
+        animeProperties.getBatchLoader().setMaxBatchSize(10);
+
+        animeBatchLoader = new AnimeBatchLoader(animeRepository, animeProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        animeBatchLoader.destroy();
+    }
+
+    @Test
+    @DisplayName("load coalesces concurrent ids in one query and deduplicates repeated ids")
+    void load_QueryOnce_whenIdsArriveInTheSameWindow() {
+        BDDMockito.when(animeRepository.findAllById(List.of(1, 2, 3)))
+                .thenReturn(Flux.just(naruto, bleach));
+
+        Mono<List<Anime>> loads = Flux.merge(
+                        animeBatchLoader.load(1),
+                        animeBatchLoader.load(2),
+                        animeBatchLoader.load(1),
+                        animeBatchLoader.load(3))
+                .collectList();
+
+        StepVerifier.create(loads)
+                .expectSubscription()
+                .assertNext(animes -> Assertions.assertEquals(3, animes.size()))
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepository, BDDMockito.times(1)).findAllById(anyIterable());
+    }
+
+    @Test
+    @DisplayName("load returns empty for ids that were not found")
+    void load_ReturnEmpty_whenIdIsNotFound() {
+        BDDMockito.when(animeRepository.findAllById(List.of(3)))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(animeBatchLoader.load(3))
+                .expectSubscription()
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("load propagates the query error to every waiting id and keeps loading later ids")
+    void load_ReturnError_whenQueryFails() {
+        BDDMockito.when(animeRepository.findAllById(List.of(1)))
+                .thenReturn(Flux.error(new IllegalStateException("connection closed")))
+                .thenReturn(Flux.just(naruto));
+
+        StepVerifier.create(animeBatchLoader.load(1))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        StepVerifier.create(animeBatchLoader.load(1))
+                .expectNext(naruto)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("a batch that passes the find-by-id deadline fails its ids so later loads query again")
+    void load_ReturnTimeout_whenBatchHangs() {
+        AnimeProperties animeProperties = new AnimeProperties();
+        animeProperties.getBatchLoader().setWindow(Duration.ofMillis(10));
+        animeProperties.getQueries().getTimeouts().put(AnimeQueryPolicy.Operation.FIND_BY_ID.getKey(), Duration.ofMillis(100));
+        AnimeBatchLoader loader = new AnimeBatchLoader(animeRepository, animeProperties);
+
+        BDDMockito.when(animeRepository.findAllById(List.of(1)))
+                .thenReturn(Flux.never())
+                .thenReturn(Flux.just(naruto));
+
+        try {
+            StepVerifier.create(loader.load(1))
+                    .expectError(AnimeTimeoutException.class)
+                    .verify(Duration.ofSeconds(5));
+
+            StepVerifier.create(loader.load(1))
+                    .expectNext(naruto)
+                    .verifyComplete();
+        } finally {
+            loader.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.util.AnimeCreator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+class AnimeCacheTest {
+
+    private final AnimeCache animeCache = new AnimeCache(new AnimeProperties());
+
+    private final Anime anime = AnimeCreator.createValidAnime();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    @DisplayName("get caches ids that were not found")
+    void get_CacheNotFound_whenLoaderReturnsEmpty() {
+        Function<Integer, Mono<Anime>> loader = id -> Mono.fromRunnable(loads::incrementAndGet);
+
+        StepVerifier.create(animeCache.get(1, loader).then(animeCache.get(1, loader)))
+                .expectSubscription()
+                .verifyComplete();
+
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(1, animeCache.stats().hitCount());
+        Assertions.assertEquals(1, animeCache.stats().missCount());
+    }
+
+    @Test
+    @DisplayName("put replaces a cached not found id")
+    void put_ReplaceNotFound_whenAnimeIsSaved() {
+        StepVerifier.create(animeCache.get(1, id -> Mono.empty()))
+                .verifyComplete();
+
+        animeCache.put(anime);
+
+        StepVerifier.create(animeCache.get(1, id -> Mono.error(new IllegalStateException("should not load"))))
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("get does not cache loader errors")
+    void get_DoNotCacheError_whenLoaderFails() {
+        StepVerifier.create(animeCache.get(1, id -> Mono.error(new IllegalStateException("database down"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        StepVerifier.create(animeCache.get(1, id -> Mono.just(anime)))
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.funck.webflux.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AnimeChangeCounterTest {
+
+    private final AnimeChangeCounter animeChangeCounter = new AnimeChangeCounter();
+
+    @Test
+    @DisplayName("etag is a strong ETag that stays the same while nothing changes")
+    void etag_ReturnSameStrongETag_whenNothingChanged() {
+        String etag = animeChangeCounter.etag();
+
+        Assertions.assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        Assertions.assertSame(etag, animeChangeCounter.etag());
+    }
+
+    @Test
+    @DisplayName("increment changes the ETag")
+    void increment_ChangeETag_whenAnimesChanged() {
+        String before = animeChangeCounter.etag();
+
+        animeChangeCounter.increment();
+
+        Assertions.assertNotEquals(before, animeChangeCounter.etag());
+    }
+
+}
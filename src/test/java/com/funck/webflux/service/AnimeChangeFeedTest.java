@@ -0,0 +1,203 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.AnimeChange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class AnimeChangeFeedTest {
+
+    private final AnimeProperties animeProperties = new AnimeProperties();
+
+    private final TestChannel animeChangeChannel = new TestChannel();
+
+    private final AnimeCache animeCache = Mockito.mock(AnimeCache.class);
+
+    private final AnimeNameIndex animeNameIndex = Mockito.mock(AnimeNameIndex.class);
+
+    private final AnimeChangeCounter animeChangeCounter = new AnimeChangeCounter();
+
+    private AnimeChangeFeed animeChangeFeed;
+
+    @BeforeEach
+    void setUp() {
+        animeProperties.getChanges().setBufferSize(16);
+        animeProperties.getChanges().setSubscriberBuffer(8);
+
+        animeChangeFeed = new AnimeChangeFeed(animeChangeChannel, animeCache, animeNameIndex, animeChangeCounter, animeProperties);
+        animeChangeFeed.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        animeChangeFeed.destroy();
+    }
+
+    @Test
+    @DisplayName("events delivers the published changes with increasing ids")
+    void events_ReturnLiveChanges_whenChangesArePublished() {
+        StepVerifier.create(animeChangeFeed.events(null))
+                .then(() -> animeChangeFeed.publish(List.of(AnimeChange.updated(1, "Naruto"), AnimeChange.deleted(2))).block())
+                .assertNext(event -> Assertions.assertEquals(AnimeChange.updated(1, "Naruto"), event.getChange()))
+                .assertNext(event -> Assertions.assertEquals(AnimeChange.deleted(2), event.getChange()))
+                .thenCancel()
+                .verify();
+
+        Assertions.assertEquals(0, animeChangeFeed.subscribers());
+    }
+
+    @Test
+    @DisplayName("events replays the changes after the Last-Event-ID before the live ones")
+    void events_ReplayMissedChanges_whenLastEventIdIsInTheBuffer() {
+        String lastEventId = lastEventId();
+
+        animeChangeFeed.publish(List.of(AnimeChange.updated(1, "Naruto"), AnimeChange.updated(2, "Bleach"))).block();
+
+        StepVerifier.create(animeChangeFeed.events(lastEventId))
+                .assertNext(event -> Assertions.assertEquals(AnimeChange.updated(1, "Naruto"), event.getChange()))
+                .assertNext(event -> Assertions.assertEquals(AnimeChange.updated(2, "Bleach"), event.getChange()))
+                .then(() -> animeChangeFeed.publish(List.of(AnimeChange.deleted(3))).block())
+                .assertNext(event -> Assertions.assertEquals(AnimeChange.deleted(3), event.getChange()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("events starts with a resync when the Last-Event-ID is unknown or already left the buffer")
+    void events_StartWithResync_whenLastEventIdCannotBeResumed() {
+        String lastEventId = lastEventId();
+
+        animeChangeFeed.publish(deleted(17)).block();
+
+        for (String id : List.of(lastEventId, "old-1", "garbage")) {
+            StepVerifier.create(animeChangeFeed.events(id))
+                    .assertNext(event -> Assertions.assertEquals(AnimeChange.resync(), event.getChange()))
+                    .then(() -> animeChangeFeed.publish(List.of(AnimeChange.deleted(6))).block())
+                    .assertNext(event -> Assertions.assertEquals(AnimeChange.deleted(6), event.getChange()))
+                    .thenCancel()
+                    .verify();
+        }
+    }
+
+    @Test
+    @DisplayName("events completes the stream of a subscriber that falls behind its buffer")
+    void events_DisconnectSubscriber_whenBufferOverflows() {
+        StepVerifier.create(animeChangeFeed.events(null), 0)
+                .then(() -> animeChangeFeed.publish(deleted(9)).block())
+                .then(() -> Assertions.assertEquals(0, animeChangeFeed.subscribers()))
+                .thenRequest(10)
+                .expectNextCount(8)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("a remote notification invalidates the cache, updates the name index and changes the ETag")
+    void receive_InvalidateLocalState_whenNotificationIsRemote() {
+        String etag = animeChangeCounter.etag();
+
+        animeChangeChannel.remote(List.of(AnimeChange.updated(1, "Naruto"), AnimeChange.deleted(2)));
+
+        Mockito.verify(animeCache).invalidate(1);
+        Mockito.verify(animeCache).invalidate(2);
+        Mockito.verify(animeNameIndex).apply(AnimeChange.updated(1, "Naruto"));
+        Mockito.verify(animeNameIndex).apply(AnimeChange.deleted(2));
+        Assertions.assertNotEquals(etag, animeChangeCounter.etag());
+    }
+
+    @Test
+    @DisplayName("a local notification only goes to the feed because the write already updated this instance")
+    void receive_OnlyAppend_whenNotificationIsLocal() {
+        String etag = animeChangeCounter.etag();
+
+        animeChangeFeed.publish(List.of(AnimeChange.updated(1, "Naruto"))).block();
+
+        Mockito.verifyNoInteractions(animeCache, animeNameIndex);
+        Assertions.assertEquals(etag, animeChangeCounter.etag());
+    }
+
+    @Test
+    @DisplayName("a gap in the channel invalidates the whole cache and sends a resync to the subscribers")
+    void receive_InvalidateAllAndResync_whenChannelHasGap() {
+        String etag = animeChangeCounter.etag();
+
+        StepVerifier.create(animeChangeFeed.events(null))
+                .then(animeChangeChannel::gap)
+                .assertNext(event -> Assertions.assertEquals(AnimeChange.resync(), event.getChange()))
+                .thenCancel()
+                .verify();
+
+        Mockito.verify(animeCache).invalidateAll();
+        Assertions.assertNotEquals(etag, animeChangeCounter.etag());
+    }
+
+    @Test
+    @DisplayName("publish ignores a channel failure because the write was already committed, sending a resync instead")
+    void publish_CompleteEmpty_whenChannelFails() {
+        AnimeChangeChannel failing = Mockito.mock(AnimeChangeChannel.class);
+        Mockito.when(failing.publish(Mockito.anyList())).thenReturn(Mono.error(new IllegalStateException("down")));
+        Mockito.when(failing.notifications()).thenReturn(Flux.never());
+
+        AnimeChangeFeed feed = new AnimeChangeFeed(failing, animeCache, animeNameIndex, animeChangeCounter, animeProperties);
+        String etag = animeChangeCounter.etag();
+
+        StepVerifier.create(feed.events(null))
+                .then(() -> StepVerifier.create(feed.publish(List.of(AnimeChange.deleted(1))))
+                        .verifyComplete())
+                .assertNext(event -> Assertions.assertEquals(AnimeChange.resync(), event.getChange()))
+                .thenCancel()
+                .verify();
+
+        Mockito.verifyNoInteractions(animeCache, animeNameIndex);
+        Assertions.assertEquals(etag, animeChangeCounter.etag());
+    }
+
+    /**
+     * Id do último evento até agora, pego pelo RESYNC que um id desconhecido recebe
+     */
+    private String lastEventId() {
+        return animeChangeFeed.events("unknown").blockFirst().getId();
+    }
+
+    private static List<AnimeChange> deleted(int count) {
+        return IntStream.rangeClosed(1, count)
+                .mapToObj(AnimeChange::deleted)
+                .collect(Collectors.toList());
+    }
+
+    private static class TestChannel implements AnimeChangeChannel {
+
+        private final Sinks.Many<Notification> sink = Sinks.many().multicast().directBestEffort();
+
+        @Override
+        public Mono<Void> publish(List<AnimeChange> changes) {
+            return Mono.fromRunnable(() -> sink.tryEmitNext(new Notification(true, changes)));
+        }
+
+        @Override
+        public Flux<Notification> notifications() {
+            return sink.asFlux();
+        }
+
+        void remote(List<AnimeChange> changes) {
+            sink.tryEmitNext(new Notification(false, changes));
+        }
+
+        void gap() {
+            sink.tryEmitNext(Notification.gap());
+        }
+
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.exception.AnimeOverloadedException;
+import com.funck.webflux.repository.ReplicaRouting;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class AnimeConcurrencyLimiterTest {
+
+    private final AnimeProperties animeProperties = new AnimeProperties();
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final AtomicInteger pendingAcquires = new AtomicInteger();
+
+    private AnimeConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        animeProperties.getConcurrency().setInitialLimit(2);
+        animeProperties.getConcurrency().setMinLimit(1);
+
+        limiter = new AnimeConcurrencyLimiter(pendingAcquires::get, now::get, animeProperties.getConcurrency());
+    }
+
+    @Test
+    @DisplayName("limit rejects immediately with service unavailable when the calls in flight reach the limit")
+    void limit_ReturnOverloaded_whenLimitIsReached() {
+        Sinks.Empty<Void> first = Sinks.empty();
+        Sinks.Empty<Void> second = Sinks.empty();
+
+        limiter.limit(first.asMono()).subscribe();
+        limiter.limit(second.asMono()).subscribe();
+
+        StepVerifier.create(limiter.limit(Mono.just(1)))
+                .verifyError(AnimeOverloadedException.class);
+
+        first.tryEmitEmpty();
+
+        StepVerifier.create(limiter.limit(Flux.just(1, 2)))
+                .expectNext(1, 2)
+                .verifyComplete();
+
+        Assertions.assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("limit does not reject anything when disabled")
+    void limit_PassThrough_whenDisabled() {
+        animeProperties.getConcurrency().setEnabled(false);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.limit(Mono.never()).subscribe();
+        }
+
+        StepVerifier.create(limiter.limit(Mono.just(1)))
+                .expectNext(1)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("the limit grows while latency is stable and shrinks when the pool has pending acquires")
+    void limit_Adapt_whenLatencyOrPoolChange() {
+        animeProperties.getConcurrency().setInitialLimit(10);
+        limiter = new AnimeConcurrencyLimiter(pendingAcquires::get, now::get, animeProperties.getConcurrency());
+
+        runFullBatches(20);
+        int grown = limiter.getLimit();
+        Assertions.assertTrue(grown > 10, "limit should grow, was " + grown);
+
+        pendingAcquires.set(3);
+        runFullBatches(20);
+        Assertions.assertTrue(limiter.getLimit() < grown, "limit should shrink, was " + limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("the pool metrics are read once every few releases instead of on every release")
+    void limit_SamplePoolSparingly_whenCallsAreReleased() {
+        AtomicInteger reads = new AtomicInteger();
+        limiter = new AnimeConcurrencyLimiter(() -> {
+            reads.incrementAndGet();
+            return 0;
+        }, now::get, animeProperties.getConcurrency());
+
+        for (int i = 0; i < 64; i++) {
+            StepVerifier.create(limiter.limit(Mono.just(i)))
+                    .expectNext(i)
+                    .verifyComplete();
+        }
+
+        Assertions.assertEquals(4, reads.get());
+    }
+
+    @Test
+    @DisplayName("limit keeps the p99 latency bounded under three times the database capacity")
+    void limit_BoundLatency_whenOfferedLoadIsThreeTimesCapacity() {
+        Simulation unlimited = simulate(false);
+        Simulation limited = simulate(true);
+
+        // Sem limite a fila cresce o teste inteiro; com ele a espera fica perto de um tempo de consulta
+        Assertions.assertTrue(unlimited.p99() > Duration.ofSeconds(1).toNanos(), "unlimited p99 " + unlimited.p99());
+        Assertions.assertTrue(limited.p99() < Simulation.QUERY_TIME.multipliedBy(5).toNanos(), "limited p99 " + limited.p99());
+        Assertions.assertTrue(limited.shed.get() > 0);
+
+        // E o banco continua trabalhando perto da capacidade, o que foi recusado era excesso
+        Assertions.assertTrue(limited.latencies.size() > Simulation.CAPACITY_PER_SECOND * Simulation.SECONDS * 0.8,
+                "completed " + limited.latencies.size());
+    }
+
+    /**
+     * Lotes de chamadas com o limite inteiro em uso, cada uma levando 10ms
+     */
+    private void runFullBatches(int batches) {
+        for (int batch = 0; batch < batches; batch++) {
+            List<Sinks.Empty<Void>> calls = new ArrayList<>();
+
+            for (int i = 0; i < limiter.getLimit(); i++) {
+                Sinks.Empty<Void> call = Sinks.empty();
+                limiter.limit(call.asMono()).subscribe();
+                calls.add(call);
+            }
+
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            calls.forEach(Sinks.Empty::tryEmitEmpty);
+        }
+    }
+
+    private Simulation simulate(boolean enabled) {
+        Simulation simulation = new Simulation(enabled);
+        simulation.run();
+        return simulation;
+    }
+
+    /**
+     * listPage contra um repositório com 10 conexões e 10ms por consulta, recebendo 3 requisições por
+     * milissegundo em tempo virtual: o triplo do que o banco atende
+     */
+    private static class Simulation {
+
+        static final int CONNECTIONS = 10;
+        static final Duration QUERY_TIME = Duration.ofMillis(10);
+        static final int CAPACITY_PER_SECOND = (int) (CONNECTIONS * 1000 / QUERY_TIME.toMillis());
+        static final int SECONDS = 3;
+        static final int REQUESTS_PER_MILLISECOND = 3 * CAPACITY_PER_SECOND / 1000;
+
+        final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        final SlowAnimeRepository repository = new SlowAnimeRepository(scheduler);
+        final List<Long> latencies = new ArrayList<>();
+        final AtomicInteger shed = new AtomicInteger();
+        final AnimeService animeService;
+
+        Simulation(boolean enabled) {
+            AnimeProperties animeProperties = new AnimeProperties();
+            animeProperties.getConcurrency().setEnabled(enabled);
+            // Só o limite em jogo: sem prazo que corte a fila e sem segunda tentativa
+            animeProperties.getQueries().setReadTimeout(Duration.ofHours(1));
+            animeProperties.getQueries().getHedging().setEnabled(false);
+
+            AnimeConcurrencyLimiter limiter = new AnimeConcurrencyLimiter(repository.waiting::size,
+                    () -> scheduler.now(TimeUnit.NANOSECONDS), animeProperties.getConcurrency());
+
+            animeService = new AnimeService(repository, animeProperties, Mockito.mock(AnimeCache.class),
+                    Mockito.mock(AnimeBatchLoader.class), new AnimeChangeCounter(), Mockito.mock(AnimeNameIndex.class),
+                    Mockito.mock(AnimeChangeFeed.class), limiter, new ReplicaRouting(animeProperties),
+                    new AnimeQueryPolicy(animeProperties.getQueries(), scheduler), Mockito.mock(TransactionalOperator.class));
+        }
+
+        void run() {
+            for (int millisecond = 0; millisecond < SECONDS * 1000; millisecond++) {
+                for (int i = 0; i < REQUESTS_PER_MILLISECOND; i++) {
+                    long start = scheduler.now(TimeUnit.NANOSECONDS);
+
+                    animeService.listPage(null, null).subscribe(
+                            page -> latencies.add(scheduler.now(TimeUnit.NANOSECONDS) - start),
+                            error -> {
+                                Assertions.assertTrue(error instanceof AnimeOverloadedException);
+                                shed.incrementAndGet();
+                            });
+                }
+
+                scheduler.advanceTimeBy(Duration.ofMillis(1));
+            }
+
+            scheduler.advanceTimeBy(Duration.ofMinutes(1));
+            scheduler.dispose();
+        }
+
+        long p99() {
+            List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            return sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1);
+        }
+
+    }
+
+    /**
+     * Repositório em memória atrás de um pool de conexões simulado: quem não acha conexão livre espera na
+     * fila, como no pendingAcquire do r2dbc-pool
+     */
+    private static class SlowAnimeRepository extends InMemoryAnimeRepository {
+
+        final Deque<Sinks.Empty<Void>> waiting = new ArrayDeque<>();
+        final VirtualTimeScheduler scheduler;
+        int free = Simulation.CONNECTIONS;
+
+        SlowAnimeRepository(VirtualTimeScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public Flux<Anime> findPageAfter(Integer after, int limit) {
+            return acquire()
+                    .then(Mono.delay(Simulation.QUERY_TIME, scheduler))
+                    .thenMany(super.findPageAfter(after, limit))
+                    .doFinally(signal -> release());
+        }
+
+        private Mono<Void> acquire() {
+            return Mono.defer(() -> {
+                if (free > 0) {
+                    free--;
+                    return Mono.empty();
+                }
+
+                Sinks.Empty<Void> connection = Sinks.empty();
+                waiting.add(connection);
+                return connection.asMono();
+            });
+        }
+
+        private void release() {
+            Sinks.Empty<Void> next = waiting.poll();
+
+            if (next == null) {
+                free++;
+            } else {
+                next.tryEmitEmpty();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,235 @@
+package com.funck.webflux.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.domain.IngestChunkResult;
+import com.funck.webflux.domain.IngestRejection;
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.repository.ReplicaRouting;
+import com.funck.webflux.util.AnimeCreator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+
+@ExtendWith(SpringExtension.class)
+class AnimeIngestServiceTest {
+
+    @InjectMocks
+    private AnimeIngestService animeIngestService;
+
+    @Mock
+    private AnimeRepository animeRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    @Mock
+    private AnimeChangeCounter animeChangeCounter;
+
+    @Spy
+    private AnimeCache animeCache = new AnimeCache(new AnimeProperties());
+
+    @Mock
+    private AnimeNameIndex animeNameIndex;
+
+    @Mock
+    private AnimeChangeFeed animeChangeFeed;
+
+    @Spy
+    private AnimeProperties animeProperties = new AnimeProperties();
+
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Spy
+    private ReplicaRouting replicaRouting = new ReplicaRouting(new AnimeProperties());
+
+    @Spy
+    private AnimeConcurrencyLimiter animeConcurrencyLimiter =
+            new AnimeConcurrencyLimiter(() -> 0, System::nanoTime, new AnimeProperties().getConcurrency());
+
+    // Em tempo virtual parado, nenhum prazo expira mesmo com o StepVerifier avançando o próprio tempo virtual
+    @Spy
+    private AnimeQueryPolicy animeQueryPolicy = new AnimeQueryPolicy(new AnimeProperties().getQueries(), VirtualTimeScheduler.create());
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Anime naruto = AnimeCreator.createAnimeToBeSaved();
+    private final Anime bleach = naruto.withName("Bleach");
+
+    @BeforeEach
+    void setUp() {
+        BDDMockito.when(animeChangeFeed.publish(anyList()))
+                .thenReturn(Mono.empty());
+
+        animeProperties.getIngest().setChunkSize(2);
+
+        BDDMockito.when(transactionalOperator.transactional(any(Mono.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    @DisplayName("Ingest commits one chunk per chunk size and returns the accepted ids")
+    void ingest_ReturnAcceptedIdsPerChunk_whenSuccessful() {
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto, bleach))).thenReturn(Flux.just(1, 2));
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto))).thenReturn(Flux.just(3));
+
+        StepVerifier.create(animeIngestService.ingest(lines(naruto, bleach, naruto)))
+                .expectSubscription()
+                .expectNext(new IngestChunkResult(0, List.of(1, 2), List.of()))
+                .expectNext(new IngestChunkResult(1, List.of(3), List.of()))
+                .verifyComplete();
+
+        BDDMockito.verify(transactionalOperator, BDDMockito.times(2)).transactional(any(Mono.class));
+    }
+
+    @Test
+    @DisplayName("Ingest invalidates the not found entries cached for the inserted ids")
+    void ingest_InvalidateNotFoundCache_whenIdIsInserted() {
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto))).thenReturn(Flux.just(1));
+
+        StepVerifier.create(animeCache.get(1, id -> Mono.empty()))
+                .verifyComplete();
+
+        StepVerifier.create(animeIngestService.ingest(lines(naruto)))
+                .expectNext(new IngestChunkResult(0, List.of(1), List.of()))
+                .verifyComplete();
+
+        StepVerifier.create(animeCache.get(1, id -> Mono.just(naruto.withId(id))))
+                .expectNext(naruto.withId(1))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Ingest rejects invalid lines with the reason and keeps the valid ones")
+    void ingest_RejectInvalidLines_whenNameIsEmpty() {
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto))).thenReturn(Flux.just(1));
+
+        StepVerifier.create(animeIngestService.ingest(lines(naruto, naruto.withName(""))))
+                .expectSubscription()
+                .expectNext(new IngestChunkResult(0, List.of(1),
+                        List.of(new IngestRejection(2, "The name of Anime is mandatory"))))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Ingest rejects a malformed line and keeps reading the lines after it")
+    void ingest_RejectMalformedLine_whenJsonIsInvalid() {
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto))).thenReturn(Flux.just(1));
+        BDDMockito.when(animeRepository.insertAll(List.of(bleach))).thenReturn(Flux.just(2));
+
+        // A linha em branco não conta para o lote, mas conta na numeração
+        StepVerifier.create(animeIngestService.ingest(Flux.just(json(naruto), "{\"name\":", "", json(bleach))))
+                .assertNext(result -> {
+                    Assertions.assertEquals(List.of(1), result.getAcceptedIds());
+                    Assertions.assertEquals(1, result.getRejected().size());
+                    Assertions.assertEquals(2, result.getRejected().get(0).getLine());
+                    Assertions.assertTrue(result.getRejected().get(0).getReason().startsWith("Invalid JSON: "));
+                })
+                .expectNext(new IngestChunkResult(1, List.of(2), List.of()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Ingest rejects every line of a chunk that fails and goes on with the next chunk")
+    void ingest_RejectWholeChunk_whenInsertFails() {
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto, bleach)))
+                .thenReturn(Flux.error(new IllegalStateException("connection closed")));
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto))).thenReturn(Flux.just(3));
+
+        StepVerifier.create(animeIngestService.ingest(lines(naruto, bleach, naruto)))
+                .expectSubscription()
+                .expectNext(new IngestChunkResult(0, List.of(), List.of(
+                        new IngestRejection(1, "Chunk rolled back: connection closed"),
+                        new IngestRejection(2, "Chunk rolled back: connection closed"))))
+                .expectNext(new IngestChunkResult(1, List.of(3), List.of()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Ingest waits for a slow repository without overflowing when the chunk timeout closes chunks")
+    void ingest_WaitForRepository_whenInsertIsSlow() {
+        AtomicInteger ids = new AtomicInteger();
+
+        BDDMockito.when(animeRepository.insertAll(anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Anime>>getArgument(0))
+                        .map(anime -> ids.incrementAndGet())
+                        .delaySubscription(Duration.ofSeconds(10)));
+
+        // Uma linha a cada 1,5s fecha cada lote pelo tempo, e cada lote leva 10s para gravar
+        StepVerifier.withVirtualTime(() -> animeIngestService.ingest(Flux.range(1, 100)
+                                .map(i -> json(naruto.withName("Anime " + i)))
+                                .delayElements(Duration.ofMillis(1500)))
+                        .collectList())
+                .expectSubscription()
+                .thenAwait(Duration.ofHours(1))
+                .assertNext(results -> {
+                    List<Integer> accepted = new ArrayList<>();
+
+                    for (int chunk = 0; chunk < results.size(); chunk++) {
+                        Assertions.assertEquals(chunk, results.get(chunk).getChunk());
+                        Assertions.assertTrue(results.get(chunk).getRejected().isEmpty());
+                        accepted.addAll(results.get(chunk).getAcceptedIds());
+                    }
+
+                    Assertions.assertEquals(IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toList()), accepted);
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("Ingest commits an incomplete chunk when the source pauses longer than the chunk timeout")
+    void ingest_CommitIncompleteChunk_whenSourcePauses() {
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto))).thenReturn(Flux.just(1));
+        BDDMockito.when(animeRepository.insertAll(List.of(bleach))).thenReturn(Flux.just(2));
+
+        StepVerifier.withVirtualTime(() -> animeIngestService.ingest(Flux.concat(lines(naruto),
+                        lines(bleach).delaySubscription(Duration.ofSeconds(10)))))
+                .expectSubscription()
+                .thenAwait(animeProperties.getIngest().getChunkTimeout())
+                .expectNext(new IngestChunkResult(0, List.of(1), List.of()))
+                .thenAwait(Duration.ofSeconds(10))
+                .expectNext(new IngestChunkResult(1, List.of(2), List.of()))
+                .verifyComplete();
+    }
+
+    private Flux<String> lines(Anime... animes) {
+        return Flux.just(animes).map(this::json);
+    }
+
+    private String json(Anime anime) {
+        try {
+            return objectMapper.writeValueAsString(anime);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
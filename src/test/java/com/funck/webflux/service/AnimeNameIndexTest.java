@@ -0,0 +1,103 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.util.InMemoryAnimeRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+
+class AnimeNameIndexTest {
+
+    private final AnimeProperties animeProperties = new AnimeProperties();
+
+    private final InMemoryAnimeRepository animeRepository = new InMemoryAnimeRepository();
+
+    private AnimeNameIndex animeNameIndex;
+
+    @BeforeEach
+    void setUp() {
+        animeProperties.getSearch().setPrefixIndex(true);
+        animeNameIndex = new AnimeNameIndex(animeRepository, animeProperties);
+    }
+
+    @Test
+    @DisplayName("complete returns the names starting with the prefix in alphabetical order ignoring case")
+    void complete_ReturnPrefixMatchesInOrder_whenLoaded() {
+        animeRepository.saveAll(List.of(anime("Naruto Shippuden"), anime("naruto"), anime("Nana"), anime("Bleach")))
+                .blockLast();
+
+        StepVerifier.create(animeNameIndex.load())
+                .expectNext(4L)
+                .verifyComplete();
+
+        Assertions.assertTrue(animeNameIndex.isReady());
+        Assertions.assertEquals(List.of("naruto", "Naruto Shippuden"), names(animeNameIndex.complete("nar", 10)));
+        Assertions.assertEquals(List.of("Nana"), names(animeNameIndex.complete("na", 1)));
+        Assertions.assertEquals(List.of(), names(animeNameIndex.complete("one", 10)));
+    }
+
+    @Test
+    @DisplayName("put and remove keep the index up to date")
+    void put_UpdateIndex_whenAnimeIsRenamedOrRemoved() {
+        animeNameIndex.put(1, "Naruto");
+        animeNameIndex.put(2, "Bleach");
+        animeNameIndex.put(1, "One Piece");
+        animeNameIndex.remove(2);
+
+        Assertions.assertEquals(List.of(), names(animeNameIndex.complete("naruto", 10)));
+        Assertions.assertEquals(List.of(), names(animeNameIndex.complete("bleach", 10)));
+        Assertions.assertEquals(List.of("One Piece"), names(animeNameIndex.complete("one", 10)));
+        Assertions.assertEquals(1, animeNameIndex.size());
+    }
+
+    @Test
+    @DisplayName("load keeps the writes made while the animes were being read")
+    void load_KeepConcurrentWrites_whenAnimesChangeDuringLoad() {
+        AnimeRepository repository = Mockito.mock(AnimeRepository.class);
+        AnimeNameIndex index = new AnimeNameIndex(repository, animeProperties);
+
+        BDDMockito.when(repository.streamAll(anyInt())).thenReturn(Flux.defer(() -> {
+            index.put(1, "Naruto Shippuden");
+            index.remove(2);
+            return Flux.just(anime("Naruto").withId(1), anime("Nana").withId(2));
+        }));
+
+        StepVerifier.create(index.load())
+                .expectNext(2L)
+                .verifyComplete();
+
+        Assertions.assertEquals(List.of("Naruto Shippuden"), names(index.complete("na", 10)));
+    }
+
+    @Test
+    @DisplayName("put is ignored when the prefix index is disabled")
+    void put_Ignore_whenIndexIsDisabled() {
+        AnimeNameIndex disabled = new AnimeNameIndex(animeRepository, new AnimeProperties());
+
+        disabled.put(1, "Naruto");
+
+        Assertions.assertEquals(0, disabled.size());
+        Assertions.assertFalse(disabled.isReady());
+    }
+
+    private static Anime anime(String name) {
+        return Anime.builder().name(name).build();
+    }
+
+    private static List<String> names(List<Anime> animes) {
+        return animes.stream().map(Anime::getName).collect(Collectors.toList());
+    }
+
+}
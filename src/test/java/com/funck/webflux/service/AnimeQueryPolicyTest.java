@@ -0,0 +1,229 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.exception.AnimeTimeoutException;
+import com.funck.webflux.service.AnimeQueryPolicy.Operation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+class AnimeQueryPolicyTest {
+
+    private static final Duration QUERY_TIME = Duration.ofMillis(10);
+
+    private final AnimeProperties.Queries properties = new AnimeProperties().getQueries();
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AnimeQueryPolicy animeQueryPolicy;
+
+    @BeforeEach
+    void setUp() {
+        properties.getTimeouts().put(Operation.FIND_BY_ID.getKey(), Duration.ofMillis(500));
+
+        animeQueryPolicy = new AnimeQueryPolicy(properties, scheduler);
+        animeQueryPolicy.bindTo(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.dispose();
+    }
+
+    @Test
+    @DisplayName("a write that passes the deadline answers gateway timeout but runs to the end")
+    void write_ReturnTimeoutAndFinish_whenDeadlinePasses() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicBoolean finished = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Mono<Long> write = Mono.delay(properties.getWriteTimeout().plusSeconds(1), scheduler)
+                .doOnNext(done -> finished.set(true))
+                .doOnCancel(() -> cancelled.set(true));
+
+        animeQueryPolicy.write(Operation.UPDATE, write)
+                .subscribe(value -> { }, error::set);
+
+        scheduler.advanceTimeBy(properties.getWriteTimeout().minusMillis(1));
+        Assertions.assertNull(error.get());
+
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        Assertions.assertTrue(error.get() instanceof AnimeTimeoutException);
+        Assertions.assertEquals(1, counter("anime.query.timeouts", Operation.UPDATE));
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        Assertions.assertTrue(finished.get());
+        Assertions.assertFalse(cancelled.get());
+    }
+
+    @Test
+    @DisplayName("a write keeps the request context, which has the user that wrote")
+    void write_KeepContext_whenCallReadsIt() {
+        AtomicReference<String> user = new AtomicReference<>();
+
+        animeQueryPolicy.write(Operation.SAVE, Mono.deferContextual(context -> Mono.just(context.<String>get("user"))))
+                .contextWrite(Context.of("user", "felipe"))
+                .subscribe(user::set);
+
+        Assertions.assertEquals("felipe", user.get());
+    }
+
+    @Test
+    @DisplayName("an operation with its own deadline uses it instead of the read timeout")
+    void read_UseOperationTimeout_whenConfigured() {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        animeQueryPolicy.read(Operation.FIND_BY_ID, Mono.never(), Mono.never())
+                .subscribe(value -> { }, error::set);
+
+        scheduler.advanceTimeBy(Duration.ofMillis(500));
+
+        Assertions.assertTrue(error.get() instanceof AnimeTimeoutException);
+        Assertions.assertEquals(0, counter("anime.query.timeouts", Operation.LIST_PAGE));
+    }
+
+    @Test
+    @DisplayName("a read slower than the p95 is hedged and the faster attempt wins, cancelling the other")
+    void read_ReturnHedge_whenFirstAttemptPassesPercentile() {
+        warmUp();
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Integer> result = new AtomicReference<>();
+
+        animeQueryPolicy.read(Operation.FIND_BY_ID, Mono.<Integer>never().doOnCancel(() -> cancelled.set(true)), Mono.just(2))
+                .subscribe(result::set);
+
+        scheduler.advanceTimeBy(QUERY_TIME);
+
+        Assertions.assertEquals(2, result.get());
+        Assertions.assertTrue(cancelled.get());
+        Assertions.assertEquals(1, counter("anime.hedge.sent", Operation.FIND_BY_ID));
+        Assertions.assertEquals(1, counter("anime.hedge.wins", Operation.FIND_BY_ID));
+    }
+
+    @Test
+    @DisplayName("a first attempt that fails after the hedge started does not cancel the hedge")
+    void read_ReturnHedge_whenFirstAttemptFailsAfterHedgeStarted() {
+        warmUp();
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Integer> result = new AtomicReference<>();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Mono<Integer> failing = Mono.delay(QUERY_TIME.multipliedBy(2), scheduler)
+                .then(Mono.error(new IllegalStateException("connection reset")));
+        Mono<Integer> hedge = Mono.delay(QUERY_TIME.multipliedBy(2), scheduler)
+                .thenReturn(2)
+                .doOnCancel(() -> cancelled.set(true));
+
+        animeQueryPolicy.read(Operation.FIND_BY_ID, failing, hedge)
+                .subscribe(result::set, error::set);
+
+        scheduler.advanceTimeBy(QUERY_TIME.multipliedBy(3));
+
+        Assertions.assertEquals(2, result.get());
+        Assertions.assertNull(error.get());
+        Assertions.assertFalse(cancelled.get());
+    }
+
+    @Test
+    @DisplayName("a read fails with the last error when both attempts fail")
+    void read_ReturnError_whenBothAttemptsFail() {
+        warmUp();
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Mono<Integer> failing = Mono.delay(QUERY_TIME.multipliedBy(2), scheduler)
+                .then(Mono.error(new IllegalStateException("connection reset")));
+
+        animeQueryPolicy.read(Operation.FIND_BY_ID, failing, Mono.error(new IllegalStateException("replica down")))
+                .subscribe(value -> { }, error::set);
+
+        scheduler.advanceTimeBy(QUERY_TIME.multipliedBy(3));
+
+        Assertions.assertEquals("connection reset", error.get().getMessage());
+    }
+
+    @Test
+    @DisplayName("a read that answers before the p95 never subscribes to the second attempt")
+    void read_SkipHedge_whenFirstAttemptIsFast() {
+        warmUp();
+
+        AtomicBoolean hedged = new AtomicBoolean();
+        AtomicReference<Integer> result = new AtomicReference<>();
+
+        animeQueryPolicy.read(Operation.FIND_BY_ID, Mono.delay(QUERY_TIME.dividedBy(2), scheduler).thenReturn(1),
+                        Mono.fromCallable(() -> {
+                            hedged.set(true);
+                            return 2;
+                        }))
+                .subscribe(result::set);
+
+        scheduler.advanceTimeBy(QUERY_TIME.multipliedBy(2));
+
+        Assertions.assertEquals(1, result.get());
+        Assertions.assertFalse(hedged.get());
+        Assertions.assertEquals(0, counter("anime.hedge.sent", Operation.FIND_BY_ID));
+    }
+
+    @Test
+    @DisplayName("hedging stops at the budget so a uniformly slow database does not get twice the reads")
+    void read_LimitHedges_whenBudgetIsExhausted() {
+        warmUp();
+
+        AtomicInteger answered = new AtomicInteger();
+        AtomicInteger timedOut = new AtomicInteger();
+
+        for (int i = 0; i < 30; i++) {
+            animeQueryPolicy.read(Operation.FIND_BY_ID, Mono.never(), Mono.just(i))
+                    .subscribe(value -> answered.incrementAndGet(), error -> timedOut.incrementAndGet());
+        }
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+
+        Assertions.assertEquals(10, counter("anime.hedge.sent", Operation.FIND_BY_ID));
+        Assertions.assertEquals(10, answered.get());
+        Assertions.assertEquals(20, timedOut.get());
+    }
+
+    /**
+     * Leituras suficientes, todas levando QUERY_TIME, para o p95 da operação ficar conhecido
+     */
+    private void warmUp() {
+        List<Integer> results = new ArrayList<>();
+
+        for (int i = 0; i < 2 * properties.getHedging().getMinSamples(); i++) {
+            animeQueryPolicy.read(Operation.FIND_BY_ID, Mono.delay(QUERY_TIME, scheduler).thenReturn(1), Mono.just(2))
+                    .subscribe(results::add);
+
+            scheduler.advanceTimeBy(QUERY_TIME);
+        }
+
+        Assertions.assertFalse(results.contains(2));
+        Assertions.assertEquals(0, counter("anime.hedge.sent", Operation.FIND_BY_ID));
+    }
+
+    private double counter(String name, Operation operation) {
+        return meterRegistry.get(name)
+                .tag("operation", operation.getKey())
+                .functionCounter()
+                .count();
+    }
+
+}
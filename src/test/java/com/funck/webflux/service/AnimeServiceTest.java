@@ -1,7 +1,12 @@
 package com.funck.webflux.service;
 
+import com.funck.webflux.config.AnimeProperties;
 import com.funck.webflux.domain.Anime;
+import com.funck.webflux.domain.AnimeChange;
+import com.funck.webflux.exception.AnimeVersionMismatchException;
+import com.funck.webflux.exception.InvalidAnimeException;
 import com.funck.webflux.repository.AnimeRepository;
+import com.funck.webflux.repository.ReplicaRouting;
 import com.funck.webflux.util.AnimeCreator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -12,7 +17,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.blockhound.BlockHound;
 import reactor.blockhound.BlockingOperationError;
@@ -20,14 +30,20 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+import reactor.util.context.Context;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
-import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 
 @ExtendWith(SpringExtension.class)
 class AnimeServiceTest {
@@ -38,6 +54,39 @@ class AnimeServiceTest {
     @Mock
     private AnimeRepository animeRepository;
 
+    @Spy
+    private AnimeProperties animeProperties = new AnimeProperties();
+
+    @Spy
+    private AnimeCache animeCache = new AnimeCache(new AnimeProperties());
+
+    @Mock
+    private AnimeBatchLoader animeBatchLoader;
+
+    @Spy
+    private AnimeChangeCounter animeChangeCounter = new AnimeChangeCounter();
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    @Mock
+    private AnimeNameIndex animeNameIndex;
+
+    @Mock
+    private AnimeChangeFeed animeChangeFeed;
+
+    @Spy
+    private AnimeConcurrencyLimiter animeConcurrencyLimiter =
+            new AnimeConcurrencyLimiter(() -> 0, System::nanoTime, new AnimeProperties().getConcurrency());
+
+    // Com uma réplica configurada, para lembrar de quem escreveu; sem usuário autenticado nada muda
+    @Spy
+    private ReplicaRouting replicaRouting = new ReplicaRouting(replicated());
+
+    // Em tempo virtual parado: nenhum prazo expira e nenhuma segunda tentativa dispara
+    @Spy
+    private AnimeQueryPolicy animeQueryPolicy = new AnimeQueryPolicy(new AnimeProperties().getQueries(), VirtualTimeScheduler.create());
+
     private Anime anime = AnimeCreator.createValidAnime();
 
     @BeforeAll
@@ -47,20 +96,35 @@ class AnimeServiceTest {
 
     @BeforeEach
     void setUp() {
-        BDDMockito.when(animeRepository.findAll())
+        BDDMockito.when(animeChangeFeed.publish(anyList()))
+                .thenReturn(Mono.empty());
+
+        BDDMockito.when(transactionalOperator.transactional(any(Flux.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        BDDMockito.when(animeRepository.streamAll(anyInt()))
                 .thenReturn(Flux.just(anime));
 
-        BDDMockito.when(animeRepository.findById(anyInt()))
+        BDDMockito.when(animeBatchLoader.load(anyInt()))
                 .thenReturn(Mono.just(anime));
 
         BDDMockito.when(animeRepository.save(AnimeCreator.createAnimeToBeSaved()))
                 .thenReturn(Mono.just(anime));
 
-        BDDMockito.when(animeRepository.saveAll(List.of(AnimeCreator.createAnimeToBeSaved(), AnimeCreator.createAnimeToBeSaved())))
-                .thenReturn(Flux.just(anime, anime));
+        BDDMockito.when(animeRepository.insertAll(List.of(AnimeCreator.createAnimeToBeSaved(), AnimeCreator.createAnimeToBeSaved())))
+                .thenReturn(Flux.just(1, 1));
 
-        BDDMockito.when(animeRepository.delete(any(Anime.class)))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepository.updateNameById(anyInt(), anyString()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepository.removeById(anyInt()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepository.updateNameByIdAndVersion(anyInt(), anyString(), anyLong()))
+                .thenReturn(Mono.just(1));
+
+        BDDMockito.when(animeRepository.removeByIdAndVersion(anyInt(), anyLong()))
+                .thenReturn(Mono.just(1));
     }
 
     @Test
@@ -88,6 +152,77 @@ class AnimeServiceTest {
                 .expectSubscription()
                 .expectNext(anime)
                 .verifyComplete();
+
+        BDDMockito.verify(animeRepository).streamAll(256);
+    }
+
+    @Test
+    @DisplayName("listPage returns the first page without next cursor when there are no more animes")
+    void listPage_ReturnLastPage_whenNoMoreAnimes() {
+        BDDMockito.when(animeRepository.findPageAfter(0, 21))
+                .thenReturn(Flux.just(anime));
+
+        StepVerifier.create(animeService.listPage(null, null))
+                .expectSubscription()
+                .assertNext(page -> {
+                    Assertions.assertEquals(List.of(anime), page.getContent());
+                    Assertions.assertEquals(20, page.getLimit());
+                    Assertions.assertFalse(page.hasNext());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("listPage returns the last id as next cursor when there are more animes")
+    void listPage_ReturnNextCursor_whenHasMoreAnimes() {
+        BDDMockito.when(animeRepository.findPageAfter(1, 2))
+                .thenReturn(Flux.just(anime.withId(2), anime.withId(3)));
+
+        StepVerifier.create(animeService.listPage(1, 1))
+                .expectSubscription()
+                .assertNext(page -> {
+                    Assertions.assertEquals(List.of(anime.withId(2)), page.getContent());
+                    Assertions.assertEquals(2, page.getNextCursor());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("listPage limits the page size to the configured max size")
+    void listPage_LimitPageSize_whenLimitIsGreaterThanMaxSize() {
+        BDDMockito.when(animeRepository.findPageAfter(eq(0), anyInt()))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(animeService.listPage(null, 10_000))
+                .expectSubscription()
+                .assertNext(page -> Assertions.assertEquals(100, page.getLimit()))
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepository).findPageAfter(0, 101);
+    }
+
+    @Test
+    @DisplayName("listPage reads from the primary so a lagging replica does not get the new etag")
+    void listPage_ReadPrimary_whenReplicaLagsBehindWrite() {
+        Anime saved = anime.withId(2);
+
+        // A réplica ainda não recebeu o anime que o primário acabou de gravar
+        BDDMockito.when(animeRepository.findPageAfter(0, 21))
+                .thenReturn(Flux.deferContextual(context -> ReplicaRouting.isReadOnly(context)
+                        ? Flux.just(anime)
+                        : Flux.just(anime, saved)));
+
+        String before = animeChangeCounter.etag();
+
+        StepVerifier.create(animeService.save(AnimeCreator.createAnimeToBeSaved()))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        Assertions.assertNotEquals(before, animeChangeCounter.etag());
+
+        StepVerifier.create(animeService.listPage(null, null))
+                .assertNext(page -> Assertions.assertEquals(List.of(anime, saved), page.getContent()))
+                .verifyComplete();
     }
 
     @Test
@@ -102,7 +237,7 @@ class AnimeServiceTest {
     @Test
     @DisplayName("findById returns Mono error when anime does not exists")
     void findById_ReturnMonoError_whenEmptyMonoReturns() {
-        BDDMockito.when(animeRepository.findById(anyInt()))
+        BDDMockito.when(animeBatchLoader.load(anyInt()))
                 .thenReturn(Mono.empty());
 
         StepVerifier.create(animeService.findById(1))
@@ -111,6 +246,84 @@ class AnimeServiceTest {
                 .verify();
     }
 
+    @Test
+    @DisplayName("findById returns the cached anime without loading it again")
+    void findById_ReturnCachedAnime_whenCalledTwice() {
+        StepVerifier.create(animeService.findById(1).then(animeService.findById(1)))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeBatchLoader, BDDMockito.times(1)).load(1);
+    }
+
+    @Test
+    @DisplayName("findById loads the anime again after it is updated")
+    void findById_ReloadAnime_whenAnimeIsUpdated() {
+        StepVerifier.create(animeService.findById(1)
+                        .then(animeService.update(anime, 1))
+                        .then(animeService.findById(1)))
+                .expectSubscription()
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeBatchLoader, BDDMockito.times(2)).load(1);
+    }
+
+    @Test
+    @DisplayName("findById reads from the primary, skipping the cache, for the user that just wrote")
+    void findById_ReadPrimary_whenUserWroteRecently() {
+        Anime updated = anime.withName("Naruto Shippuden");
+
+        BDDMockito.when(animeRepository.findById(1))
+                .thenReturn(Mono.just(updated));
+
+        StepVerifier.create(animeService.findById(1).contextWrite(authenticated("reader")))
+                .expectNext(anime)
+                .verifyComplete();
+
+        StepVerifier.create(animeService.update(updated, 1)
+                        .then(animeService.findById(1))
+                        .contextWrite(authenticated("writer")))
+                .expectNext(updated)
+                .verifyComplete();
+
+        StepVerifier.create(animeService.findById(1).contextWrite(authenticated("writer")))
+                .expectNext(updated)
+                .verifyComplete();
+
+        // Quem não escreveu continua no cache e no lote das réplicas
+        StepVerifier.create(animeService.findById(1).contextWrite(authenticated("reader")))
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepository, BDDMockito.times(2)).findById(1);
+        BDDMockito.verify(animeBatchLoader, BDDMockito.times(2)).load(1);
+    }
+
+    @Test
+    @DisplayName("findAllById returns the animes found in the order of the ids")
+    void findAllById_ReturnAnimesInOrder_whenSuccessful() {
+        BDDMockito.when(animeBatchLoader.load(2)).thenReturn(Mono.just(anime.withId(2)));
+        BDDMockito.when(animeBatchLoader.load(3)).thenReturn(Mono.empty());
+
+        StepVerifier.create(animeService.findAllById(List.of(2, 3, 1)))
+                .expectSubscription()
+                .expectNext(anime.withId(2), anime)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAllById returns error when there are more ids than the max page size")
+    void findAllById_ReturnError_whenTooManyIds() {
+        List<Integer> ids = Collections.nCopies(101, 1);
+
+        StepVerifier.create(animeService.findAllById(ids))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
     @Test
     @DisplayName("Save create an anime when successful")
     void save_CreateAnime_whenSuccessful() {
@@ -131,6 +344,31 @@ class AnimeServiceTest {
                 .expectSubscription()
                 .expectNext(anime, anime)
                 .verifyComplete();
+
+        BDDMockito.verify(transactionalOperator).transactional(any(Flux.class));
+        BDDMockito.verify(animeChangeCounter).increment();
+    }
+
+    @Test
+    @DisplayName("SaveAll inserts the animes in chunks of the configured size keeping the order of the ids")
+    void saveAll_InsertInChunks_whenListIsGreaterThanChunkSize() {
+        animeProperties.getBatch().setChunkSize(2);
+        Anime naruto = AnimeCreator.createAnimeToBeSaved();
+        Anime bleach = naruto.withName("Bleach");
+
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto, bleach)))
+                .thenReturn(Flux.just(10, 11));
+        BDDMockito.when(animeRepository.insertAll(List.of(naruto)))
+                .thenReturn(Flux.just(12));
+
+        StepVerifier.create(animeService.saveAll(List.of(naruto, bleach, naruto)))
+                .expectSubscription()
+                .expectNext(inserted(naruto, 10), inserted(bleach, 11), inserted(naruto, 12))
+                .verifyComplete();
+
+        // Uma publicação só para o lote inteiro, depois do commit
+        BDDMockito.verify(animeChangeFeed).publish(List.of(AnimeChange.inserted(inserted(naruto, 10)),
+                AnimeChange.inserted(inserted(bleach, 11)), AnimeChange.inserted(inserted(naruto, 12))));
     }
 
     @Test
@@ -138,14 +376,12 @@ class AnimeServiceTest {
     void saveAll_ReturnsMonoError_whenContaingInvalidName() {
         Anime animeToBeSaved = AnimeCreator.createAnimeToBeSaved();
 
-        BDDMockito.when(animeRepository.saveAll(anyIterable()))
-                .thenReturn(Flux.just(anime, anime.withName("")));
-
         StepVerifier.create(animeService.saveAll(List.of(animeToBeSaved, animeToBeSaved.withName(""))))
                 .expectSubscription()
-                .expectNext(anime)
                 .expectError(ResponseStatusException.class)
                 .verify();
+
+        BDDMockito.verify(animeRepository, BDDMockito.never()).insertAll(anyList());
     }
 
     @Test
@@ -154,13 +390,16 @@ class AnimeServiceTest {
         StepVerifier.create(animeService.delete(1))
                 .expectSubscription()
                 .verifyComplete();
+
+        BDDMockito.verify(animeRepository).removeById(1);
+        BDDMockito.verify(animeBatchLoader, BDDMockito.never()).load(anyInt());
     }
 
     @Test
     @DisplayName("Delete returns error when anime does not exists")
     void delete_returnError_whenNotFound() {
-        BDDMockito.when(animeRepository.findById(anyInt()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(animeRepository.removeById(anyInt()))
+                .thenReturn(Mono.just(0));
 
         StepVerifier.create(animeService.delete(1))
                 .expectSubscription()
@@ -171,22 +410,124 @@ class AnimeServiceTest {
     @Test
     @DisplayName("Update save updated anime when successful and returns empty mono")
     void update_SaveUpdateAndReturnEmptyMono_whenSuccessful() {
-        BDDMockito.when(animeRepository.save(anime)).thenReturn(Mono.just(anime));
-
         StepVerifier.create(animeService.update(anime, 1))
                 .expectSubscription()
                 .verifyComplete();
+
+        BDDMockito.verify(animeRepository).updateNameById(1, anime.getName());
+        BDDMockito.verify(animeBatchLoader, BDDMockito.never()).load(anyInt());
+        BDDMockito.verify(animeChangeCounter).increment();
+        BDDMockito.verify(animeNameIndex).apply(AnimeChange.updated(1, anime.getName()));
+        BDDMockito.verify(animeChangeFeed).publish(List.of(AnimeChange.updated(1, anime.getName())));
     }
 
     @Test
     @DisplayName("Update return mono error when anime not exists")
     void update_returnMonoError_whenNotExists() {
-        BDDMockito.when(animeRepository.findById(anyInt())).thenReturn(Mono.empty());
+        BDDMockito.when(animeRepository.updateNameById(anyInt(), anyString())).thenReturn(Mono.just(0));
 
         StepVerifier.create(animeService.update(anime, 1))
                 .expectSubscription()
                 .expectError(ResponseStatusException.class)
                 .verify();
+
+        BDDMockito.verify(animeChangeCounter, BDDMockito.never()).increment();
+        BDDMockito.verify(animeNameIndex, BDDMockito.never()).apply(any());
+        BDDMockito.verify(animeChangeFeed, BDDMockito.never()).publish(anyList());
+    }
+
+    @Test
+    @DisplayName("Update with version updates only the expected version")
+    void update_UseExpectedVersion_whenVersionIsInformed() {
+        StepVerifier.create(animeService.update(anime, 1, 3L))
+                .expectSubscription()
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepository).updateNameByIdAndVersion(1, anime.getName(), 3L);
+        BDDMockito.verify(animeRepository, BDDMockito.never()).updateNameById(anyInt(), anyString());
+    }
+
+    @Test
+    @DisplayName("Update with version returns precondition failed when no row matches")
+    void update_ReturnPreconditionFailed_whenVersionDoesNotMatch() {
+        BDDMockito.when(animeRepository.updateNameByIdAndVersion(anyInt(), anyString(), anyLong()))
+                .thenReturn(Mono.just(0));
+
+        StepVerifier.create(animeService.update(anime, 1, 3L))
+                .expectSubscription()
+                .expectError(AnimeVersionMismatchException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("Delete with version returns precondition failed when no row matches")
+    void delete_ReturnPreconditionFailed_whenVersionDoesNotMatch() {
+        BDDMockito.when(animeRepository.removeByIdAndVersion(anyInt(), anyLong()))
+                .thenReturn(Mono.just(0));
+
+        StepVerifier.create(animeService.delete(1, 3L))
+                .expectSubscription()
+                .expectError(AnimeVersionMismatchException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("search escapes the LIKE wildcards of the query and ignores case")
+    void search_EscapeWildcards_whenQueryHasThem() {
+        BDDMockito.when(animeRepository.searchByName(anyString(), anyString(), anyInt()))
+                .thenReturn(Flux.just(anime));
+
+        StepVerifier.create(animeService.search(" 100%_Naruto ", null))
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepository).searchByName("%100\\%\\_naruto%", "100\\%\\_naruto%", 20);
+    }
+
+    @Test
+    @DisplayName("search returns bad request when the query is blank")
+    void search_ReturnError_whenQueryIsBlank() {
+        StepVerifier.create(animeService.search(" ", null))
+                .expectError(InvalidAnimeException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("autocomplete uses the prefix index without querying when it is ready")
+    void autocomplete_UseIndex_whenIndexIsReady() {
+        BDDMockito.when(animeNameIndex.isReady()).thenReturn(true);
+        BDDMockito.when(animeNameIndex.complete("nar", 5)).thenReturn(List.of(anime));
+
+        StepVerifier.create(animeService.autocomplete("Nar", 5))
+                .expectNext(anime)
+                .verifyComplete();
+
+        BDDMockito.verify(animeRepository, BDDMockito.never()).findByNamePrefix(anyString(), anyInt());
+    }
+
+    @Test
+    @DisplayName("autocomplete queries the database while the prefix index is not ready")
+    void autocomplete_QueryDatabase_whenIndexIsNotReady() {
+        BDDMockito.when(animeRepository.findByNamePrefix("nar%", 5)).thenReturn(Flux.just(anime));
+
+        StepVerifier.create(animeService.autocomplete("Nar", 5))
+                .expectNext(anime)
+                .verifyComplete();
+    }
+
+    private Anime inserted(Anime anime, int id) {
+        return anime.withId(id).withVersion(Anime.INITIAL_VERSION);
+    }
+
+    private static AnimeProperties replicated() {
+        AnimeProperties properties = new AnimeProperties();
+        properties.getReplicas().setUrls(List.of("r2dbc:postgresql://replica/animes"));
+        return properties;
+    }
+
+    private static Context authenticated(String username) {
+        return ReactiveSecurityContextHolder.withAuthentication(
+                new UsernamePasswordAuthenticationToken(username, null, AuthorityUtils.NO_AUTHORITIES));
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,79 @@
+package com.funck.webflux.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.funck.webflux.domain.AnimeChange;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Só a divisão dos payloads, a escuta não é assinada e nenhuma conexão é aberta
+ */
+class PostgresAnimeChangeChannelTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final PostgresAnimeChangeChannel channel = new PostgresAnimeChangeChannel(Mockito.mock(DatabaseClient.class),
+            objectMapper, r2dbcProperties());
+
+    @Test
+    @DisplayName("payloads stay under the postgres limit for many changes with short names")
+    void payloads_FitLimit_whenNamesAreShort() throws Exception {
+        List<AnimeChange> changes = changes(185, "Anime");
+
+        List<String> payloads = channel.payloads(changes);
+
+        Assertions.assertEquals(2, payloads.size());
+        assertFitAndKeepChanges(payloads, changes);
+    }
+
+    @Test
+    @DisplayName("payloads stay under the postgres limit with escaped and multi-byte names at the maximum length")
+    void payloads_FitLimit_whenNamesNeedEscaping() throws Exception {
+        String name = "\"ã\\\u0001".repeat(63) + "ééé";
+        Assertions.assertEquals(255, name.length());
+
+        List<AnimeChange> changes = changes(40, name);
+
+        assertFitAndKeepChanges(channel.payloads(changes), changes);
+    }
+
+    private void assertFitAndKeepChanges(List<String> payloads, List<AnimeChange> changes) throws Exception {
+        List<AnimeChange> read = new ArrayList<>();
+
+        for (String payload : payloads) {
+            Assertions.assertTrue(payload.getBytes(StandardCharsets.UTF_8).length <= PostgresAnimeChangeChannel.MAX_PAYLOAD_BYTES);
+
+            for (PostgresAnimeChangeChannel.Change change : objectMapper.readValue(payload, PostgresAnimeChangeChannel.Payload.class).getChanges()) {
+                read.add(new AnimeChange(change.getType(), change.getId(), change.getName()));
+            }
+        }
+
+        Assertions.assertEquals(changes, read);
+    }
+
+    private static List<AnimeChange> changes(int count, String name) {
+        // Ids de seis dígitos, como numa tabela já grande
+        return IntStream.rangeClosed(100_001, 100_000 + count)
+                .mapToObj(id -> new AnimeChange(AnimeChange.Type.INSERT, id, name))
+                .collect(Collectors.toList());
+    }
+
+    private static R2dbcProperties r2dbcProperties() {
+        R2dbcProperties properties = new R2dbcProperties();
+        properties.setUrl("r2dbc:postgresql://localhost:5432/animes");
+        properties.setUsername("animes");
+        return properties;
+    }
+
+}
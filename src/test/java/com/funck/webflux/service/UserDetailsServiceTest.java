@@ -0,0 +1,93 @@
+package com.funck.webflux.service;
+
+import com.funck.webflux.config.AnimeProperties;
+import com.funck.webflux.domain.User;
+import com.funck.webflux.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(SpringExtension.class)
+class UserDetailsServiceTest {
+
+    @InjectMocks
+    private UserDetailsService userDetailsService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Spy
+    private AnimeProperties animeProperties = new AnimeProperties();
+
+    private final User user = new User(1, "Felipe", "felipe", "{noop}1234", "ROLE_USER");
+
+    @BeforeEach
+    void setUp() {
+        BDDMockito.when(userRepository.findByUsername("felipe"))
+                .thenReturn(Mono.just(user));
+
+        BDDMockito.when(userRepository.findByUsername("unknown"))
+                .thenReturn(Mono.empty());
+    }
+
+    @Test
+    @DisplayName("findByUsername goes to the repository only once for the same user")
+    void findByUsername_ReturnCachedUser_whenCalledTwice() {
+        StepVerifier.create(userDetailsService.findByUsername("felipe").then(userDetailsService.findByUsername("felipe")))
+                .expectSubscription()
+                .expectNext(user)
+                .verifyComplete();
+
+        BDDMockito.verify(userRepository, BDDMockito.times(1)).findByUsername("felipe");
+    }
+
+    @Test
+    @DisplayName("findByUsername goes to the repository again after the user is evicted")
+    void findByUsername_ReloadUser_whenEvicted() {
+        StepVerifier.create(userDetailsService.findByUsername("felipe"))
+                .expectNext(user)
+                .verifyComplete();
+
+        userDetailsService.evict("felipe");
+
+        StepVerifier.create(userDetailsService.findByUsername("felipe"))
+                .expectNext(user)
+                .verifyComplete();
+
+        BDDMockito.verify(userRepository, BDDMockito.times(2)).findByUsername("felipe");
+    }
+
+    @Test
+    @DisplayName("findByUsername goes to the repository on every call when the cache is disabled")
+    void findByUsername_QueryEveryTime_whenCacheIsDisabled() {
+        AnimeProperties properties = new AnimeProperties();
+        properties.getSecurity().getUserCache().setEnabled(false);
+        UserDetailsService uncached = new UserDetailsService(userRepository, properties);
+
+        StepVerifier.create(uncached.findByUsername("felipe").then(uncached.findByUsername("felipe")))
+                .expectSubscription()
+                .expectNext(user)
+                .verifyComplete();
+
+        BDDMockito.verify(userRepository, BDDMockito.times(2)).findByUsername("felipe");
+    }
+
+    @Test
+    @DisplayName("findByUsername does not cache users that do not exist")
+    void findByUsername_ReturnEmpty_whenUserDoesNotExist() {
+        StepVerifier.create(userDetailsService.findByUsername("unknown").then(userDetailsService.findByUsername("unknown")))
+                .expectSubscription()
+                .verifyComplete();
+
+        BDDMockito.verify(userRepository, BDDMockito.times(2)).findByUsername("unknown");
+    }
+
+}
@@ -14,6 +14,7 @@ public class AnimeCreator {
         return Anime.builder()
                 .id(1)
                 .name("Naruto")
+                .version(Anime.INITIAL_VERSION)
                 .build();
     }
 
@@ -0,0 +1,238 @@
+package com.funck.webflux.util;
+
+import com.funck.webflux.domain.Anime;
+import com.funck.webflux.repository.AnimeRepository;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.StreamSupport;
+
+/**
+ * AnimeRepository em memória, ordenado pelo id como a tabela, para testes e benchmarks que não
+ * devem depender do banco nem medir o custo do Mockito
+ */
+public class InMemoryAnimeRepository implements AnimeRepository {
+
+    private final NavigableMap<Integer, Anime> animes = new ConcurrentSkipListMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public static InMemoryAnimeRepository withAnimes(int size) {
+        InMemoryAnimeRepository repository = new InMemoryAnimeRepository();
+
+        for (int i = 1; i <= size; i++) {
+            repository.store(Anime.builder().name("Anime " + i).build());
+        }
+
+        return repository;
+    }
+
+    @Override
+    public Mono<Anime> findById(Integer id) {
+        return Mono.justOrEmpty(animes.get(id));
+    }
+
+    @Override
+    public Flux<Anime> findPageAfter(Integer after, int limit) {
+        return Flux.fromIterable(animes.tailMap(after, false).values())
+                .take(limit);
+    }
+
+    @Override
+    public Flux<Anime> searchByName(String contains, String prefix, int limit) {
+        Pattern containsPattern = like(contains);
+        Pattern prefixPattern = like(prefix);
+
+        return Flux.fromStream(() -> animes.values().stream()
+                .filter(anime -> containsPattern.matcher(lower(anime)).matches())
+                .sorted(Comparator.<Anime>comparingInt(anime -> prefixPattern.matcher(lower(anime)).matches() ? 0 : 1)
+                        .thenComparingInt(anime -> anime.getName().length())
+                        .thenComparing(Anime::getId))
+                .limit(limit));
+    }
+
+    @Override
+    public Flux<Anime> findByNamePrefix(String prefix, int limit) {
+        Pattern prefixPattern = like(prefix);
+
+        return Flux.fromStream(() -> animes.values().stream()
+                .filter(anime -> prefixPattern.matcher(lower(anime)).matches())
+                .sorted(Comparator.comparing(InMemoryAnimeRepository::lower).thenComparing(Anime::getId))
+                .limit(limit));
+    }
+
+    @Override
+    public Mono<Integer> updateNameById(Integer id, String name) {
+        return Mono.fromSupplier(() -> animes.computeIfPresent(id, (key, anime) -> renamed(anime, name)) == null ? 0 : 1);
+    }
+
+    @Override
+    public Mono<Integer> updateNameByIdAndVersion(Integer id, String name, Long version) {
+        return Mono.fromSupplier(() -> {
+            Anime current = animes.get(id);
+            return current != null && version.equals(current.getVersion())
+                    && animes.replace(id, current, renamed(current, name)) ? 1 : 0;
+        });
+    }
+
+    @Override
+    public Mono<Integer> removeById(Integer id) {
+        return Mono.fromSupplier(() -> animes.remove(id) == null ? 0 : 1);
+    }
+
+    @Override
+    public Mono<Integer> removeByIdAndVersion(Integer id, Long version) {
+        return Mono.fromSupplier(() -> {
+            Anime current = animes.get(id);
+            return current != null && version.equals(current.getVersion()) && animes.remove(id, current) ? 1 : 0;
+        });
+    }
+
+    @Override
+    public Flux<Anime> streamAll(int fetchSize) {
+        return Flux.fromIterable(animes.values());
+    }
+
+    @Override
+    public Flux<Integer> insertAll(List<Anime> animes) {
+        return Flux.fromIterable(animes)
+                .map(anime -> store(anime.withId(null)).getId());
+    }
+
+    @Override
+    public <S extends Anime> Mono<S> save(S anime) {
+        return Mono.fromSupplier(() -> store(anime));
+    }
+
+    @Override
+    public <S extends Anime> Flux<S> saveAll(Iterable<S> animes) {
+        return Flux.fromIterable(animes).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends Anime> Flux<S> saveAll(Publisher<S> animes) {
+        return Flux.from(animes).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<Anime> findById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Integer id) {
+        return Mono.fromSupplier(() -> animes.containsKey(id));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<Anime> findAll() {
+        return Flux.fromIterable(animes.values());
+    }
+
+    @Override
+    public Flux<Anime> findAllById(Iterable<Integer> ids) {
+        return Flux.fromIterable(ids).concatMap(this::findById);
+    }
+
+    @Override
+    public Flux<Anime> findAllById(Publisher<Integer> ids) {
+        return Flux.from(ids).concatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.fromSupplier(() -> (long) animes.size());
+    }
+
+    @Override
+    public Mono<Void> deleteById(Integer id) {
+        return Mono.fromRunnable(() -> animes.remove(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(Anime anime) {
+        return deleteById(anime.getId());
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends Integer> ids) {
+        return Mono.fromRunnable(() -> StreamSupport.stream(ids.spliterator(), false).forEach(animes::remove));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends Anime> animes) {
+        return Flux.fromIterable(animes).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends Anime> animes) {
+        return Flux.from(animes).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(animes::clear);
+    }
+
+    private static String lower(Anime anime) {
+        return anime.getName().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Converte um padrão do LIKE com escape por barra invertida em regex
+     */
+    private static Pattern like(String pattern) {
+        StringBuilder regex = new StringBuilder();
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+
+            if (c == '\\' && i + 1 < pattern.length()) {
+                regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private Anime renamed(Anime anime, String name) {
+        return anime.withName(name).withVersion(anime.getVersion() + 1);
+    }
+
+    private <S extends Anime> S store(S anime) {
+        if (anime.getId() == null) {
+            anime.setId(sequence.incrementAndGet());
+        }
+
+        if (anime.getVersion() == null) {
+            anime.setVersion(Anime.INITIAL_VERSION);
+        }
+
+        animes.put(anime.getId(), anime);
+        return anime;
+    }
+
+}